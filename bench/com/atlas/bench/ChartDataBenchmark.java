@@ -0,0 +1,55 @@
+package com.atlas.bench;
+
+import com.atlas.control.AtlasController;
+import com.atlas.model.CollectionOfData;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import javafx.scene.chart.XYChart;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of turning a collection into the points of a line chart series,
+ * see AtlasController.getChartPoints. No chart is shown, the JavaFX
+ * application thread is not needed to create the points.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class ChartDataBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    /**
+     * Width of the chart in pixels, about a full screen
+     */
+    @Param({"1600"})
+    private int width;
+
+    private CollectionOfData data;
+
+    @Setup
+    public void setUp() {
+        data = SyntheticData.collection(size, SyntheticData.SEED);
+    }
+
+    @Benchmark
+    public ArrayList<XYChart.Data<Number, Number>> toSeries() {
+        return AtlasController.getChartPoints(data, width);
+    }
+}
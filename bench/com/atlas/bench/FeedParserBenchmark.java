@@ -0,0 +1,62 @@
+package com.atlas.bench;
+
+import com.atlas.model.CollectionOfData;
+import com.atlas.util.FeedParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of reading the server feed, see FeedParser and DataLoader.
+ *
+ * parse only turns the text into a collection, load also does what
+ * DataLoader does after parsing: trim the columns, build the x index and
+ * freeze the collection.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class FeedParserBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    private byte[] feed;
+
+    @Setup
+    public void setUp() {
+        feed = SyntheticData.feed(size, SyntheticData.SEED);
+    }
+
+    @Benchmark
+    public CollectionOfData parse() throws IOException {
+        CollectionOfData data = new CollectionOfData();
+        new FeedParser().parse(new ByteArrayInputStream(feed), data);
+        return data;
+    }
+
+    @Benchmark
+    public CollectionOfData load() throws IOException {
+        CollectionOfData data = parse();
+        data.trimToSize();
+        data.buildXIndex();
+        data.freeze();
+        return data;
+    }
+}
@@ -0,0 +1,83 @@
+package com.atlas.bench;
+
+import com.atlas.model.CollectionOfData;
+import com.atlas.model.MapFile;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of saving and opening .map files, see MapFile.
+ *
+ * The files are written to the temporary directory and deleted afterwards.
+ * The file that is read is written once, so it is in the page cache and the
+ * reads measure decoding rather than the disk.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class MapFileBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    private CollectionOfData data;
+    private File saved;
+    private File written;
+
+    @Setup
+    public void setUp() throws IOException {
+        data = SyntheticData.collection(size, SyntheticData.SEED);
+        saved = File.createTempFile("atlas-bench", ".map");
+        written = File.createTempFile("atlas-bench", ".map");
+        data.serializeToFile(saved);
+    }
+
+    @TearDown
+    public void tearDown() {
+        saved.delete();
+        written.delete();
+    }
+
+    @Benchmark
+    public File serialize() throws IOException {
+        data.serializeToFile(written);
+        return written;
+    }
+
+    @Benchmark
+    public CollectionOfData deserialize() throws IOException, ClassNotFoundException {
+        return MapFile.read(saved);
+    }
+
+    /**
+     * Map the file and read every point, the way a search without an index
+     * goes through a mapped tab
+     */
+    @Benchmark
+    public double mapAndScan() throws IOException {
+        CollectionOfData mapped = MapFile.map(saved);
+        double sum = 0;
+        for (int i = 0; i < mapped.getSize(); i++) {
+            sum += mapped.getX(i) + mapped.getY(i);
+        }
+        return sum;
+    }
+}
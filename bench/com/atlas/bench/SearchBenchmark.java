@@ -0,0 +1,81 @@
+package com.atlas.bench;
+
+import com.atlas.model.CollectionOfData;
+import com.atlas.model.Data;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the searches of the search bar, on a collection with its
+ * indexes built like a loaded tab.
+ *
+ * A search by one x or y value finds a few points, a range search up to
+ * about a thousandth of them. A search by name finds about one point in three
+ * hundred, by a text that is part of the name.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SearchBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    private CollectionOfData data;
+    private String x;
+    private String xRange;
+    private String y;
+    private String yRange;
+
+    @Setup
+    public void setUp() {
+        data = SyntheticData.collection(size, SyntheticData.SEED);
+        int row = size / 2;
+        x = String.valueOf(data.getX(row));
+        xRange = data.getX(row) + ".." + (data.getX(row) + size / 4000);
+        y = String.valueOf(data.getY(row));
+        double spread = data.getYStatistics().getStandardDeviation() / 1000;
+        yRange = data.getY(row) + ".." + (data.getY(row) + spread);
+    }
+
+    @Benchmark
+    public ArrayList<Data> byX() {
+        return data.getDataByX(x);
+    }
+
+    @Benchmark
+    public ArrayList<Data> byXRange() {
+        return data.getDataByX(xRange);
+    }
+
+    @Benchmark
+    public ArrayList<Data> byY() {
+        return data.getDataByY(y);
+    }
+
+    @Benchmark
+    public ArrayList<Data> byYRange() {
+        return data.getDataByY(yRange);
+    }
+
+    @Benchmark
+    public ArrayList<Data> byName() {
+        return data.getDataByName("rbor 12");
+    }
+}
@@ -0,0 +1,93 @@
+package com.atlas.bench;
+
+import com.atlas.model.CollectionOfData;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generator of synthetic data for the benchmarks, so they run without the
+ * server or a network.
+ *
+ * The points look like the feed: x grows with the row with some noise, y is
+ * a random walk and names are a few hundred words with a number, so that
+ * coordinates repeat now and then and names share prefixes and trigrams. The
+ * same size and seed always give the same data.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class SyntheticData {
+
+    /**
+     * The seed the benchmarks use
+     */
+    public static final long SEED = 20180501L;
+
+    private static final String[] WORDS = {
+        "Stock", "Harbor", "Station", "Tower", "Bridge", "Market", "Park",
+        "Square", "Gate", "Hill", "Lake", "Mill", "Port", "Road", "Yard"
+    };
+
+    private static final int NAMES_PER_WORD = 20;
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Get the name of a point
+     *
+     * @param random The random source
+     * @return A name like "Harbor 12"
+     */
+    public static String name(Random random) {
+        return WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(NAMES_PER_WORD);
+    }
+
+    /**
+     * Generate a collection, frozen and with its indexes built
+     *
+     * @param size The number of points
+     * @param seed The seed
+     * @return The collection
+     */
+    public static CollectionOfData collection(int size, long seed) {
+        Random random = new Random(seed);
+        CollectionOfData data = new CollectionOfData(size);
+        double y = 0;
+        for (int i = 0; i < size; i++) {
+            y += random.nextGaussian();
+            data.addPoint(x(i, random), round(y), name(random));
+        }
+        data.buildIndexes();
+        data.freeze();
+        return data;
+    }
+
+    /**
+     * Generate a feed, the text the server sends, with a comment line and
+     * an empty line like the real feed
+     *
+     * @param size The number of points
+     * @param seed The seed
+     * @return The feed as ISO-8859-1 bytes
+     */
+    public static byte[] feed(int size, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(size * 24);
+        text.append("# synthetic feed, ").append(size).append(" points\n\n");
+        double y = 0;
+        for (int i = 0; i < size; i++) {
+            y += random.nextGaussian();
+            text.append(x(i, random)).append(", ").append(round(y)).append(", ")
+                    .append(name(random)).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static double x(int row, Random random) {
+        return row / 4 + random.nextInt(4);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
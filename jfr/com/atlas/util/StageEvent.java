@@ -0,0 +1,67 @@
+package com.atlas.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of one stage of a reload, see StageTimer.
+ *
+ * The class is kept apart from src and only compiled on a JDK that has the
+ * jdk.jfr API, see build.xml. StageTimer looks it up at run time, so the
+ * program also builds and runs without it. While no recording is running,
+ * an event is dropped at commit without its fields being set.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+@Name("com.atlas.Stage")
+@Label("Atlas Stage")
+@Category("Atlas")
+@Description("One stage of loading data into a tab")
+@StackTrace(false)
+class StageEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Points")
+    long points;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    /**
+     * Start an event
+     *
+     * @return The event, as an Object so callers do not link to jdk.jfr
+     */
+    static Object start() {
+        StageEvent event = new StageEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * End an event and commit it if a recording wants it
+     *
+     * @param started An event from start
+     * @param stage The name of the stage
+     * @param points The number of points the stage handled
+     * @param bytes The number of bytes the stage handled
+     */
+    static void stop(Object started, String stage, long points, long bytes) {
+        StageEvent event = (StageEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = stage;
+            event.points = points;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+}
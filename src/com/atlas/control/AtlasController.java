@@ -1,18 +1,39 @@
 package com.atlas.control;
 
-import com.atlas.model.Data;
 import com.atlas.model.CollectionOfData;
+import com.atlas.model.CoordinateRange;
+import com.atlas.model.MapFile;
+import com.atlas.model.ReloadHistory;
+import com.atlas.model.SearchCache;
+import com.atlas.model.SearchQuery;
+import com.atlas.model.SnapshotJournal;
+import com.atlas.model.Statistics;
 import com.atlas.util.DataLoader;
+import com.atlas.util.LatencyHistogram;
+import com.atlas.util.SnapshotCache;
+import com.atlas.util.StageTimer;
 import com.atlas.util.Clock;
 import com.atlas.view.AtlasView;
+import com.atlas.view.CanvasChart;
+import com.atlas.view.ChartHover;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
 import javafx.animation.PathTransition;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.chart.LineChart;
@@ -23,12 +44,12 @@ import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
 import javafx.scene.control.TextField;
 import javafx.scene.control.ToggleGroup;
-import javafx.scene.control.Tooltip;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.shape.Path;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 /**
  * Controller for load, auto-load, stop-auto-load, save&load file, search by x-,
@@ -41,11 +62,35 @@ public class AtlasController {
     private ArrayList<CollectionOfData> collections;
     private Stage primaryStage;
     private AtlasView atlas;
-    private ObservableList<Data> data;
     private final DataLoader dataLoader;
-    private Timer[] timers;
-    private final int NUM_TIMER = 1000;
+    private final RefreshScheduler scheduler;
+    private final int MAX_CONCURRENT_RELOADS = 4;
+    private final int SNAPSHOT_TTL = 5000;
+    private final long MAPPED_FILE_SIZE = 64L * 1024 * 1024;
+    private final int DEFAULT_CHART_WIDTH = 1000;
+    private final int RESAMPLE_DELAY = 200;
+    private final SnapshotCache snapshots;
     private final int AUTO_LOAD_INTERVAL = 30000;
+    private final String REALTIME_SERIES = "Realtime Data";
+    private final SeriesUpdater seriesUpdater;
+    private boolean incrementalUpdate;
+    private volatile int chartWidth;
+    private final long HISTORY_BYTES = 64L * 1024 * 1024;
+    private final Map<Tab, ReloadHistory> histories;
+    private final long JOURNAL_BYTES = 256L * 1024 * 1024;
+    private final long JOURNAL_FLUSH_INTERVAL = 1000;
+    private final SnapshotJournal journal;
+    private final Map<Tab, Integer> journalIds;
+    private int nextJournalId;
+    private volatile CompletableFuture<Void> recovery;
+    private final ForkJoinPool searchPool;
+    private ParallelSearch currentSearch;
+    private final int SEARCH_DELAY = 250;
+    private final PauseTransition liveSearch;
+    private final long SEARCH_CACHE_BYTES = 32L * 1024 * 1024;
+    private final Map<Tab, SearchCache> searchCaches;
+    private final Map<Tab, List<String>> sources;
+    private final PauseTransition resample;
 
     /**
      * Constructor
@@ -60,20 +105,51 @@ public class AtlasController {
         this.collections = collections;
         this.primaryStage = primaryStage;
         this.atlas = atlasView;
-        this.timers = new Timer[NUM_TIMER];
+        this.scheduler = new RefreshScheduler(MAX_CONCURRENT_RELOADS);
+        this.snapshots = new SnapshotCache(SNAPSHOT_TTL);
+        this.seriesUpdater = new SeriesUpdater();
+        this.incrementalUpdate = true;
+        this.chartWidth = DEFAULT_CHART_WIDTH;
+        this.histories = new WeakHashMap<>();
+        this.journal = new SnapshotJournal(new File(System.getProperty("user.home"),
+                ".atlas" + File.separator + "atlas.journal"), JOURNAL_BYTES, JOURNAL_FLUSH_INTERVAL);
+        try {
+            // Another running Atlas may own the journal, see recoverTabs
+            journal.lock();
+        } catch (IOException ex) {
+            // Not used, isRefused tells
+        }
+        this.journalIds = new WeakHashMap<>();
+        this.recovery = CompletableFuture.completedFuture(null);
+        this.searchPool = new ForkJoinPool();
+        this.liveSearch = new PauseTransition(Duration.millis(SEARCH_DELAY));
+        this.searchCaches = new WeakHashMap<>();
+        // Read by reloads on the scheduler thread, written on the JavaFX
+        // Application Thread, the entry of a tab is removed when it closes
+        this.sources = new ConcurrentHashMap<>();
+        // Flushed when the JVM exits, not on the JavaFX Application Thread
+        Runtime.getRuntime().addShutdownHook(new Thread(
+                () -> journal.close(JOURNAL_FLUSH_INTERVAL), "atlas-journal-close"));
+        this.resample = new PauseTransition(Duration.millis(RESAMPLE_DELAY));
+        this.resample.setOnFinished(event -> resampleSelectedChart());
     }
 
     /**
-     * Get the timers
+     * Get the scheduler of the auto-reloading tabs
      *
-     * @return
+     * @return The scheduler
      */
-    public Timer[] getTimers() {
-        return timers;
+    public RefreshScheduler getScheduler() {
+        return scheduler;
     }
 
     /**
-     * Reload data/points to populate line chart
+     * Reload data/points to populate line chart. The data is fetched, parsed
+     * and converted to chart data on a background thread, the finished chart
+     * update is then applied on the JavaFX Application Thread at once. If the
+     * server data did not change, the chart and the animation are left as
+     * they are. Tabs reloading the same sources at nearly the same time share
+     * one fetch, see setSources for the sources of a tab.
      *
      * @param tab The current tab
      * @param pane The pane
@@ -83,64 +159,545 @@ public class AtlasController {
      */
     public void reloadData(int tab, BorderPane pane, Path path,
             ImageView image, PathTransition transition) {
+        if (tab < 0) {
+            return;
+        }
+        reloadTab(atlas.getTab(tab), pane, path, image, transition);
+    }
 
-        CollectionOfData dataCollection = dataLoader.loadData();
-        if (!dataCollection.isEmpty()) {
-            pane.getChildren().addAll(path, image);
-            transition.play();
-            LineChart lineChart = atlas.getCharts().get(tab);
-            Clock timer = new Clock();
-            lineChart.setTitle(timer.currentTime());
-            XYChart.Series<Number, Number> series = new XYChart.Series();
-            series.setName("Realtime Data");
+    /**
+     * Reload data/points of a tab, see reloadData. The tab is looked up again
+     * when the data arrives, so a tab that moved or was closed meanwhile is
+     * handled.
+     *
+     * @param tab The tab
+     * @param pane The pane
+     * @param path The path
+     * @param image The image
+     * @param transition The transition
+     * @return A future completed when the data is loaded
+     */
+    private CompletableFuture<Void> reloadTab(Tab tab, BorderPane pane, Path path,
+            ImageView image, PathTransition transition) {
+
+        List<String> addresses = getSources(tab);
+        return recovery.thenCompose((recovered) -> snapshots.get(DataLoader.getKey(addresses),
+                () -> dataLoader.fetchAsync(addresses))).thenAcceptAsync((result) -> {
+            // Async: a snapshot still cached is a completed future, and the
+            // conversion below must not run on the thread asking for it,
+            // the FX thread or the refresh scheduler
+            CollectionOfData dataCollection = result.getData();
+            String failure = result.getFailure();
+            if (dataCollection.isEmpty()) {
+                Platform.runLater(() -> {
+                    atlas.showInformation("No data loaded, controll network status"
+                            + (failure != null ? "\n" + failure : ""));
+                });
+                return;
+            }
+            if (failure != null) {
+                Platform.runLater(() -> {
+                    atlas.showInformation("Loading failed: " + failure);
+                });
+            }
+            String title = new Clock().currentTime();
+            if (!result.isModified()) {
+                // Nothing changed on the server, only a tab that does not
+                // show this collection yet needs to be drawn. Which tab shows
+                // what is only known on the FX thread, the series is still
+                // converted off it.
+                Platform.runLater(() -> {
+                    if (isShownOrClosed(tab, dataCollection)) {
+                        return;
+                    }
+                    CompletableFuture.supplyAsync(() -> {
+                        XYChart.Series<Number, Number> series = new XYChart.Series<>();
+                        series.setName(REALTIME_SERIES);
+                        return getChartData(dataCollection, series);
+                    }).thenAccept((list) -> Platform.runLater(() -> {
+                        if (!isShownOrClosed(tab, dataCollection)) {
+                            showData(tab, dataCollection, list, title, pane, path, image, transition);
+                        }
+                    }));
+                });
+                return;
+            }
+            XYChart.Series<Number, Number> series = new XYChart.Series<>();
+            series.setName(REALTIME_SERIES);
             ObservableList<XYChart.Series<Number, Number>> list
-                    = FXCollections.observableArrayList();
-            list = getChartData(dataCollection, series);
+                    = getChartData(dataCollection, series);
+            Platform.runLater(() -> {
+                showData(tab, dataCollection, list, title, pane, path, image, transition);
+            });
+        }).exceptionally((ex) -> {
+            Platform.runLater(() -> {
+                atlas.showInformation("Loading failed: " + ex.getMessage());
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Determine if a tab is closed or already shows a collection, must be
+     * called on the JavaFX Application Thread
+     *
+     * @param tab The tab
+     * @param dataCollection The collection
+     * @return If the tab needs not show the collection
+     */
+    private boolean isShownOrClosed(Tab tab, CollectionOfData dataCollection) {
+        int index = atlas.indexOfTab(tab);
+        return index < 0 || collections.get(index) == dataCollection;
+    }
+
+    /**
+     * Show a loaded collection in the line chart of a tab, must be called on
+     * the JavaFX Application Thread
+     *
+     * @param tab The tab the data was loaded for
+     * @param dataCollection The loaded data collection
+     * @param list The series converted from the collection
+     * @param title The title of the line chart
+     * @param pane The pane
+     * @param path The path
+     * @param image The image
+     * @param transition The transition
+     */
+    private void showData(Tab tab, CollectionOfData dataCollection,
+            ObservableList<XYChart.Series<Number, Number>> list, String title,
+            BorderPane pane, Path path, ImageView image, PathTransition transition) {
+
+        int index = atlas.indexOfTab(tab);
+        if (index < 0 || index >= collections.size() || index >= atlas.getCharts().size()
+                || collections.get(index) == dataCollection) {
+            return;
+        }
+        collections.set(index, dataCollection);
+        long now = System.currentTimeMillis();
+        getHistory(tab).add(now, dataCollection);
+        journal.append(getJournalId(tab), now, dataCollection);
+        if (!pane.getChildren().contains(image)) {
+            pane.getChildren().addAll(path, image);
+        }
+        transition.play();
+        StageTimer show = StageTimer.start(StageTimer.SHOW);
+        if (atlas.isCanvasRenderer(index)) {
+            CanvasChart canvasChart = atlas.getCanvasCharts().get(index);
+            canvasChart.setTitle(title);
+            showInCanvas(canvasChart, dataCollection, REALTIME_SERIES, () -> {
+                int shownAt = atlas.indexOfTab(tab);
+                return shownAt >= 0 && collections.get(shownAt) == dataCollection;
+            });
+            show.stop(dataCollection.getSize(), 0);
+            return;
+        }
+        LineChart<Number, Number> lineChart = atlas.getCharts().get(index);
+        lineChart.setTitle(title);
+        XYChart.Series<Number, Number> shown = getRealtimeSeries(lineChart);
+        if (incrementalUpdate && shown != null) {
+            seriesUpdater.update(shown, list.get(0).getData());
+            ChartHover.invalidate(lineChart);
+        } else {
             lineChart.getData().setAll(list);
-            /**
-             * Set tooltip
-             */
-            for (XYChart.Series<Number, Number> s : list) {
-                for (XYChart.Data<Number, Number> d : s.getData()) {
-                    Tooltip.install(d.getNode(),
-                            new Tooltip("X: " + d.getXValue().toString() + "\n"
-                                    + "Y : " + d.getYValue() + "\n"
-                                    + "Name: " + d.getExtraValue().toString()));
-                    //Adding class on hover
-                    d.getNode().setOnMouseEntered(event -> d.getNode().getStyleClass().add("onHover"));
-                    //Removing class on exit
-                    d.getNode().setOnMouseExited(event -> d.getNode().getStyleClass().remove("onHover"));
-                }
+        }
+        int points = list.get(0).getData().size();
+        show.stop(points, 0);
+        LayoutTimer.time(lineChart, points);
+    }
+
+    /**
+     * Get the series of loaded data shown in a line chart
+     *
+     * @param lineChart The line chart
+     * @return The series, or null if the chart shows nothing or a search
+     * result
+     */
+    private XYChart.Series<Number, Number> getRealtimeSeries(LineChart<Number, Number> lineChart) {
+        if (lineChart.getData().size() == 1
+                && REALTIME_SERIES.equals(lineChart.getData().get(0).getName())) {
+            return lineChart.getData().get(0);
+        }
+        return null;
+    }
+
+    /**
+     * Turn incremental chart updates on or off. When on, a reload only adds,
+     * removes and moves the points that changed since the previous reload,
+     * when off the whole series is replaced.
+     *
+     * @param incrementalUpdate If reloads update the chart incrementally
+     */
+    public void setIncrementalUpdate(boolean incrementalUpdate) {
+        this.incrementalUpdate = incrementalUpdate;
+    }
+
+    /**
+     * Get the reload history of a tab, every reload that changed the data is
+     * kept, older reloads rolled up per minute and per ten minutes. Closed
+     * tabs lose their history.
+     *
+     * @param tab The tab
+     * @return The history
+     */
+    public ReloadHistory getHistory(Tab tab) {
+        ReloadHistory history = histories.get(tab);
+        if (history == null) {
+            history = new ReloadHistory(HISTORY_BYTES);
+            histories.put(tab, history);
+        }
+        return history;
+    }
+
+    /**
+     * Get the addresses of the sources a tab reads
+     *
+     * @param tab The tab
+     * @return The addresses, the default server if none were set
+     */
+    private List<String> getSources(Tab tab) {
+        List<String> addresses = sources.get(tab);
+        return addresses != null ? addresses : Collections.singletonList(dataLoader.getAddress());
+    }
+
+    /**
+     * Get the addresses of the sources a tab reads, as text for the sources
+     * dialog
+     *
+     * @param tab The position of the tab
+     * @return The addresses separated by spaces
+     */
+    public String getSourcesText(int tab) {
+        return tab < 0 ? "" : DataLoader.getKey(getSources(atlas.getTab(tab)));
+    }
+
+    /**
+     * Set the sources a tab reads from the next reload on. Several sources
+     * are fetched at once and their points combined, see DataLoader.
+     *
+     * @param tab The position of the tab
+     * @param text The addresses separated by spaces or commas, e.g.
+     * "http://server.address.se file:/data/points.txt socket://host:9000",
+     * empty for the default server
+     */
+    public void setSources(int tab, String text) {
+        if (tab < 0) {
+            return;
+        }
+        ArrayList<String> addresses = new ArrayList<>();
+        for (String address : text.trim().split("[\\s,]+")) {
+            if (address.isEmpty()) {
+                continue;
+            }
+            try {
+                dataLoader.getSource(address);
+            } catch (IllegalArgumentException ex) {
+                atlas.showInformation("Invalid source: " + ex.getMessage());
+                return;
             }
+            if (!addresses.contains(address)) {
+                addresses.add(address);
+            }
+        }
+        Tab key = atlas.getTab(tab);
+        if (addresses.isEmpty()) {
+            sources.remove(key);
         } else {
-            atlas.showInformation("No data loaded, controll network status");
+            sources.put(key, Collections.unmodifiableList(addresses));
+        }
+    }
+
+    /**
+     * Get the id of a tab in the journal
+     *
+     * @param tab The tab
+     * @return The id
+     */
+    private int getJournalId(Tab tab) {
+        Integer id = journalIds.get(tab);
+        if (id == null) {
+            id = nextJournalId++;
+            journalIds.put(tab, id);
+        }
+        return id;
+    }
+
+    /**
+     * Called before a tab is closed, so it is not rebuilt at the next start
+     * and its sources are forgotten
+     *
+     * @param tab The position of the tab
+     */
+    public void tabRemoved(int tab) {
+        if (tab >= 0) {
+            sources.remove(atlas.getTab(tab));
+            Integer id = journalIds.remove(atlas.getTab(tab));
+            if (id != null) {
+                journal.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the tabs from the journal of the previous run. The journal is
+     * read on a background thread, the first recovered collection goes into
+     * the first tab if it is still empty, the others get new tabs. Reloads
+     * wait until the recovered tabs have their journal ids, so no record is
+     * appended while the journal is read and no new tab takes the id of a
+     * recovered one. If another running Atlas holds the journal, nothing is
+     * recovered and the user is told that this window runs without it.
+     *
+     * @param tabView The tab pane
+     */
+    public void recoverTabs(TabPane tabView) {
+        if (journal.isRefused()) {
+            Platform.runLater(() -> {
+                atlas.showInformation("Another Atlas is using the journal, "
+                        + "the tabs of this window are not kept after it closes");
+            });
+            return;
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        recovery = done;
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return journal.recover();
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }).thenAccept((recovered) -> Platform.runLater(() -> {
+            try {
+                showRecovered(tabView, recovered);
+            } finally {
+                done.complete(null);
+            }
+        })).exceptionally((ex) -> {
+            Platform.runLater(() -> {
+                atlas.showInformation("Recovering the tabs failed: " + ex.getMessage());
+            });
+            done.complete(null);
+            return null;
+        });
+    }
+
+    /**
+     * Put the recovered collections into tabs, on the JavaFX Application
+     * Thread
+     */
+    private void showRecovered(TabPane tabView, Map<Integer, SnapshotJournal.Snapshot> recovered) {
+        for (Map.Entry<Integer, SnapshotJournal.Snapshot> entry : recovered.entrySet()) {
+            int index = collections.size() - 1;
+            if (index < 0 || collections.get(index).getSize() > 0
+                    || journalIds.containsKey(atlas.getTab(index))) {
+                createMap(tabView);
+                index = collections.size() - 1;
+            }
+            journalIds.put(tabView.getTabs().get(index), entry.getKey());
+            nextJournalId = Math.max(nextJournalId, entry.getKey() + 1);
+            collections.set(index, entry.getValue().getData());
+            String title = "Recovered " + new Clock().format(entry.getValue().getTime());
+            int shown = index;
+            // The chart of a new tab is created by a later runLater
+            Platform.runLater(() -> {
+                updateChartView(shown);
+                atlas.getCharts().get(shown).setTitle(title);
+                atlas.getCanvasCharts().get(shown).setTitle(title);
+            });
+        }
+    }
+
+    /**
+     * Show the data a tab had at a past moment, without fetching. The
+     * collection of the tab is not changed, Refresh shows it again.
+     *
+     * @param tab The position of the tab
+     * @param time The moment in milliseconds
+     */
+    public void showHistory(int tab, long time) {
+        if (tab < 0) {
+            return;
+        }
+        ReloadHistory.Snapshot snapshot = getHistory(atlas.getTab(tab)).get(time);
+        if (snapshot == null) {
+            atlas.showInformation("No history at that time");
+            return;
+        }
+        String title = "History " + new Clock().format(snapshot.getTime());
+        if (atlas.isCanvasRenderer(tab)) {
+            CanvasChart canvasChart = atlas.getCanvasCharts().get(tab);
+            canvasChart.setTitle(title);
+            showInCanvas(canvasChart, snapshot.getData(), title, () -> true);
+        } else {
+            XYChart.Series<Number, Number> series = new XYChart.Series<>();
+            series.setName(title);
+            LineChart<Number, Number> lineChart = atlas.getCharts().get(tab);
+            lineChart.setTitle(title);
+            lineChart.getData().setAll(getChartData(snapshot.getData(), series));
+        }
+    }
+
+    /**
+     * Show the statistics of the data of a tab. They are kept by a loaded
+     * collection, but a memory-mapped one counts them in a pass over the
+     * file at the first request, so they are described off the FX thread.
+     *
+     * @param tab The position of the tab
+     */
+    public void showStatistics(int tab) {
+        if (tab < 0 || tab >= collections.size()) {
+            return;
+        }
+        CollectionOfData data = collections.get(tab);
+        CompletableFuture.supplyAsync(() -> data.getSize() + " points\n\n"
+                + "X\n" + describe(data.getXStatistics()) + "\n\n"
+                + "Y\n" + describe(data.getYStatistics()), dataLoader.getExecutor())
+                .thenAccept((text) -> Platform.runLater(() -> atlas.showInformation(text)));
+    }
+
+    /**
+     * Show the recent durations of the stages of loading: the latest, the
+     * median, the 90th and 99th percentile and how many took less than 1 ms,
+     * 10 ms, 100 ms, 1 s or longer, see StageTimer.
+     */
+    public void showTimings() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-9s %6s %9s %9s %9s %9s   %s%n", "Stage", "Runs",
+                "Last", "Median", "90%", "99%", "<1ms <10ms <100ms <1s >1s"));
+        for (int stage = 0; stage < StageTimer.getStageCount(); stage++) {
+            LatencyHistogram histogram = StageTimer.getHistogram(stage);
+            StringBuilder buckets = new StringBuilder();
+            for (int count : histogram.getBuckets()) {
+                buckets.append(' ').append(count);
+            }
+            text.append(String.format("%-9s %6d %9s %9s %9s %9s  %s%n", StageTimer.getName(stage),
+                    histogram.getCount(), millis(histogram.getLast()),
+                    millis(histogram.getPercentile(50)), millis(histogram.getPercentile(90)),
+                    millis(histogram.getPercentile(99)), buckets));
+        }
+        text.append(String.format("%nOf the last %d runs of each stage, in milliseconds",
+                LatencyHistogram.RECENT));
+        atlas.showInformation(text.toString());
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1f", nanos / 1e6);
+    }
+
+    private static String describe(Statistics statistics) {
+        if (statistics.getCount() == 0) {
+            return "No values";
+        }
+        return String.format("Range: %g .. %g%n"
+                + "Mean: %g, standard deviation: %g%n"
+                + "Quartiles: %g, %g, %g%n"
+                + "99th percentile: %g%s",
+                statistics.getMin(), statistics.getMax(),
+                statistics.getMean(), statistics.getStandardDeviation(),
+                statistics.getQuantile(0.25), statistics.getQuantile(0.5),
+                statistics.getQuantile(0.75), statistics.getQuantile(0.99),
+                statistics.getMissing() > 0 ? "\nMissing: " + statistics.getMissing() : "");
+    }
+
+    /**
+     * Draw a tab with its canvas chart or its line chart. The canvas chart
+     * draws every point without making nodes, for collections too large for
+     * the line chart.
+     *
+     * @param tab The position of the tab
+     * @param canvas True for the canvas chart, false for the line chart
+     */
+    public void setCanvasRenderer(int tab, boolean canvas) {
+        if (tab < 0) {
+            return;
+        }
+        atlas.setCanvasRenderer(tab, canvas);
+        if (collections.get(tab).getSize() > 0) {
+            updateChartView(tab);
         }
     }
 
     /**
-     * Get the data collection and add to series of line chart
+     * Get the data collection and add to series of line chart. The collection
+     * is walked once and the series is filled with a single change. A
+     * collection with more points than the chart is wide is downsampled, see
+     * Downsampler, the collection itself keeps all points.
      *
      * @param dataCollection The loaded data collection
      * @param series The current series
      * @return An observable list of series
      */
     private ObservableList<XYChart.Series<Number, Number>> getChartData(CollectionOfData dataCollection,
-            XYChart.Series series) {
+            XYChart.Series<Number, Number> series) {
 
         ObservableList<XYChart.Series<Number, Number>> list
                 = FXCollections.observableArrayList();
 
-        for (int i = 0; i < dataCollection.getSize(); i++) {
-            series.getData().add(new XYChart.Data<>(dataCollection.getData().get(i).getX(),
-                    dataCollection.getData().get(i).getY(),
-                    dataCollection.getData().get(i).getName()));
-        }
+        StageTimer convert = StageTimer.start(StageTimer.CONVERT);
+        ArrayList<XYChart.Data<Number, Number>> points = getChartPoints(dataCollection, chartWidth);
+        convert.stop(points.size(), 0);
+        series.getData().setAll(points);
         list.add(series);
         return list;
     }
 
     /**
-     * Auto load data and re-draw line chart
+     * Convert a collection to the points of a line chart series, downsampled
+     * to the width of the chart
+     *
+     * @param dataCollection The data collection
+     * @param width The width of the chart in pixels
+     * @return The points to draw, ordered by x
+     */
+    public static ArrayList<XYChart.Data<Number, Number>> getChartPoints(CollectionOfData dataCollection,
+            int width) {
+        int[] rows = Downsampler.select(dataCollection, width);
+        ArrayList<XYChart.Data<Number, Number>> points = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            points.add(new XYChart.Data<>(dataCollection.getX(row),
+                    dataCollection.getY(row),
+                    dataCollection.getName(row)));
+        }
+        return points;
+    }
+
+    /**
+     * Called when a line chart changed size. The selected chart is
+     * downsampled again for the new width once the resizing stopped.
+     *
+     * @param lineChart The line chart
+     */
+    public void chartResized(LineChart<Number, Number> lineChart) {
+        int width = (int) Math.round(lineChart.getWidth());
+        if (width > 0 && width != chartWidth) {
+            chartWidth = width;
+            resample.playFromStart();
+        }
+    }
+
+    /**
+     * Draw the loaded data of the selected tab again for the current chart
+     * width, if it was downsampled for another width. A search result is left
+     * as it is.
+     */
+    private void resampleSelectedChart() {
+        int index = atlas.getSelectedTab();
+        if (index < 0 || index >= collections.size() || index >= atlas.getCharts().size()
+                || atlas.isCanvasRenderer(index)) {
+            return;
+        }
+        CollectionOfData collection = collections.get(index);
+        XYChart.Series<Number, Number> shown = getRealtimeSeries(atlas.getCharts().get(index));
+        if (shown == null) {
+            return;
+        }
+        int shownPoints = shown.getData().size();
+        if (shownPoints > chartWidth || shownPoints < collection.getSize()) {
+            updateChartView(index);
+        }
+    }
+
+    /**
+     * Auto load data and re-draw line chart. All tabs share one scheduler, the
+     * selected tab is refreshed before background tabs.
      *
      * @param tab The current tab
      * @param pane The pane
@@ -149,30 +706,12 @@ public class AtlasController {
      * @param transition The transition
      */
     public void autoReload(int tab, BorderPane pane, Path path, ImageView image, PathTransition transition) {
-
-        /**
-         * Determine if any timer remains
-         */
-        int numOfFreeTimers = 0;
-        for (int i = 0; i < NUM_TIMER; i++) {
-            if (timers[i] == null) {
-                numOfFreeTimers++;
-            }
-        }
-        if (numOfFreeTimers < 1) {
-            atlas.showInformation("Timer used up");
+        if (tab < 0) {
             return;
         }
-        Timer timer = new Timer();
-        timers[tab] = timer;
-        timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                Platform.runLater(() -> {
-                    reloadData(tab, pane, path, image, transition);
-                });
-            }
-        }, 0, AUTO_LOAD_INTERVAL);
+        Tab key = atlas.getTab(tab);
+        scheduler.schedule(key, AUTO_LOAD_INTERVAL,
+                () -> reloadTab(key, pane, path, image, transition));
     }
 
     /**
@@ -181,13 +720,20 @@ public class AtlasController {
      * @param tab The current tab
      */
     public void stopAutoLoad(int tab) {
-        if (timers[tab] != null) {
-            timers[tab].cancel();
-            timers[tab].purge();
-            timers[tab] = null;
+        if (tab >= 0) {
+            scheduler.cancel(atlas.getTab(tab));
         }
     }
 
+    /**
+     * Give the refresh of the selected tab priority over the other tabs
+     *
+     * @param tab The selected tab
+     */
+    public void tabSelected(Tab tab) {
+        scheduler.setPreferred(tab);
+    }
+
     /**
      * Create a new map in the tab view
      *
@@ -198,6 +744,28 @@ public class AtlasController {
         tabView.getTabs().add(atlas.createTab());
     }
 
+    /**
+     * Draw a collection in a canvas chart. Its points are prepared off the
+     * FX thread, see CanvasChart.prepare, and dropped if the chart was given
+     * other data meanwhile or the collection is no longer wanted.
+     *
+     * @param canvasChart The canvas chart
+     * @param shown The collection to draw
+     * @param name The name of the series
+     * @param wanted Tells on the FX thread if the collection is still wanted
+     */
+    private void showInCanvas(CanvasChart canvasChart, CollectionOfData shown, String name,
+            BooleanSupplier wanted) {
+        CollectionOfData drawn = canvasChart.getData();
+        CompletableFuture.supplyAsync(() -> CanvasChart.prepare(shown))
+                .thenAccept((points) -> Platform.runLater(() -> {
+                    if (atlas.getCanvasCharts().contains(canvasChart)
+                            && canvasChart.getData() == drawn && wanted.getAsBoolean()) {
+                        canvasChart.setData(points, name);
+                    }
+                }));
+    }
+
     /**
      * Update line chart after loading a file
      *
@@ -210,9 +778,21 @@ public class AtlasController {
         }
         if (collections.get(collection).getSize() == 0) {
             atlas.showInformation("No result.");
+        } else if (atlas.isCanvasRenderer(collection)) {
+            // The points are prepared off the FX thread, and dropped if the
+            // chart was given other data meanwhile
+            CollectionOfData shown = collections.get(collection);
+            CanvasChart canvasChart = atlas.getCanvasCharts().get(collection);
+            showInCanvas(canvasChart, shown, REALTIME_SERIES, () -> {
+                int index = atlas.getCanvasCharts().indexOf(canvasChart);
+                return collections.get(index) == shown;
+            });
         } else {
-            data = FXCollections.observableArrayList(collections.get(collection).getData());
-            atlas.getCharts().get(collection).getData().setAll(data);
+            XYChart.Series<Number, Number> series = new XYChart.Series<>();
+            series.setName(REALTIME_SERIES);
+            ObservableList<XYChart.Series<Number, Number>> list
+                    = getChartData(collections.get(collection), series);
+            atlas.getCharts().get(collection).getData().setAll(list);
         }
     }
 
@@ -227,8 +807,29 @@ public class AtlasController {
         if (temp.getSize() == 0) {
             atlas.showInformation("No result");
         } else {
-            data = FXCollections.observableArrayList(temp.getData());
-            atlas.getCharts().get(atlas.getSelectedTab()).getData().setAll(data);
+            showSearchResult(atlas.getSelectedTab(), temp);
+        }
+    }
+
+    /**
+     * Show a search result in the chart of a tab
+     *
+     * @param tab The position of the tab, nothing is shown if it is negative
+     * @param temp The search result
+     */
+    private void showSearchResult(int tab, CollectionOfData temp) {
+        if (tab < 0 || tab >= atlas.getCharts().size()) {
+            return;
+        }
+        if (atlas.isCanvasRenderer(tab)) {
+            // A large result is sorted and indexed off the FX thread
+            showInCanvas(atlas.getCanvasCharts().get(tab), temp, "Search Result", () -> true);
+        } else {
+            XYChart.Series<Number, Number> series = new XYChart.Series<>();
+            series.setName("Search Result");
+            ObservableList<XYChart.Series<Number, Number>> list
+                    = getChartData(temp, series);
+            atlas.getCharts().get(tab).getData().setAll(list);
         }
     }
 
@@ -309,26 +910,78 @@ public class AtlasController {
     }
 
     /**
-     * Load a file
+     * Load a file. The file is read, or mapped if it is large, and prepared
+     * for the chart the new tab shows on a loader thread, the tab is drawn on
+     * the JavaFX Application Thread when it is done.
      *
      * @param fileChooser The file chooser
      * @param tabView The tab view
      */
     public void loadFile(FileChooser fileChooser, TabPane tabView) {
         fileChooser.setTitle("Open file");
-        try {
-            File name = fileChooser.showOpenDialog(primaryStage);
-            if (name != null) {
-                createMap(tabView);
-                collections.get(atlas.getSelectedTab()).deSerializeFromFile(name);
-                updateChartView(atlas.getSelectedTab());
+        File name = fileChooser.showOpenDialog(primaryStage);
+        if (name == null) {
+            atlas.showInformation("Canceled file load");
+            return;
+        }
+        createMap(tabView);
+        Tab tab = tabView.getTabs().get(collections.size() - 1);
+        CollectionOfData empty = collections.get(collections.size() - 1);
+        // Only the chart the tab shows is prepared
+        boolean canvas = atlas.isCanvasRenderer(collections.size() - 1);
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                CollectionOfData loaded;
+                if (name.length() >= MAPPED_FILE_SIZE && !MapFile.isLegacy(name)) {
+                    // Large maps are opened without reading every point
+                    loaded = MapFile.map(name);
+                } else {
+                    loaded = new CollectionOfData();
+                    loaded.deSerializeFromFile(name);
+                    // Sorted here, not by the first chart on the FX thread
+                    loaded.buildXIndex();
+                }
+                return loaded;
+            } catch (IOException | ClassNotFoundException ex) {
+                throw new CompletionException(ex);
+            }
+        }, dataLoader.getExecutor()).thenAcceptAsync((loaded) -> {
+            CanvasChart.Points points = null;
+            ObservableList<XYChart.Series<Number, Number>> list = null;
+            if (canvas) {
+                points = CanvasChart.prepare(loaded);
             } else {
-                atlas.showInformation("Canceled file load");
+                XYChart.Series<Number, Number> series = new XYChart.Series<>();
+                series.setName(REALTIME_SERIES);
+                list = getChartData(loaded, series);
             }
-        } catch (IOException | ClassNotFoundException ex) {
-            atlas.showInformation(ex.getMessage());
-            primaryStage.close();
-        }
+            CanvasChart.Points prepared = points;
+            ObservableList<XYChart.Series<Number, Number>> converted = list;
+            Platform.runLater(() -> {
+                int index = atlas.indexOfTab(tab);
+                if (index < 0 || collections.get(index) != empty) {
+                    return;
+                }
+                collections.set(index, loaded);
+                if (loaded.getSize() == 0) {
+                    atlas.showInformation("No result.");
+                } else if (atlas.isCanvasRenderer(index) != canvas) {
+                    // The renderer was switched while loading
+                    updateChartView(index);
+                } else if (canvas) {
+                    atlas.getCanvasCharts().get(index).setData(prepared, REALTIME_SERIES);
+                } else {
+                    atlas.getCharts().get(index).getData().setAll(converted);
+                }
+            });
+        }, dataLoader.getExecutor()).exceptionally((ex) -> {
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            Platform.runLater(() -> {
+                atlas.showInformation(cause.getMessage());
+                primaryStage.close();
+            });
+            return null;
+        });
     }
 
     /**
@@ -387,7 +1040,7 @@ public class AtlasController {
     }
 
     /**
-     * Search data/points
+     * Search data/points of the selected tab
      *
      * @param radioGroup The radio toggle group
      * @param xRadio The x radio button
@@ -396,38 +1049,195 @@ public class AtlasController {
      * @param searchField The search field for input
      */
     public void searchData(ToggleGroup radioGroup, RadioButton xRadio, RadioButton yRadio, RadioButton nameRadio, TextField searchField) {
+        searchData(radioGroup, xRadio, yRadio, nameRadio, null, searchField, false, true);
+    }
+
+    /**
+     * Search data/points of the selected tab or of all tabs. The search runs
+     * on the search pool, each tab shows its result as soon as it is found.
+     * A new search, or an edit of the search field, cancels the running one.
+     *
+     * @param radioGroup The radio toggle group
+     * @param xRadio The x radio button
+     * @param yRadio The y radio button
+     * @param nameRadio The name radio button
+     * @param queryRadio The query radio button
+     * @param searchField The search field for input
+     * @param allTabs True to search every tab, false for the selected tab
+     * @param matchCase True if names must match upper and lower case
+     */
+    public void searchData(ToggleGroup radioGroup, RadioButton xRadio, RadioButton yRadio,
+            RadioButton nameRadio, RadioButton queryRadio, TextField searchField, boolean allTabs,
+            boolean matchCase) {
+        liveSearch.stop();
+        searchData(radioGroup, xRadio, yRadio, nameRadio, queryRadio, searchField, allTabs,
+                matchCase, false);
+    }
+
+    /**
+     * Search as the user types: the search starts once the input has not
+     * changed for a short while, and a running search is cancelled at once
+     *
+     * @param radioGroup The radio toggle group
+     * @param xRadio The x radio button
+     * @param yRadio The y radio button
+     * @param nameRadio The name radio button
+     * @param queryRadio The query radio button
+     * @param searchField The search field for input
+     * @param allTabs True to search every tab, false for the selected tab
+     * @param matchCase True if names must match upper and lower case
+     */
+    public void searchChanged(ToggleGroup radioGroup, RadioButton xRadio, RadioButton yRadio,
+            RadioButton nameRadio, RadioButton queryRadio, TextField searchField, boolean allTabs,
+            boolean matchCase) {
+        cancelSearch();
+        liveSearch.setOnFinished(event -> searchData(radioGroup, xRadio, yRadio,
+                nameRadio, queryRadio, searchField, allTabs, matchCase, true));
+        liveSearch.playFromStart();
+    }
+
+    /**
+     * Start a search. A live search, started while typing, does not report
+     * unfinished input or empty results, it shows what is found so far and
+     * restores the charts when the input is cleared.
+     */
+    private void searchData(ToggleGroup radioGroup, RadioButton xRadio, RadioButton yRadio,
+            RadioButton nameRadio, RadioButton queryRadio, TextField searchField,
+            boolean allTabs, boolean matchCase, boolean live) {
         String inputValue = searchField.getText();
 
+        cancelSearch();
+        ArrayList<Tab> tabs = new ArrayList<>();
+        ArrayList<CollectionOfData> targets = new ArrayList<>();
+        ArrayList<SearchCache> caches = new ArrayList<>();
+        for (int i = 0; i < collections.size(); i++) {
+            if (allTabs || i == atlas.getSelectedTab()) {
+                tabs.add(atlas.getTab(i));
+                targets.add(collections.get(i));
+                caches.add(getSearchCache(atlas.getTab(i)));
+            }
+        }
+
         if (inputValue == null || inputValue.isEmpty()) {
-            atlas.showInformation("Invalid search, try again");
-        } else {
-            CollectionOfData temp = new CollectionOfData();
+            if (live) {
+                // Tabs with nothing loaded have nothing to restore, and no
+                // alert is shown for them while typing
+                for (Tab tab : tabs) {
+                    int index = atlas.indexOfTab(tab);
+                    if (!collections.get(index).isEmpty()) {
+                        updateChartView(index);
+                    }
+                }
+            } else {
+                atlas.showInformation("Invalid search, try again");
+            }
+            return;
+        }
+        SearchQuery query;
+        try {
+            query = buildQuery(radioGroup, xRadio, yRadio, nameRadio, queryRadio, inputValue,
+                    !matchCase);
+        } catch (NumberFormatException ex) {
+            if (!live) {
+                atlas.showInformation("Invalid search, enter a value or a range like 10..20");
+            }
+            return;
+        } catch (IllegalArgumentException ex) {
+            if (!live) {
+                atlas.showInformation("Invalid query: " + ex.getMessage());
+            }
+            return;
+        }
+        if (query == null) {
+            return;
+        }
 
-            if (radioGroup.getSelectedToggle() == xRadio) {
+        ParallelSearch search = new ParallelSearch(searchPool, query);
+        currentSearch = search;
+        int[] found = new int[1];
+        search.run(targets, caches, (position, result) -> {
+            Platform.runLater(() -> {
+                if (!search.isCancelled() && (live || result.getSize() > 0)) {
+                    found[0] += result.getSize();
+                    showSearchResult(atlas.indexOfTab(tabs.get(position)), result);
+                }
+            });
+        }).whenComplete((done, ex) -> {
+            Platform.runLater(() -> {
+                if (search.isCancelled() || currentSearch != search) {
+                    return;
+                }
+                currentSearch = null;
+                if (live) {
+                    return;
+                }
+                if (ex != null) {
+                    atlas.showInformation("Search failed: " + ex.getMessage());
+                } else if (found[0] == 0) {
+                    atlas.showInformation("No result");
+                }
+            });
+        });
+    }
 
-                ArrayList<Data> dataWithX = collections.get(atlas.getSelectedTab()).
-                        getDataByX(inputValue);
+    /**
+     * Cancel the running search, its remaining results are not shown
+     */
+    public void cancelSearch() {
+        if (currentSearch != null) {
+            currentSearch.cancel();
+            currentSearch = null;
+        }
+    }
 
-                dataWithX.forEach((d) -> {
-                    temp.addData(d);
-                });
-            } else if (radioGroup.getSelectedToggle() == yRadio) {
-                ArrayList<Data> dataWithY = collections.get(atlas.getSelectedTab()).
-                        getDataByY(inputValue);
+    /**
+     * Get the search results kept for a tab
+     *
+     * @param tab The tab
+     * @return The search cache of the tab
+     */
+    public SearchCache getSearchCache(Tab tab) {
+        SearchCache cache = searchCaches.get(tab);
+        if (cache == null) {
+            cache = new SearchCache(SEARCH_CACHE_BYTES);
+            searchCaches.put(tab, cache);
+        }
+        return cache;
+    }
 
-                dataWithY.forEach((d) -> {
-                    temp.addData(d);
-                });
-            } else if (radioGroup.getSelectedToggle() == nameRadio) {
-                ArrayList<Data> dataWithName = collections.get(atlas.getSelectedTab()).
-                        getDataByName(inputValue);
+    /**
+     * Make the search selected by the radio buttons, the input is parsed
+     * here so a wrong input is reported before searching
+     *
+     * @param radioGroup The radio toggle group
+     * @param xRadio The x radio button
+     * @param yRadio The y radio button
+     * @param nameRadio The name radio button
+     * @param queryRadio The query radio button
+     * @param inputValue The input value, or range for x and y, or query
+     * @param ignoreCase If names are searched regardless of case
+     * @return The query, or null if no radio button is selected
+     * @throws NumberFormatException If x or y is searched and the input is
+     * not a value or range
+     * @throws IllegalArgumentException If the input is not a query
+     */
+    private SearchQuery buildQuery(ToggleGroup radioGroup, RadioButton xRadio,
+            RadioButton yRadio, RadioButton nameRadio, RadioButton queryRadio, String inputValue,
+            boolean ignoreCase) {
 
-                dataWithName.forEach((d) -> {
-                    temp.addData(d);
-                });
-            }
-            updateSearchView(temp);
+        if (radioGroup.getSelectedToggle() == xRadio) {
+            return SearchQuery.byX(CoordinateRange.parse(inputValue));
+        } else if (radioGroup.getSelectedToggle() == yRadio) {
+            return SearchQuery.byY(CoordinateRange.parse(inputValue));
+        } else if (radioGroup.getSelectedToggle() == nameRadio) {
+            // A trailing * matches the start of the name
+            boolean prefix = inputValue.endsWith("*");
+            String text = prefix ? inputValue.substring(0, inputValue.length() - 1) : inputValue;
+            return SearchQuery.byName(text, prefix, ignoreCase);
+        } else if (queryRadio != null && radioGroup.getSelectedToggle() == queryRadio) {
+            return SearchQuery.byQuery(inputValue, ignoreCase);
         }
+        return null;
     }
 
     /**
@@ -441,4 +1251,51 @@ public class AtlasController {
             atlas.showInformation(ex.getMessage());
         }
     }
+
+    /**
+     * Time the layout of a chart after an update, from the update until the
+     * next pulse has laid the chart out, then stop listening. The chart is
+     * laid out by the pulse as usual, not forced to lay out early. A chart
+     * has at most one timer, so a chart that is not laid out, e.g. in a
+     * hidden tab, does not collect one per update.
+     */
+    private static class LayoutTimer implements ChangeListener<Boolean> {
+
+        private static final String KEY = "atlas.layoutTimer";
+
+        private final LineChart<Number, Number> chart;
+        private final StageTimer timer;
+        private final int points;
+
+        private LayoutTimer(LineChart<Number, Number> chart, int points) {
+            this.chart = chart;
+            this.timer = StageTimer.start(StageTimer.LAYOUT);
+            this.points = points;
+        }
+
+        /**
+         * Start timing the layout of an updated chart, unless it is laid
+         * out already or a layout is being timed
+         *
+         * @param chart The updated chart
+         * @param points The number of points shown
+         */
+        static void time(LineChart<Number, Number> chart, int points) {
+            if (chart.isNeedsLayout() && !chart.getProperties().containsKey(KEY)) {
+                LayoutTimer layout = new LayoutTimer(chart, points);
+                chart.getProperties().put(KEY, layout);
+                chart.needsLayoutProperty().addListener(layout);
+            }
+        }
+
+        @Override
+        public void changed(ObservableValue<? extends Boolean> observable,
+                Boolean wasNeeded, Boolean needed) {
+            if (!needed) {
+                observable.removeListener(this);
+                chart.getProperties().remove(KEY);
+                timer.stop(points, 0);
+            }
+        }
+    }
 }
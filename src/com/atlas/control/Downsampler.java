@@ -0,0 +1,185 @@
+package com.atlas.control;
+
+import com.atlas.model.CollectionOfData;
+import java.util.Arrays;
+
+/**
+ * Choose the points of a collection that are drawn in a line chart.
+ *
+ * A chart can not show more points than it has pixels across, so a large
+ * collection is reduced with Largest-Triangle-Three-Buckets: the points,
+ * ordered by x, are split in as many buckets as points are wanted, and of
+ * each bucket the point is kept that makes the largest triangle with the
+ * point kept before it and the average of the next bucket. Peaks and dips
+ * make large triangles, so the shape of the line is kept. The first and the
+ * last point are always kept.
+ *
+ * Only the chart gets fewer points, the collection is not changed.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class Downsampler {
+
+    /**
+     * The most points of a memory-mapped collection that are read for
+     * downsampling, more would page in the whole file
+     */
+    private static final int MAX_MAPPED_POINTS = 10000;
+
+    private Downsampler() {
+    }
+
+    /**
+     * Get the points that are downsampled, ordered by x: all points, or
+     * evenly spaced points of a large memory-mapped collection, so only
+     * those parts of the file are paged in
+     *
+     * @param data The collection of data
+     * @return The indexes of the points, ordered by x
+     */
+    public static int[] orderByX(CollectionOfData data) {
+        int size = data.getSize();
+        if (isSampled(data)) {
+            int step = (size + MAX_MAPPED_POINTS - 1) / MAX_MAPPED_POINTS;
+            int[] rows = new int[(size + step - 1) / step];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = i * step;
+            }
+            return sortByX(data, rows);
+        }
+        return data.orderByX();
+    }
+
+    /**
+     * Determine if only evenly spaced points of a collection are read, see
+     * orderByX
+     *
+     * @param data The collection of data
+     * @return If the collection is sampled
+     */
+    public static boolean isSampled(CollectionOfData data) {
+        return data.isMapped() && data.getSize() > MAX_MAPPED_POINTS;
+    }
+
+    /**
+     * Get the points to draw, ordered by x
+     *
+     * @param data The collection of data
+     * @param threshold The number of points wanted, e.g. the width of the
+     * chart in pixels
+     * @return The indexes of the points to draw
+     */
+    public static int[] select(CollectionOfData data, int threshold) {
+        int[] rows = orderByX(data);
+        if (rows.length <= threshold) {
+            return rows;
+        }
+
+        double[] xs = new double[rows.length];
+        double[] ys = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            xs[i] = data.getX(rows[i]);
+            ys[i] = data.getY(rows[i]);
+        }
+        int[] kept = lttb(xs, ys, threshold);
+        int[] selected = new int[kept.length];
+        for (int i = 0; i < kept.length; i++) {
+            selected[i] = rows[kept[i]];
+        }
+        return selected;
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets
+     *
+     * @param xs The x-coordinates, ascending
+     * @param ys The y-coordinates
+     * @param threshold The number of points wanted
+     * @return The positions of the kept points, ascending
+     */
+    public static int[] lttb(double[] xs, double[] ys, int threshold) {
+        int length = xs.length;
+        if (threshold >= length || threshold < 3) {
+            int[] all = new int[length];
+            for (int i = 0; i < length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        int[] kept = new int[threshold];
+        int buckets = threshold - 2;
+        int previous = 0;
+        kept[0] = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int start = bucketStart(bucket, length, buckets);
+            int end = bucketStart(bucket + 1, length, buckets);
+            int nextEnd = bucket + 1 < buckets ? bucketStart(bucket + 2, length, buckets) : length;
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = end; i < nextEnd; i++) {
+                averageX += xs[i];
+                averageY += ys[i];
+            }
+            averageX /= nextEnd - end;
+            averageY /= nextEnd - end;
+
+            double ax = xs[previous];
+            double ay = ys[previous];
+            double largest = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                // Twice the area, the factor does not change the largest
+                double area = Math.abs((ax - averageX) * (ys[i] - ay)
+                        - (ax - xs[i]) * (averageY - ay));
+                if (area > largest) {
+                    largest = area;
+                    chosen = i;
+                }
+            }
+            kept[bucket + 1] = chosen;
+            previous = chosen;
+        }
+        kept[threshold - 1] = length - 1;
+        return kept;
+    }
+
+    /**
+     * Get the first position of a bucket of lttb. The points between the
+     * first and the last are split in whole numbers, so the last bucket ends
+     * right before the last point and no point falls between two buckets.
+     */
+    private static int bucketStart(int bucket, int length, int buckets) {
+        return (int) ((long) bucket * (length - 2) / buckets) + 1;
+    }
+
+    /**
+     * Order a few rows by x, rows with a NaN x are left out
+     */
+    private static int[] sortByX(CollectionOfData data, int[] rows) {
+        Integer[] order = new Integer[rows.length];
+        double[] xs = new double[rows.length];
+        int count = 0;
+        for (int row : rows) {
+            double x = data.getX(row);
+            if (!Double.isNaN(x)) {
+                xs[count] = x;
+                order[count] = count;
+                count++;
+            }
+        }
+        Arrays.sort(order, 0, count, (a, b) -> Double.compare(xs[a], xs[b]));
+        int[] kept = new int[count];
+        int next = 0;
+        for (int row : rows) {
+            if (!Double.isNaN(data.getX(row))) {
+                kept[next++] = row;
+            }
+        }
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = kept[order[i]];
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,120 @@
+package com.atlas.control;
+
+import com.atlas.model.CollectionOfData;
+import com.atlas.model.SearchCache;
+import com.atlas.model.SearchQuery;
+import com.atlas.model.SelectedCollectionOfData;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+
+/**
+ * One search over several collections at once.
+ *
+ * Every collection is searched by its own task on a fork-join pool, and its
+ * result is handed over as soon as it is ready, without waiting for the
+ * other collections. A result is a selection of the rows found, no point
+ * is copied. A cancelled search hands over no more results, and a task that
+ * has not started yet does not search at all, so a new search does not
+ * wait for an old one over many collections.
+ *
+ * Each collection may come with a search cache. A query kept in the cache
+ * is answered from it, a query refining a kept query with few rows only
+ * filters the kept rows, and new results are put into the cache.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class ParallelSearch {
+
+    /**
+     * Most kept rows that are filtered for a refining query. The indexes
+     * find a query in time of its result, so filtering more rows is slower
+     * than searching again
+     */
+    private static final int REFINE_ROWS = 4096;
+
+    private final ForkJoinPool pool;
+    private final SearchQuery query;
+    private volatile boolean cancelled;
+
+    /**
+     * Constructor
+     *
+     * @param pool The pool that runs the searches
+     * @param query The query
+     */
+    public ParallelSearch(ForkJoinPool pool, SearchQuery query) {
+        this.pool = pool;
+        this.query = query;
+    }
+
+    /**
+     * Search collections
+     *
+     * @param collections The collections to search
+     * @param caches The cache of each collection, or null for none
+     * @param found Gets the position of a collection in the list and its
+     * found points, called on a pool thread once per collection
+     * @return A future completed when every collection was searched, or
+     * completed with a CancellationException if the search was cancelled
+     */
+    public CompletableFuture<Void> run(List<CollectionOfData> collections,
+            List<SearchCache> caches, BiConsumer<Integer, CollectionOfData> found) {
+        CompletableFuture<?>[] parts = new CompletableFuture<?>[collections.size()];
+        for (int i = 0; i < parts.length; i++) {
+            int position = i;
+            CollectionOfData collection = collections.get(i);
+            SearchCache cache = caches == null ? null : caches.get(i);
+            parts[i] = CompletableFuture.supplyAsync(() -> search(collection, cache), pool)
+                    .thenAccept((result) -> {
+                        checkCancelled();
+                        found.accept(position, result);
+                    });
+        }
+        return CompletableFuture.allOf(parts);
+    }
+
+    /**
+     * Stop the search, results not yet handed over are dropped
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private CollectionOfData search(CollectionOfData collection, SearchCache cache) {
+        checkCancelled();
+        int[] rows;
+        if (cache == null) {
+            rows = query.find(collection);
+        } else {
+            CollectionOfData kept = cache.getResult(collection, query);
+            if (kept != null) {
+                return kept;
+            }
+            int[] earlier = cache.getRows(collection, query);
+            if (earlier != null && earlier.length <= REFINE_ROWS) {
+                rows = query.filter(collection, earlier);
+            } else {
+                rows = query.find(collection);
+            }
+        }
+        checkCancelled();
+        CollectionOfData result = new SelectedCollectionOfData(collection, rows);
+        if (cache != null) {
+            cache.put(collection, query, rows, result);
+        }
+        return result;
+    }
+
+    private void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Search cancelled");
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.atlas.control;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Shared scheduler for the auto-reloading of all tabs.
+ *
+ * One timer thread owns the refresh jobs of every tab, a job is identified by
+ * a stable key (the tab itself) and not by the position of the tab. When a
+ * job is due it is queued, and at most a fixed number of queued jobs run at
+ * the same time. The job of the preferred (selected) tab is taken from the
+ * queue before the jobs of background tabs. A job that is still queued or
+ * running is not queued a second time.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class RefreshScheduler {
+
+    private final ScheduledExecutorService timer;
+    private final int maxRunning;
+    private final Map<Object, Job> jobs;
+    private final ArrayDeque<Job> queue;
+    private Object preferred;
+    private int running;
+
+    /**
+     * Constructor
+     *
+     * @param maxRunning The number of jobs that may run at the same time
+     */
+    public RefreshScheduler(int maxRunning) {
+        this.maxRunning = maxRunning;
+        this.jobs = new HashMap<>();
+        this.queue = new ArrayDeque<>();
+        this.timer = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "atlas-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Run a job now and then at a fixed interval, replacing any job already
+     * scheduled for the key
+     *
+     * @param key The stable key of the job, e.g. the tab
+     * @param interval The interval in milliseconds
+     * @param task Starts one refresh, the future completes when it is done
+     */
+    public synchronized void schedule(Object key, long interval,
+            Supplier<CompletableFuture<?>> task) {
+        cancel(key);
+        Job job = new Job(key, task);
+        jobs.put(key, job);
+        job.future = timer.scheduleAtFixedRate(() -> due(job), 0, interval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the job of a key. A run already started is not interrupted.
+     *
+     * @param key The key of the job
+     */
+    public synchronized void cancel(Object key) {
+        Job job = jobs.remove(key);
+        if (job != null) {
+            job.future.cancel(false);
+            queue.remove(job);
+        }
+    }
+
+    /**
+     * Determine if a job is scheduled for a key
+     *
+     * @param key The key of the job
+     * @return If the key has a job
+     */
+    public synchronized boolean isScheduled(Object key) {
+        return jobs.containsKey(key);
+    }
+
+    /**
+     * Get the number of scheduled jobs
+     *
+     * @return The number of jobs
+     */
+    public synchronized int getScheduledCount() {
+        return jobs.size();
+    }
+
+    /**
+     * Get the number of due jobs waiting for a free slot
+     *
+     * @return The number of queued jobs
+     */
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Set the key whose job goes before all other queued jobs
+     *
+     * @param key The key, e.g. the selected tab, or null for none
+     */
+    public synchronized void setPreferred(Object key) {
+        this.preferred = key;
+    }
+
+    /**
+     * Stop all jobs and the timer thread
+     */
+    public synchronized void shutdown() {
+        jobs.clear();
+        queue.clear();
+        timer.shutdownNow();
+    }
+
+    private void due(Job job) {
+        synchronized (this) {
+            if (job.pending || jobs.get(job.key) != job) {
+                return;
+            }
+            job.pending = true;
+            queue.add(job);
+        }
+        dispatch();
+    }
+
+    /**
+     * Start the queued jobs that fit under the limit. The jobs are taken and
+     * counted as running under the lock, but started after it is released, so
+     * a slow or already completed task never holds up the JavaFX thread in
+     * setPreferred, schedule or cancel.
+     */
+    private void dispatch() {
+        List<Job> started = new ArrayList<>();
+        synchronized (this) {
+            while (running < maxRunning && !queue.isEmpty()) {
+                started.add(takeNext());
+                running++;
+            }
+        }
+        for (Job next : started) {
+            CompletableFuture<?> run;
+            try {
+                run = next.task.get();
+            } catch (RuntimeException ex) {
+                run = null;
+            }
+            if (run == null) {
+                finished(next);
+            } else {
+                run.whenComplete((result, ex) -> finished(next));
+            }
+        }
+    }
+
+    private Job takeNext() {
+        if (preferred != null) {
+            Iterator<Job> it = queue.iterator();
+            while (it.hasNext()) {
+                Job job = it.next();
+                if (preferred.equals(job.key)) {
+                    it.remove();
+                    return job;
+                }
+            }
+        }
+        return queue.poll();
+    }
+
+    private void finished(Job job) {
+        synchronized (this) {
+            job.pending = false;
+            running--;
+        }
+        dispatch();
+    }
+
+    /**
+     * The refresh job of one key
+     */
+    private static class Job {
+
+        private final Object key;
+        private final Supplier<CompletableFuture<?>> task;
+        private ScheduledFuture<?> future;
+        private boolean pending;
+
+        Job(Object key, Supplier<CompletableFuture<?>> task) {
+            this.key = key;
+            this.task = task;
+        }
+    }
+}
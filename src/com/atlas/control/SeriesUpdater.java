@@ -0,0 +1,120 @@
+package com.atlas.control;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import javafx.collections.ObservableList;
+import javafx.scene.chart.XYChart;
+
+/**
+ * Update the series of a line chart in place from a new loading.
+ *
+ * The points of the new loading are matched to the points already in the
+ * series, by name first and by position for the points left over. A matched
+ * point keeps its chart data and node, only its values are changed
+ * if they differ. Points that are not matched are removed or added, both in
+ * one change of the series.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class SeriesUpdater {
+
+    /**
+     * Update a series to show the new points
+     *
+     * @param series The series shown in the chart
+     * @param next The points of the new loading, the name of a point is its
+     * extra value
+     * @return The chart data that were added or changed
+     */
+    public List<XYChart.Data<Number, Number>> update(XYChart.Series<Number, Number> series,
+            List<XYChart.Data<Number, Number>> next) {
+
+        ObservableList<XYChart.Data<Number, Number>> current = series.getData();
+        int size = current.size();
+        boolean[] used = new boolean[size];
+        int[] matched = new int[next.size()];
+
+        // Chain the current points with the same name: head holds the first
+        // unused index of a name, sameName the following one
+        Map<Object, Integer> head = new HashMap<>(size * 2);
+        int[] sameName = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            Object name = current.get(i).getExtraValue();
+            Integer first = head.put(name, i);
+            sameName[i] = first == null ? -1 : first;
+        }
+
+        // Match by name
+        for (int j = 0; j < next.size(); j++) {
+            Integer i = head.get(next.get(j).getExtraValue());
+            if (i != null && i >= 0) {
+                head.put(next.get(j).getExtraValue(), sameName[i]);
+                used[i] = true;
+                matched[j] = i;
+            } else {
+                matched[j] = -1;
+            }
+        }
+
+        // Fall back to the position for points whose name is new
+        for (int j = 0; j < next.size(); j++) {
+            if (matched[j] < 0 && j < size && !used[j]) {
+                used[j] = true;
+                matched[j] = j;
+            }
+        }
+
+        List<XYChart.Data<Number, Number>> changed = new ArrayList<>();
+        List<XYChart.Data<Number, Number>> added = new ArrayList<>();
+        for (int j = 0; j < next.size(); j++) {
+            XYChart.Data<Number, Number> point = next.get(j);
+            if (matched[j] < 0) {
+                added.add(point);
+                continue;
+            }
+            XYChart.Data<Number, Number> old = current.get(matched[j]);
+            boolean moved = false;
+            if (!sameValue(old.getXValue(), point.getXValue())) {
+                old.setXValue(point.getXValue());
+                moved = true;
+            }
+            if (!sameValue(old.getYValue(), point.getYValue())) {
+                old.setYValue(point.getYValue());
+                moved = true;
+            }
+            if (!Objects.equals(old.getExtraValue(), point.getExtraValue())) {
+                old.setExtraValue(point.getExtraValue());
+                moved = true;
+            }
+            if (moved) {
+                changed.add(old);
+            }
+        }
+
+        Set<XYChart.Data<Number, Number>> removed
+                = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < size; i++) {
+            if (!used[i]) {
+                removed.add(current.get(i));
+            }
+        }
+        if (!removed.isEmpty()) {
+            current.removeAll(removed);
+        }
+        if (!added.isEmpty()) {
+            current.addAll(added);
+            changed.addAll(added);
+        }
+        return changed;
+    }
+
+    private static boolean sameValue(Number a, Number b) {
+        return a.doubleValue() == b.doubleValue();
+    }
+}
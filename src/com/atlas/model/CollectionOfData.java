@@ -1,26 +1,87 @@
 package com.atlas.model;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * Data collection of one read-in from server, Populate in one line chart
  *
+ * The points are stored column by column: one primitive array for the
+ * x-coordinates, one for the y-coordinates and one for the names, instead of
+ * one Data object per point. Data objects are only created when a caller asks
+ * for them.
+ *
+ * Readers that only look at the points should use the indexed getters,
+ * forEachPoint or asList, which read the columns in place. getData copies the
+ * whole collection on every call.
+ *
+ * Statistics of x and y, bounds, mean, variance and quantiles, are updated
+ * as each point is added and read in constant time.
+ *
+ * A collection can be frozen once it is complete, e.g. when one loading is
+ * shared by several tabs. A frozen collection can not be changed anymore and
+ * may be read from any thread.
+ *
  * @author Wang Zheng-Yu <zhengyuw@kth.se>
  */
 public class CollectionOfData {
 
-    private ArrayList<Data> data;
+    /**
+     * Capacity of the columns when nothing else is known
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Largest column length we try to allocate
+     */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private static final double[] EMPTY_COORDINATES = new double[0];
+    private static final String[] EMPTY_NAMES = new String[0];
+
+    private double[] xs;
+    private double[] ys;
+    private String[] names;
+    private int size;
+    private int version;
+    private volatile boolean frozen;
+    private volatile CoordinateIndex xIndex;
+    private volatile CoordinateIndex yIndex;
+    private volatile NameIndex nameIndex;
+    private volatile SpatialIndex spatialIndex;
+    private Statistics xStatistics;
+    private Statistics yStatistics;
 
     /**
      * Default constructor
      */
     public CollectionOfData() {
+        this.xs = EMPTY_COORDINATES;
+        this.ys = EMPTY_COORDINATES;
+        this.names = EMPTY_NAMES;
+        this.xStatistics = new Statistics();
+        this.yStatistics = new Statistics();
+    }
+
+    /**
+     * Constructor with a known number of points
+     *
+     * @param initialCapacity The number of points to make room for
+     */
+    public CollectionOfData(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: " + initialCapacity);
+        }
+        this.xs = new double[initialCapacity];
+        this.ys = new double[initialCapacity];
+        this.names = new String[initialCapacity];
+        this.xStatistics = new Statistics();
+        this.yStatistics = new Statistics();
     }
 
     /**
@@ -29,16 +90,116 @@ public class CollectionOfData {
      * @param data
      */
     public CollectionOfData(ArrayList<Data> data) {
-        this.data = data;
+        this();
+        setData(data);
     }
 
     /**
-     * Get the data(s) in the collection
+     * Get the data(s) in the collection. This is a copy, prefer the indexed
+     * getters or asList when only reading.
      *
-     * @return
+     * @return A new list with one Data object per point
      */
     public ArrayList<Data> getData() {
-        return (ArrayList<Data>) data.clone();
+        ArrayList<Data> points = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            points.add(new Data(xs[i], ys[i], names[i]));
+        }
+        return points;
+    }
+
+    /**
+     * Get the x-coordinate of a point
+     *
+     * @param index The index of the point
+     * @return The x-coordinate
+     */
+    public double getX(int index) {
+        checkIndex(index);
+        return xs[index];
+    }
+
+    /**
+     * Get the y-coordinate of a point
+     *
+     * @param index The index of the point
+     * @return The y-coordinate
+     */
+    public double getY(int index) {
+        checkIndex(index);
+        return ys[index];
+    }
+
+    /**
+     * Get the name of a point
+     *
+     * @param index The index of the point
+     * @return The name
+     */
+    public String getName(int index) {
+        checkIndex(index);
+        return names[index];
+    }
+
+    /**
+     * Get one point as a Data object
+     *
+     * @param index The index of the point
+     * @return A new Data object holding the point
+     */
+    public Data getPoint(int index) {
+        checkIndex(index);
+        return new Data(xs[index], ys[index], names[index]);
+    }
+
+    /**
+     * Walk all points in order without creating Data objects
+     *
+     * @param action The action to run for every point
+     */
+    public void forEachPoint(PointConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(i, xs[i], ys[i], names[i]);
+        }
+    }
+
+    /**
+     * Get a read-only list view of the collection. Nothing is copied, a Data
+     * object is only created for the element asked for. The view follows
+     * later changes to the collection.
+     *
+     * @return A read-only view of the points
+     */
+    public List<Data> asList() {
+        return new PointListView();
+    }
+
+    /**
+     * Freeze the collection, after this it can not be changed
+     */
+    public void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * Determine if the collection is frozen
+     *
+     * @return If the collection can not be changed
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("Collection is frozen");
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
     }
 
     /**
@@ -47,7 +208,21 @@ public class CollectionOfData {
      * @param data
      */
     public void setData(ArrayList<Data> data) {
-        this.data = data;
+        checkMutable();
+        int count = data == null ? 0 : data.size();
+        xs = new double[count];
+        ys = new double[count];
+        names = new String[count];
+        size = 0;
+        dropIndexes();
+        for (int i = 0; i < count; i++) {
+            Data point = data.get(i);
+            xs[i] = point.getX();
+            ys[i] = point.getY();
+            names[i] = point.getName();
+        }
+        size = count;
+        countStatistics();
     }
 
     /**
@@ -56,7 +231,77 @@ public class CollectionOfData {
      * @param data
      */
     public void addData(Data data) {
-        this.data.add(data);
+        addPoint(data.getX(), data.getY(), data.getName());
+    }
+
+    /**
+     * Add a point to the collection without creating a Data object
+     *
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @param name Name of the point
+     */
+    public void addPoint(double x, double y, String name) {
+        checkMutable();
+        if (size == xs.length) {
+            grow(size + 1);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        names[size] = name;
+        size++;
+        version++;
+        xStatistics.add(x);
+        yStatistics.add(y);
+    }
+
+    /**
+     * Make sure the columns can hold at least the given number of points
+     * without growing again
+     *
+     * @param minCapacity The number of points
+     */
+    public void ensureCapacity(int minCapacity) {
+        checkMutable();
+        if (minCapacity > xs.length) {
+            grow(minCapacity);
+        }
+    }
+
+    /**
+     * Shrink the columns to the number of points, e.g. once a load is
+     * finished and no more points are expected
+     */
+    public void trimToSize() {
+        checkMutable();
+        if (size < xs.length) {
+            xs = Arrays.copyOf(xs, size);
+            ys = Arrays.copyOf(ys, size);
+            names = Arrays.copyOf(names, size);
+        }
+    }
+
+    /**
+     * Grow the columns by half of their length, or to the requested capacity
+     * if that is larger
+     *
+     * @param minCapacity The number of points needed
+     */
+    private void grow(int minCapacity) {
+        if (minCapacity < 0 || minCapacity > MAX_CAPACITY) {
+            throw new OutOfMemoryError("Collection too large: " + minCapacity);
+        }
+        int oldCapacity = xs.length;
+        int newCapacity = oldCapacity + (oldCapacity >> 1);
+        if (newCapacity < DEFAULT_CAPACITY) {
+            newCapacity = DEFAULT_CAPACITY;
+        }
+        if (newCapacity < minCapacity || newCapacity > MAX_CAPACITY) {
+            newCapacity = minCapacity;
+        }
+        xs = Arrays.copyOf(xs, newCapacity);
+        ys = Arrays.copyOf(ys, newCapacity);
+        names = Arrays.copyOf(names, newCapacity);
     }
 
     /**
@@ -65,7 +310,18 @@ public class CollectionOfData {
      * @return The size
      */
     public int getSize() {
-        return data.size();
+        return size;
+    }
+
+    /**
+     * Get the version of the points, changed whenever points are added or
+     * replaced. Results computed from the collection stay valid as long as
+     * the version is the same.
+     *
+     * @return The version
+     */
+    public int getVersion() {
+        return version;
     }
 
     /**
@@ -74,88 +330,369 @@ public class CollectionOfData {
      * @return
      */
     public boolean isEmpty() {
-        return data == null;
+        return getSize() == 0;
     }
 
     /**
-     * Serialize the collection to file
+     * Determine if the points are read from a memory-mapped file instead of
+     * being held in memory
+     *
+     * @return If the collection is memory-mapped
+     */
+    public boolean isMapped() {
+        return false;
+    }
+
+    /**
+     * Serialize the collection to file, in the binary .map format
      *
      * @param filename The file name
      * @throws IOException
      */
     public void serializeToFile(File filename) throws IOException {
-
-        ObjectOutputStream out = null;
-
-        try {
-            out = new ObjectOutputStream(
-                    new FileOutputStream(filename));
-            out.writeObject(data);
-        } finally {
-            try {
-                if (out != null) {
-                    out.close();
-                }
-            } catch (IOException e) {
-            }
-        }
+        MapFile.write(this, filename);
     }
 
     /**
-     * De-serialize data from a fine
+     * De-serialize data from a fine, either a .map file or a file saved with
+     * Java serialization by an older version
      *
      * @param filename The file name
      * @throws IOException
      * @throws ClassNotFoundException
      */
-    @SuppressWarnings("unchecked")
     public void deSerializeFromFile(File filename) throws IOException,
             ClassNotFoundException {
 
-        ObjectInputStream in = null;
+        checkMutable();
+        CollectionOfData loaded = MapFile.read(filename);
+        System.out.println("Found file: " + filename);
+        setColumns(loaded.xs, loaded.ys, loaded.names, loaded.size);
+    }
+
+    /**
+     * Get the x column, not a copy, for the file format
+     */
+    double[] getXColumn() {
+        return xs;
+    }
+
+    /**
+     * Get the y column, not a copy, for the file format
+     */
+    double[] getYColumn() {
+        return ys;
+    }
 
-        try {
-            in = new ObjectInputStream(new FileInputStream(filename));
-            System.out.println("Found file: " + filename);
-            // readObject returns a reference of type Object, 
-            // hence the down-cast
-            data = (ArrayList<Data>) in.readObject();
-        } finally {
-            try {
-                if (in != null) {
-                    in.close();
-                }
-            } catch (Exception e) {
-            }
+    /**
+     * Get the name column, not a copy, for the file format
+     */
+    String[] getNameColumn() {
+        return names;
+    }
+
+    /**
+     * Take over filled columns, for the file format
+     */
+    void setColumns(double[] xs, double[] ys, String[] names, int size) {
+        checkMutable();
+        this.xs = xs;
+        this.ys = ys;
+        this.names = names;
+        this.size = size;
+        dropIndexes();
+        countStatistics();
+    }
+
+    /**
+     * Get the statistics of the x-coordinates, kept up to date as points
+     * are added, so this takes constant time
+     *
+     * @return The statistics, not to be changed
+     */
+    public Statistics getXStatistics() {
+        return xStatistics;
+    }
+
+    /**
+     * Get the statistics of the y-coordinates, kept up to date as points
+     * are added
+     *
+     * @return The statistics, not to be changed
+     */
+    public Statistics getYStatistics() {
+        return yStatistics;
+    }
+
+    /**
+     * Count the statistics of all points again, after the points were
+     * replaced
+     */
+    private void countStatistics() {
+        Statistics[] counted = scanStatistics();
+        xStatistics = counted[0];
+        yStatistics = counted[1];
+    }
+
+    /**
+     * Count the statistics of the points in one pass, for collections whose
+     * points are not added one by one
+     *
+     * @return The statistics of x and of y
+     */
+    Statistics[] scanStatistics() {
+        Statistics onX = new Statistics();
+        Statistics onY = new Statistics();
+        int count = getSize();
+        for (int i = 0; i < count; i++) {
+            onX.add(getX(i));
+            onY.add(getY(i));
         }
+        return new Statistics[]{onX, onY};
     }
 
     /**
-     * Get data/points by their same x-coordinate
+     * Forget the indexes after the points were replaced, they are built
+     * again at the next query
+     */
+    private void dropIndexes() {
+        version++;
+        xIndex = null;
+        yIndex = null;
+        nameIndex = null;
+        spatialIndex = null;
+    }
+
+    /**
+     * Get data/points by their same x-coordinate, or by an x-coordinate in a
+     * range such as "10..20"
      *
-     * @param inputValue The input x-coordinate
+     * @param inputValue The input x-coordinate or range
      * @return An array list of data/points of same x-coordinate
+     * @throws NumberFormatException If the input is not a value or range
      */
     public ArrayList<Data> getDataByX(String inputValue) {
-        ArrayList<Data> dataWithX = new ArrayList<>();
-        data.stream().filter((temp) -> (temp.getX() == Integer.valueOf(inputValue))).forEachOrdered((temp) -> {
-            dataWithX.add(temp);
-        });
-        return dataWithX;
+        return getPoints(findByX(CoordinateRange.parse(inputValue)));
     }
 
     /**
-     * Get data/points by their same y-coordinate
+     * Get data/points by their same y-coordinate, or by a y-coordinate in a
+     * range such as "10..20"
      *
-     * @param inputValue The input y-coordinate
+     * @param inputValue The input y-coordinate or range
      * @return An array list of data/points of same y-coordinate
+     * @throws NumberFormatException If the input is not a value or range
      */
     public ArrayList<Data> getDataByY(String inputValue) {
-        ArrayList<Data> dataWithY = new ArrayList<>();
-        data.stream().filter((temp) -> (temp.getY() == Integer.valueOf(inputValue))).forEachOrdered((temp) -> {
-            dataWithY.add(temp);
-        });
-        return dataWithY;
+        return getPoints(findByY(CoordinateRange.parse(inputValue)));
+    }
+
+    /**
+     * Find the points with an x-coordinate in a range, using the sorted x
+     * index
+     *
+     * @param range The range
+     * @return The indexes of the points, in ascending order
+     */
+    public int[] findByX(CoordinateRange range) {
+        int[] rows = getXIndex().find(this, range);
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    /**
+     * Count the points with an x-coordinate in a range, using the sorted x
+     * index, e.g. to choose the index that finds the fewest points
+     *
+     * @param range The range
+     * @return The number of points
+     */
+    int countByX(CoordinateRange range) {
+        return getXIndex().count(this, range);
+    }
+
+    /**
+     * Count the points with a y-coordinate in a range, using the sorted y
+     * index
+     *
+     * @param range The range
+     * @return The number of points
+     */
+    int countByY(CoordinateRange range) {
+        return getYIndex().count(this, range);
+    }
+
+    /**
+     * Find the points with a y-coordinate in a range, using the sorted y
+     * index
+     *
+     * @param range The range
+     * @return The indexes of the points, in ascending order
+     */
+    public int[] findByY(CoordinateRange range) {
+        int[] rows = getYIndex().find(this, range);
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    /**
+     * Get the points ordered by x-coordinate, using the sorted x index.
+     * Points with a NaN x-coordinate are left out.
+     *
+     * @return The indexes of the points, ordered by x-coordinate
+     */
+    public int[] orderByX() {
+        return getXIndex().find(this, new CoordinateRange(Double.NEGATIVE_INFINITY,
+                Double.POSITIVE_INFINITY));
+    }
+
+    /**
+     * Find the points inside a box, borders included, using the spatial
+     * index
+     *
+     * @param minX The left border
+     * @param minY The bottom border
+     * @param maxX The right border
+     * @param maxY The top border
+     * @return The indexes of the points, in ascending order
+     */
+    public int[] findInBox(double minX, double minY, double maxX, double maxY) {
+        return getSpatialIndex().findInBox(this, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Find the points at most a distance away from a point, using the
+     * spatial index
+     *
+     * @param x The x-coordinate of the center
+     * @param y The y-coordinate of the center
+     * @param radius The distance
+     * @return The indexes of the points, in ascending order
+     */
+    public int[] findWithin(double x, double y, double radius) {
+        return getSpatialIndex().findWithin(this, x, y, radius);
+    }
+
+    /**
+     * Find the points closest to a point, e.g. the pointer, using the
+     * spatial index
+     *
+     * @param x The x-coordinate of the point
+     * @param y The y-coordinate of the point
+     * @param k The number of points to find
+     * @return The indexes of at most k points, the closest first
+     */
+    public int[] findNearest(double x, double y, int k) {
+        return getSpatialIndex().findNearest(this, x, y, k);
+    }
+
+    private CoordinateIndex getXIndex() {
+        CoordinateIndex index = xIndex;
+        if (index == null) {
+            index = xIndex = new CoordinateIndex(true);
+        }
+        return index;
+    }
+
+    private CoordinateIndex getYIndex() {
+        CoordinateIndex index = yIndex;
+        if (index == null) {
+            index = yIndex = new CoordinateIndex(false);
+        }
+        return index;
+    }
+
+    private NameIndex getNameIndex() {
+        NameIndex index = nameIndex;
+        if (index == null) {
+            index = nameIndex = new NameIndex();
+        }
+        return index;
+    }
+
+    private SpatialIndex getSpatialIndex() {
+        SpatialIndex index = spatialIndex;
+        if (index == null) {
+            index = spatialIndex = new SpatialIndex();
+        }
+        return index;
+    }
+
+    /**
+     * Estimate the memory of the indexes built so far, e.g. to cap a history
+     * of collections
+     *
+     * @return The memory in bytes, 0 if no index was built
+     */
+    long getIndexBytes() {
+        long bytes = 0;
+        CoordinateIndex onX = xIndex;
+        CoordinateIndex onY = yIndex;
+        NameIndex byName = nameIndex;
+        SpatialIndex spatial = spatialIndex;
+        if (onX != null) {
+            bytes += onX.getBytes();
+        }
+        if (onY != null) {
+            bytes += onY.getBytes();
+        }
+        if (byName != null) {
+            bytes += byName.getBytes();
+        }
+        if (spatial != null) {
+            bytes += spatial.getBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Build the coordinate, name and spatial indexes now instead of at the
+     * first search, e.g. on the loading thread
+     */
+    public void buildIndexes() {
+        getXIndex().build(this);
+        getYIndex().build(this);
+        getNameIndex().build(this);
+        getSpatialIndex().build(this);
+    }
+
+    /**
+     * Build the sorted x index now instead of at the first use, the index
+     * every chart reads through orderByX. The y and spatial indexes are only
+     * built by the searches that need them.
+     */
+    public void buildXIndex() {
+        getXIndex().build(this);
+    }
+
+    /**
+     * Build the spatial index now instead of at the first search by box or
+     * distance, e.g. before a chart hit-tests the pointer with it
+     */
+    public void buildSpatialIndex() {
+        getSpatialIndex().build(this);
+    }
+
+    /**
+     * Build the name index now instead of at the first search by name, e.g.
+     * while loading, so typing a name does not wait for the index
+     */
+    public void buildNameIndex() {
+        getNameIndex().build(this);
+    }
+
+    /**
+     * Get points by their indexes
+     *
+     * @param rows The indexes of the points
+     * @return An array list of data/points
+     */
+    public ArrayList<Data> getPoints(int[] rows) {
+        ArrayList<Data> points = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            points.add(getPoint(row));
+        }
+        return points;
     }
 
     /**
@@ -165,21 +702,60 @@ public class CollectionOfData {
      * @return An array list of data/points of same name
      */
     public ArrayList<Data> getDataByName(String inputValue) {
-        ArrayList<Data> dataWithName = new ArrayList<>();
-        data.stream().filter((temp) -> (temp.getName().contains(inputValue))).forEachOrdered((temp) -> {
-            dataWithName.add(temp);
-        });
-        return dataWithName;
+        return getPoints(findByName(inputValue, false, false));
+    }
+
+    /**
+     * Find the points whose name contains or starts with a text, using the
+     * name index
+     *
+     * @param text The text to look for
+     * @param prefix True if the name must start with the text, false if it
+     * must contain it
+     * @param ignoreCase If upper and lower case are the same
+     * @return The indexes of the points, in ascending order
+     */
+    public int[] findByName(String text, boolean prefix, boolean ignoreCase) {
+        return getNameIndex().find(this, text, prefix, ignoreCase);
+    }
+
+    /**
+     * Estimate the number of points whose name contains or starts with a
+     * text, using the name index, e.g. to choose the index that finds the
+     * fewest points
+     *
+     * @param text The text to look for
+     * @param prefix True if the name must start with the text
+     * @return The estimated number of points, regardless of case
+     */
+    int estimateByName(String text, boolean prefix) {
+        return getNameIndex().estimate(this, text, prefix);
     }
 
     @Override
     public String toString() {
         StringBuilder dataList = new StringBuilder();
 
-        for (Data point : data) {
-            dataList.append(point);
+        for (int i = 0; i < size; i++) {
+            dataList.append(new Data(xs[i], ys[i], names[i]));
         }
 
         return dataList.toString();
     }
+
+    /**
+     * Read-only list over the columns of the collection
+     */
+    private class PointListView extends AbstractList<Data> implements RandomAccess {
+
+        @Override
+        public Data get(int index) {
+            return getPoint(index);
+        }
+
+        @Override
+        public int size() {
+            return getSize();
+        }
+    }
 }
@@ -0,0 +1,202 @@
+package com.atlas.model;
+
+import java.util.Arrays;
+
+/**
+ * Sorted index over the x- or y-coordinates of a collection.
+ *
+ * The index holds the row ids of the points ordered by coordinate, next to
+ * the coordinates themselves, so exact and range queries are two binary
+ * searches plus the matching rows: O(log n + k). Points added to the
+ * collection after the last query are sorted on their own and merged into the
+ * index at the next query. A collection whose points are replaced drops its
+ * indexes.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+class CoordinateIndex {
+
+    private static final int[] NO_ROWS = new int[0];
+    private static final double[] NO_VALUES = new double[0];
+
+    private final boolean onX;
+    private int[] rows;
+    private double[] values;
+    private int indexed;
+
+    /**
+     * Constructor
+     *
+     * @param onX True to index the x-coordinates, false for y
+     */
+    CoordinateIndex(boolean onX) {
+        this.onX = onX;
+        this.rows = NO_ROWS;
+        this.values = NO_VALUES;
+    }
+
+    /**
+     * Index the points added to the collection since the last query
+     *
+     * @param data The indexed collection
+     */
+    synchronized void build(CollectionOfData data) {
+        update(data);
+    }
+
+    /**
+     * Find the rows with a coordinate in a range
+     *
+     * @param data The indexed collection
+     * @param range The range
+     * @return The row ids, ordered by coordinate
+     */
+    synchronized int[] find(CollectionOfData data, CoordinateRange range) {
+        update(data);
+        if (range.isEmpty()) {
+            // NaN bounds would find the NaN values sorted last
+            return NO_ROWS;
+        }
+        int from = lowerBound(range.getMin());
+        int to = upperBound(range.getMax());
+        if (from >= to) {
+            return NO_ROWS;
+        }
+        return Arrays.copyOfRange(rows, from, to);
+    }
+
+    /**
+     * Count the rows with a coordinate in a range without collecting them
+     *
+     * @param data The indexed collection
+     * @param range The range
+     * @return The number of rows
+     */
+    synchronized int count(CollectionOfData data, CoordinateRange range) {
+        update(data);
+        if (range.isEmpty()) {
+            return 0;
+        }
+        return Math.max(0, upperBound(range.getMax()) - lowerBound(range.getMin()));
+    }
+
+    /**
+     * Estimate the memory of the index
+     *
+     * @return The memory in bytes, a row id and a value per indexed point
+     */
+    synchronized long getBytes() {
+        return 4L * rows.length + 8L * values.length;
+    }
+
+    /**
+     * Merge the points added since the last update into the index
+     */
+    private void update(CollectionOfData data) {
+        int size = data.getSize();
+        if (size == indexed) {
+            return;
+        }
+        int added = size - indexed;
+        int[] newRows = new int[added];
+        double[] newValues = new double[added];
+        for (int i = 0; i < added; i++) {
+            int row = indexed + i;
+            newRows[i] = row;
+            newValues[i] = (onX ? data.getX(row) : data.getY(row)) + 0.0;
+        }
+        sort(newValues, newRows);
+
+        int[] mergedRows = new int[size];
+        double[] mergedValues = new double[size];
+        merge(values, rows, 0, indexed, newValues, newRows, 0, added,
+                mergedValues, mergedRows, 0);
+        rows = mergedRows;
+        values = mergedValues;
+        indexed = size;
+    }
+
+    /**
+     * First position with a value not below the given one
+     */
+    private int lowerBound(double value) {
+        int low = 0;
+        int high = indexed;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Double.compare(values[mid], value) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * First position with a value above the given one
+     */
+    private int upperBound(double value) {
+        int low = 0;
+        int high = indexed;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Double.compare(values[mid], value) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Stable bottom-up merge sort of values with their rows
+     */
+    static void sort(double[] values, int[] rows) {
+        int n = values.length;
+        double[] valueBuffer = new double[n];
+        int[] rowBuffer = new int[n];
+        double[] fromValues = values;
+        int[] fromRows = rows;
+        for (int width = 1; width < n; width *= 2) {
+            for (int start = 0; start < n; start += 2 * width) {
+                int middle = Math.min(start + width, n);
+                int end = Math.min(start + 2 * width, n);
+                merge(fromValues, fromRows, start, middle, fromValues, fromRows, middle, end,
+                        valueBuffer, rowBuffer, start);
+            }
+            double[] swapValues = fromValues;
+            fromValues = valueBuffer;
+            valueBuffer = swapValues;
+            int[] swapRows = fromRows;
+            fromRows = rowBuffer;
+            rowBuffer = swapRows;
+        }
+        if (fromValues != values) {
+            System.arraycopy(fromValues, 0, values, 0, n);
+            System.arraycopy(fromRows, 0, rows, 0, n);
+        }
+    }
+
+    private static void merge(double[] leftValues, int[] leftRows, int left, int leftEnd,
+            double[] rightValues, int[] rightRows, int right, int rightEnd,
+            double[] toValues, int[] toRows, int to) {
+        while (left < leftEnd && right < rightEnd) {
+            if (Double.compare(rightValues[right], leftValues[left]) < 0) {
+                toValues[to] = rightValues[right];
+                toRows[to++] = rightRows[right++];
+            } else {
+                toValues[to] = leftValues[left];
+                toRows[to++] = leftRows[left++];
+            }
+        }
+        int leftCount = leftEnd - left;
+        System.arraycopy(leftValues, left, toValues, to, leftCount);
+        System.arraycopy(leftRows, left, toRows, to, leftCount);
+        to += leftCount;
+        int rightCount = rightEnd - right;
+        System.arraycopy(rightValues, right, toValues, to, rightCount);
+        System.arraycopy(rightRows, right, toRows, to, rightCount);
+    }
+}
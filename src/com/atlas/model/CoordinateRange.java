@@ -0,0 +1,94 @@
+package com.atlas.model;
+
+/**
+ * An inclusive range of coordinate values, parsed from the search field.
+ *
+ * Accepted input is a single value, "15", or a range with "..": "10..20",
+ * "10.." for 10 and more, "..20" for 20 and less.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class CoordinateRange {
+
+    private final double min;
+    private final double max;
+
+    /**
+     * Constructor
+     *
+     * @param min The smallest value in the range
+     * @param max The largest value in the range
+     */
+    public CoordinateRange(double min, double max) {
+        // Adding 0.0 turns -0.0 into 0.0, so both match a search for 0
+        this.min = min + 0.0;
+        this.max = max + 0.0;
+    }
+
+    /**
+     * Parse a value or a range
+     *
+     * @param input The input, e.g. "15" or "10..20"
+     * @return The range
+     * @throws NumberFormatException If the input is not a value or range
+     */
+    public static CoordinateRange parse(String input) {
+        String text = input.trim();
+        int separator = text.indexOf("..");
+        if (separator < 0) {
+            double value = Double.parseDouble(text);
+            return new CoordinateRange(value, value);
+        }
+        String from = text.substring(0, separator).trim();
+        String to = text.substring(separator + 2).trim();
+        if (from.isEmpty() && to.isEmpty()) {
+            throw new NumberFormatException("Empty range: " + input);
+        }
+        double min = from.isEmpty() ? Double.NEGATIVE_INFINITY : Double.parseDouble(from);
+        double max = to.isEmpty() ? Double.POSITIVE_INFINITY : Double.parseDouble(to);
+        return new CoordinateRange(min, max);
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Determine if a value is in the range
+     *
+     * @param value The value
+     * @return If min &lt;= value &lt;= max
+     */
+    public boolean contains(double value) {
+        return value >= min && value <= max;
+    }
+
+    /**
+     * Determine if no value is in the range, e.g. a range merged from
+     * comparisons that contradict each other
+     *
+     * @return If min is above max, or a bound is NaN
+     */
+    public boolean isEmpty() {
+        return !(min <= max);
+    }
+
+    /**
+     * Determine if this range lies inside another range
+     *
+     * @param other The other range
+     * @return If every value of this range is in the other range
+     */
+    public boolean isWithin(CoordinateRange other) {
+        return min >= other.min && max <= other.max;
+    }
+
+    @Override
+    public String toString() {
+        return min == max ? String.valueOf(min) : min + ".." + max;
+    }
+}
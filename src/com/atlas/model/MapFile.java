@@ -0,0 +1,468 @@
+package com.atlas.model;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reader and writer of the binary .map file format.
+ *
+ * A .map file holds one collection of data, all numbers big-endian:
+ * <pre>
+ * header, 64 bytes
+ *   magic            4 bytes "AMAP"
+ *   version          int
+ *   flags            int, 0
+ *   point count      int
+ *   min x, max x     double, double, NaN left out, NaN if no value
+ *   min y, max y     double, double, NaN left out, NaN if no value
+ *   name count       int
+ *   name table start long
+ *   padding          up to 64 bytes
+ * x column           point count doubles
+ * y column           point count doubles
+ * name column        point count ints, index in the name table or -1
+ * name table         name count times: byte length int, UTF-8 bytes
+ * </pre>
+ * Every distinct name is stored once. The columns start at fixed offsets, so
+ * a point can be found without reading the points before it.
+ *
+ * Files written by the first version of the program, an ArrayList of Data
+ * written with Java serialization, are still read and can be converted.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class MapFile {
+
+    /**
+     * The current version of the format
+     */
+    public static final int VERSION = 1;
+
+    static final int MAGIC = 0x414D4150;
+    static final int HEADER_SIZE = 64;
+
+    /**
+     * Offset of the bounds in the header, min x, max x, min y, max y
+     */
+    static final int BOUNDS_OFFSET = 16;
+
+    /**
+     * First two bytes of a Java serialization stream
+     */
+    private static final int LEGACY_MAGIC = 0xACED;
+
+    /**
+     * Size of the buffer that is read and written through
+     */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private MapFile() {
+    }
+
+    /**
+     * Write a collection to a .map file
+     *
+     * @param data The collection of data
+     * @param file The file, replaced if it exists
+     * @throws IOException If writing fails
+     */
+    public static void write(CollectionOfData data, File file) throws IOException {
+
+        if (data instanceof MappedCollectionOfData) {
+            copy(((MappedCollectionOfData) data).getFile(), file);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(data, channel);
+        }
+    }
+
+    /**
+     * Write a collection in the .map format to a channel, e.g. into a
+     * journal record
+     *
+     * @param data The collection of data
+     * @param channel The channel, left open
+     * @throws IOException If writing fails
+     */
+    static void write(CollectionOfData data, WritableByteChannel channel) throws IOException {
+        write(data, channel, ByteBuffer.allocateDirect(BUFFER_SIZE));
+    }
+
+    /**
+     * Write a collection in the .map format to a channel through a buffer,
+     * e.g. one buffer reused for every record of a journal
+     *
+     * @param data The collection of data
+     * @param channel The channel, left open
+     * @param buffer The buffer, of at least HEADER_SIZE bytes, in write mode.
+     * Bytes already in it are written before the collection. It is empty
+     * when this returns.
+     * @throws IOException If writing fails
+     */
+    static void write(CollectionOfData data, WritableByteChannel channel, ByteBuffer buffer)
+            throws IOException {
+        if (data.isMapped()) {
+            data = new CollectionOfData(data.getData());
+        }
+        int size = data.getSize();
+        double[] xs = data.getXColumn();
+        double[] ys = data.getYColumn();
+        String[] names = data.getNameColumn();
+
+        // The bounds of the statistics, without NaN, kept by the collection
+        Statistics onX = data.getXStatistics();
+        Statistics onY = data.getYStatistics();
+
+        Map<String, Integer> nameIndex = new HashMap<>();
+        ArrayList<String> nameTable = new ArrayList<>();
+        int[] nameRefs = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (names[i] == null) {
+                nameRefs[i] = -1;
+                continue;
+            }
+            Integer ref = nameIndex.get(names[i]);
+            if (ref == null) {
+                ref = nameTable.size();
+                nameIndex.put(names[i], ref);
+                nameTable.add(names[i]);
+            }
+            nameRefs[i] = ref;
+        }
+
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE) {
+            flush(channel, buffer);
+        }
+        int start = buffer.position();
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(0);
+        buffer.putInt(size);
+        buffer.putDouble(onX.getMin());
+        buffer.putDouble(onX.getMax());
+        buffer.putDouble(onY.getMin());
+        buffer.putDouble(onY.getMax());
+        buffer.putInt(nameTable.size());
+        buffer.putLong(HEADER_SIZE + (long) size * 20);
+        while (buffer.position() < start + HEADER_SIZE) {
+            buffer.put((byte) 0);
+        }
+
+        writeDoubles(channel, buffer, xs, size);
+        writeDoubles(channel, buffer, ys, size);
+        for (int i = 0; i < size; i++) {
+            if (buffer.remaining() < 4) {
+                flush(channel, buffer);
+            }
+            buffer.putInt(nameRefs[i]);
+        }
+        for (String name : nameTable) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (buffer.remaining() < 4) {
+                flush(channel, buffer);
+            }
+            buffer.putInt(bytes.length);
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    flush(channel, buffer);
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+        flush(channel, buffer);
+    }
+
+    /**
+     * Read a .map file, in the current or the legacy format
+     *
+     * @param file The file
+     * @return A new collection of data
+     * @throws IOException If the file can not be read or has an unknown
+     * format
+     * @throws ClassNotFoundException If a legacy file holds unknown classes
+     */
+    public static CollectionOfData read(File file) throws IOException, ClassNotFoundException {
+        if (isLegacy(file)) {
+            return readLegacy(file);
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // The header is checked against the length of the file first, so
+            // a truncated file is rejected before its columns are allocated
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Not a map file: " + file);
+                }
+            }
+            header.flip();
+            int size = readHeader(header, file);
+            checkLayout(size, header.getInt(), header.getLong(), channel.size(), file);
+            return read(channel, file);
+        }
+    }
+
+    /**
+     * Read a collection in the .map format from a channel, e.g. from a
+     * journal record
+     *
+     * @param channel The channel, left open
+     * @param file The file, for messages
+     * @return A new collection of data
+     * @throws IOException If reading fails or the data is not in the .map
+     * format
+     */
+    static CollectionOfData read(ReadableByteChannel channel, File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        buffer.flip();
+        fill(channel, buffer, HEADER_SIZE);
+        int size = readHeader(buffer, file);
+        int nameCount = buffer.getInt();
+        buffer.getLong();
+        if (nameCount < 0) {
+            throw new IOException("Corrupt map file: " + file);
+        }
+        buffer.position(HEADER_SIZE);
+
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        readDoubles(channel, buffer, xs);
+        readDoubles(channel, buffer, ys);
+        int[] nameRefs = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (buffer.remaining() < 4) {
+                fill(channel, buffer, 4);
+            }
+            nameRefs[i] = buffer.getInt();
+        }
+        String[] nameTable = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            fill(channel, buffer, 4);
+            int length = buffer.getInt();
+            if (length < 0) {
+                throw new IOException("Corrupt map file: " + file);
+            }
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                if (!buffer.hasRemaining()) {
+                    fill(channel, buffer, 1);
+                }
+                int n = Math.min(buffer.remaining(), length - offset);
+                buffer.get(bytes, offset, n);
+                offset += n;
+            }
+            nameTable[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        String[] names = new String[size];
+        for (int i = 0; i < size; i++) {
+            int ref = nameRefs[i];
+            if (ref >= nameCount) {
+                throw new IOException("Corrupt map file: " + file);
+            }
+            names[i] = ref < 0 ? null : nameTable[ref];
+        }
+        CollectionOfData data = new CollectionOfData();
+        data.setColumns(xs, ys, names, size);
+        return data;
+    }
+
+    /**
+     * Open a .map file without reading its points, see
+     * MappedCollectionOfData
+     *
+     * @param file The file, in the current format
+     * @return A frozen collection backed by the file
+     * @throws IOException If the file can not be mapped or is not a .map file
+     */
+    public static CollectionOfData map(File file) throws IOException {
+        return new MappedCollectionOfData(file);
+    }
+
+    /**
+     * Convert a legacy file to the current format
+     *
+     * @param legacy The file written with Java serialization
+     * @param target The .map file to write
+     * @throws IOException If reading or writing fails
+     * @throws ClassNotFoundException If the legacy file holds unknown
+     * classes
+     */
+    public static void convert(File legacy, File target) throws IOException,
+            ClassNotFoundException {
+        write(readLegacy(legacy), target);
+    }
+
+    /**
+     * Determine if a file is in the legacy Java serialization format
+     *
+     * @param file The file
+     * @return If the file starts like a serialization stream
+     * @throws IOException If the file can not be read
+     */
+    public static boolean isLegacy(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            int first = in.read();
+            int second = in.read();
+            return second >= 0 && ((first << 8) | second) == LEGACY_MAGIC;
+        }
+    }
+
+    /**
+     * Read a legacy file, an ArrayList of Data written with Java
+     * serialization
+     *
+     * @param file The file
+     * @return A new collection of data
+     * @throws IOException If reading fails
+     * @throws ClassNotFoundException If the file holds unknown classes
+     */
+    @SuppressWarnings("unchecked")
+    public static CollectionOfData readLegacy(File file) throws IOException,
+            ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
+            // readObject returns a reference of type Object,
+            // hence the down-cast
+            return new CollectionOfData((ArrayList<Data>) in.readObject());
+        }
+    }
+
+    /**
+     * Check the header in the buffer and get the point count, the buffer is
+     * left after the y bounds
+     *
+     * @param buffer The buffer at the start of the file
+     * @param file The file, for messages
+     * @return The point count
+     * @throws IOException If the header is not a supported .map header
+     */
+    static int readHeader(ByteBuffer buffer, File file) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a map file: " + file);
+        }
+        int version = buffer.getInt();
+        if (version <= 0 || version > VERSION) {
+            throw new IOException("Map file version " + version + " is not supported: " + file);
+        }
+        buffer.getInt();
+        int size = buffer.getInt();
+        if (size < 0) {
+            throw new IOException("Corrupt map file: " + file);
+        }
+        buffer.position(buffer.position() + 32);
+        return size;
+    }
+
+    /**
+     * Check that the columns and the lengths of the names, as the header
+     * gives them, fit in a file of a given length
+     *
+     * @param size The point count
+     * @param nameCount The name count
+     * @param nameTableStart The start of the name table
+     * @param length The length of the file
+     * @param file The file, for messages
+     * @throws IOException If the file is too short or the header is corrupt
+     */
+    static void checkLayout(int size, int nameCount, long nameTableStart, long length,
+            File file) throws IOException {
+        if (nameCount < 0 || nameTableStart != HEADER_SIZE + (long) size * 20
+                || nameTableStart + 4L * nameCount > length) {
+            throw new IOException("Corrupt map file: " + file);
+        }
+    }
+
+    private static void copy(File source, File target) throws IOException {
+        if (source.getCanonicalFile().equals(target.getCanonicalFile())) {
+            return;
+        }
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target.toPath(),
+                        StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            long length = in.size();
+            while (position < length) {
+                position += in.transferTo(position, length - position, out);
+            }
+        }
+    }
+
+    private static void writeDoubles(WritableByteChannel channel, ByteBuffer buffer,
+            double[] values, int size) throws IOException {
+        int offset = 0;
+        while (offset < size) {
+            if (buffer.remaining() < 8) {
+                flush(channel, buffer);
+            }
+            int n = Math.min(buffer.remaining() / 8, size - offset);
+            buffer.asDoubleBuffer().put(values, offset, n);
+            buffer.position(buffer.position() + n * 8);
+            offset += n;
+        }
+    }
+
+    private static void readDoubles(ReadableByteChannel channel, ByteBuffer buffer,
+            double[] values) throws IOException {
+        int offset = 0;
+        while (offset < values.length) {
+            if (buffer.remaining() < 8) {
+                fill(channel, buffer, 8);
+            }
+            int n = Math.min(buffer.remaining() / 8, values.length - offset);
+            buffer.asDoubleBuffer().get(values, offset, n);
+            buffer.position(buffer.position() + n * 8);
+            offset += n;
+        }
+    }
+
+    /**
+     * Write the buffer to the channel and clear it
+     */
+    private static void flush(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Read from the channel until the buffer holds at least the given number
+     * of bytes, the buffer stays in read mode
+     */
+    private static void fill(ReadableByteChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < needed) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of map file");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,310 @@
+package com.atlas.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * A collection of data read straight from a memory-mapped .map file.
+ *
+ * Opening reads the header and walks the name table, so a file that is cut
+ * off is rejected at once, no point is read. The bounds of the points are
+ * read from the header. The operating system pages in
+ * the parts of the columns that are actually looked at, e.g. the points
+ * drawn in the chart or the x column during a search by x. Names are decoded
+ * one at a time when asked for.
+ *
+ * The collection is frozen, and stays valid while the file is not changed.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class MappedCollectionOfData extends CollectionOfData {
+
+    /**
+     * Size of one mapping as a power of two, 1 GiB. A mapping is a multiple
+     * of 8 bytes so no value of the columns crosses two mappings. The lengths
+     * and bytes of the name table lie at any offset, they are read byte by
+     * byte where they cross.
+     */
+    static final int SEGMENT_SHIFT = 30;
+
+    /**
+     * Smallest size of one mapping as a power of two, 8 bytes
+     */
+    static final int MIN_SEGMENT_SHIFT = 3;
+
+    private final File file;
+    private final int segmentShift;
+    private final long segmentSize;
+    private final long segmentMask;
+    private final int size;
+    private final int nameCount;
+    private final long nameTableStart;
+    private final MappedByteBuffer[] segments;
+    private final long[] nameOffsets;
+    private final double[] bounds;
+    private volatile Statistics[] statistics;
+
+    /**
+     * Map a .map file
+     *
+     * @param file The file, in the current format
+     * @throws IOException If the file can not be mapped or is not a .map file
+     */
+    MappedCollectionOfData(File file) throws IOException {
+        this(file, SEGMENT_SHIFT);
+    }
+
+    /**
+     * Map a .map file in mappings of a given size, e.g. small ones so a test
+     * reads across mappings
+     *
+     * @param file The file, in the current format
+     * @param segmentShift The size of one mapping as a power of two, from
+     * MIN_SEGMENT_SHIFT to SEGMENT_SHIFT
+     * @throws IOException If the file can not be mapped or is not a .map file
+     */
+    MappedCollectionOfData(File file, int segmentShift) throws IOException {
+        if (segmentShift < MIN_SEGMENT_SHIFT || segmentShift > SEGMENT_SHIFT) {
+            throw new IllegalArgumentException("Segment shift out of range: " + segmentShift);
+        }
+        this.file = file;
+        this.segmentShift = segmentShift;
+        this.segmentSize = 1L << segmentShift;
+        this.segmentMask = segmentSize - 1;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < MapFile.HEADER_SIZE) {
+                throw new IOException("Not a map file: " + file);
+            }
+            int count = (int) ((length + segmentSize - 1) >>> segmentShift);
+            segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << segmentShift;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(segmentSize, length - start));
+            }
+
+            // The header may cross mappings when they are small
+            ByteBuffer header = ByteBuffer.allocate(MapFile.HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Not a map file: " + file);
+                }
+            }
+            header.flip();
+            this.size = MapFile.readHeader(header, file);
+            this.bounds = new double[4];
+            for (int i = 0; i < bounds.length; i++) {
+                bounds[i] = header.getDouble(MapFile.BOUNDS_OFFSET + 8 * i);
+            }
+            this.nameCount = header.getInt();
+            this.nameTableStart = header.getLong();
+            MapFile.checkLayout(size, nameCount, nameTableStart, length, file);
+            this.nameOffsets = readNameOffsets(length);
+        }
+        freeze();
+    }
+
+    /**
+     * Get the mapped file
+     *
+     * @return The file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Get the smallest x, from the header so no point is read
+     *
+     * @return The minimum, or NaN if there is no value
+     */
+    public double getMinX() {
+        return bounds[0];
+    }
+
+    /**
+     * Get the largest x, from the header so no point is read
+     *
+     * @return The maximum, or NaN if there is no value
+     */
+    public double getMaxX() {
+        return bounds[1];
+    }
+
+    /**
+     * Get the smallest y, from the header so no point is read
+     *
+     * @return The minimum, or NaN if there is no value
+     */
+    public double getMinY() {
+        return bounds[2];
+    }
+
+    /**
+     * Get the largest y, from the header so no point is read
+     *
+     * @return The maximum, or NaN if there is no value
+     */
+    public double getMaxY() {
+        return bounds[3];
+    }
+
+    @Override
+    public boolean isMapped() {
+        return true;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public double getX(int index) {
+        checkPoint(index);
+        return readDouble(MapFile.HEADER_SIZE + 8L * index);
+    }
+
+    @Override
+    public double getY(int index) {
+        checkPoint(index);
+        return readDouble(MapFile.HEADER_SIZE + 8L * size + 8L * index);
+    }
+
+    @Override
+    public String getName(int index) {
+        checkPoint(index);
+        int ref = readInt(MapFile.HEADER_SIZE + 16L * size + 4L * index);
+        return ref < 0 ? null : readName(ref);
+    }
+
+    @Override
+    public Data getPoint(int index) {
+        return new Data(getX(index), getY(index), getName(index));
+    }
+
+    @Override
+    public ArrayList<Data> getData() {
+        ArrayList<Data> points = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            points.add(getPoint(i));
+        }
+        return points;
+    }
+
+    @Override
+    public void forEachPoint(PointConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(i, getX(i), getY(i), getName(i));
+        }
+    }
+
+    @Override
+    public Statistics getXStatistics() {
+        return getStatistics()[0];
+    }
+
+    @Override
+    public Statistics getYStatistics() {
+        return getStatistics()[1];
+    }
+
+    /**
+     * Count the statistics at the first request, so opening the file
+     * reads no point
+     */
+    private Statistics[] getStatistics() {
+        Statistics[] counted = statistics;
+        if (counted == null) {
+            counted = statistics = scanStatistics();
+        }
+        return counted;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder dataList = new StringBuilder();
+
+        for (int i = 0; i < size; i++) {
+            dataList.append(getPoint(i));
+        }
+
+        return dataList.toString();
+    }
+
+    private void checkPoint(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private double readDouble(long offset) {
+        return segments[(int) (offset >>> segmentShift)].getDouble((int) (offset & segmentMask));
+    }
+
+    /**
+     * Read a big-endian int, which may cross two mappings in the name table
+     */
+    private int readInt(long offset) {
+        if ((offset & segmentMask) > segmentSize - 4) {
+            return (readByte(offset) & 0xFF) << 24 | (readByte(offset + 1) & 0xFF) << 16
+                    | (readByte(offset + 2) & 0xFF) << 8 | (readByte(offset + 3) & 0xFF);
+        }
+        return segments[(int) (offset >>> segmentShift)].getInt((int) (offset & segmentMask));
+    }
+
+    private byte readByte(long offset) {
+        return segments[(int) (offset >>> segmentShift)].get((int) (offset & segmentMask));
+    }
+
+    /**
+     * Decode one entry of the name table
+     *
+     * @param ref The index in the name table
+     * @return The name
+     */
+    private String readName(int ref) {
+        long start = nameOffsets[ref];
+        int length = readInt(start);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = readByte(start + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Walk the name table once to find where every name starts, and check
+     * that the last name ends in the file
+     *
+     * @param length The length of the file
+     * @return The offsets of the names
+     * @throws IOException If the name table is cut off or corrupt
+     */
+    private long[] readNameOffsets(long length) throws IOException {
+        long[] offsets = new long[nameCount];
+        long offset = nameTableStart;
+        for (int i = 0; i < nameCount; i++) {
+            if (offset > length - 4) {
+                throw new IOException("Corrupt map file: " + file);
+            }
+            offsets[i] = offset;
+            int nameLength = readInt(offset);
+            if (nameLength < 0) {
+                throw new IOException("Corrupt map file: " + file);
+            }
+            offset += 4 + nameLength;
+        }
+        if (offset > length) {
+            throw new IOException("Corrupt map file: " + file);
+        }
+        return offsets;
+    }
+}
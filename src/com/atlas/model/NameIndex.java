@@ -0,0 +1,444 @@
+package com.atlas.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index over the names of a collection for substring and prefix search.
+ *
+ * Every distinct name is stored once with the chain of rows that carry it.
+ * For substring search the names are indexed by trigram: the query's
+ * trigrams select the names that contain all of them, and only those names
+ * are checked with contains. Prefix search uses the names sorted in folded
+ * order. Case-insensitive search works on names folded to lower case one
+ * char at a time, so a name that contains the query also contains it after
+ * folding.
+ *
+ * Points added to the collection are indexed at the next query.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+class NameIndex {
+
+    private static final int[] NO_ROWS = new int[0];
+
+    /**
+     * Estimated memory of one distinct name besides the arrays: the folded
+     * copy, its entry in the map of ids and its ids in the trigram postings
+     */
+    private static final long BYTES_PER_NAME = 96;
+
+    private final Map<String, Integer> ids;
+    private final TrigramTable trigrams;
+    private String[] names;
+    private String[] folded;
+    private int[] firstRow;
+    private int[] lastRow;
+    private int[] rowCount;
+    private int nameCount;
+    private int[] nextRow;
+    private int[] sortedIds;
+    private int indexed;
+
+    NameIndex() {
+        this.ids = new HashMap<>();
+        this.trigrams = new TrigramTable();
+        this.names = new String[16];
+        this.folded = new String[16];
+        this.firstRow = new int[16];
+        this.lastRow = new int[16];
+        this.rowCount = new int[16];
+        this.nextRow = new int[16];
+    }
+
+    /**
+     * Index the rows added to the collection since the last query
+     *
+     * @param data The indexed collection
+     */
+    synchronized void build(CollectionOfData data) {
+        update(data);
+    }
+
+    /**
+     * Find the rows whose name matches a text
+     *
+     * @param data The indexed collection
+     * @param text The text to look for
+     * @param prefix True if the name must start with the text, false if it
+     * must contain it
+     * @param ignoreCase If upper and lower case are the same
+     * @return The row ids, in ascending order
+     */
+    synchronized int[] find(CollectionOfData data, String text, boolean prefix, boolean ignoreCase) {
+        update(data);
+        String foldedText = fold(text);
+        int[] candidates;
+        if (prefix) {
+            candidates = prefixCandidates(foldedText);
+        } else if (foldedText.length() >= 3) {
+            candidates = trigramCandidates(foldedText);
+        } else {
+            candidates = new int[nameCount];
+            for (int i = 0; i < nameCount; i++) {
+                candidates[i] = i;
+            }
+        }
+
+        int total = 0;
+        int matched = 0;
+        for (int id : candidates) {
+            boolean match;
+            if (prefix) {
+                match = ignoreCase || names[id].startsWith(text);
+            } else {
+                match = ignoreCase ? folded[id].contains(foldedText) : names[id].contains(text);
+            }
+            if (match) {
+                candidates[matched++] = id;
+                total += rowCount[id];
+            }
+        }
+        if (total == 0) {
+            return NO_ROWS;
+        }
+        int[] rows = new int[total];
+        int count = 0;
+        for (int i = 0; i < matched; i++) {
+            for (int row = firstRow[candidates[i]]; row >= 0; row = nextRow[row]) {
+                rows[count++] = row;
+            }
+        }
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    /**
+     * Estimate the number of rows whose name matches a text, without
+     * finding them: the names that may match times the rows per name
+     *
+     * @param data The indexed collection
+     * @param text The text to look for
+     * @param prefix True if the name must start with the text, false if it
+     * must contain it
+     * @return The estimated number of rows
+     */
+    synchronized int estimate(CollectionOfData data, String text, boolean prefix) {
+        update(data);
+        if (nameCount == 0) {
+            return 0;
+        }
+        String foldedText = fold(text);
+        long candidates;
+        if (prefix) {
+            candidates = prefixCandidates(foldedText).length;
+        } else if (foldedText.length() >= 3) {
+            // The rarest trigram bounds the names that contain the text
+            candidates = nameCount;
+            for (int i = 0; i + 3 <= foldedText.length(); i++) {
+                Postings postings = trigrams.get(trigram(foldedText, i));
+                candidates = Math.min(candidates, postings == null ? 0 : postings.size);
+            }
+        } else {
+            candidates = nameCount;
+        }
+        return (int) (candidates * indexed / nameCount);
+    }
+
+    /**
+     * Estimate the memory of the index
+     *
+     * @return The memory in bytes
+     */
+    synchronized long getBytes() {
+        return 4L * nextRow.length + 20L * names.length + BYTES_PER_NAME * nameCount
+                + trigrams.getBytes();
+    }
+
+    /**
+     * Add the rows added to the collection since the last update
+     */
+    private void update(CollectionOfData data) {
+        int size = data.getSize();
+        if (size == indexed) {
+            return;
+        }
+        if (nextRow.length < size) {
+            nextRow = Arrays.copyOf(nextRow, Math.max(size, nextRow.length + (nextRow.length >> 1)));
+        }
+        for (int row = indexed; row < size; row++) {
+            nextRow[row] = -1;
+            String name = data.getName(row);
+            if (name == null) {
+                continue;
+            }
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = addName(name);
+            } else {
+                nextRow[lastRow[id]] = row;
+            }
+            if (firstRow[id] < 0) {
+                firstRow[id] = row;
+            }
+            lastRow[id] = row;
+            rowCount[id]++;
+        }
+        indexed = size;
+    }
+
+    private int addName(String name) {
+        int id = nameCount++;
+        if (id == names.length) {
+            int capacity = names.length + (names.length >> 1);
+            names = Arrays.copyOf(names, capacity);
+            folded = Arrays.copyOf(folded, capacity);
+            firstRow = Arrays.copyOf(firstRow, capacity);
+            lastRow = Arrays.copyOf(lastRow, capacity);
+            rowCount = Arrays.copyOf(rowCount, capacity);
+        }
+        String foldedName = fold(name);
+        names[id] = name;
+        folded[id] = foldedName;
+        firstRow[id] = -1;
+        ids.put(name, id);
+        for (int i = 0; i + 3 <= foldedName.length(); i++) {
+            trigrams.getOrCreate(trigram(foldedName, i)).add(id);
+        }
+        sortedIds = null;
+        return id;
+    }
+
+    /**
+     * Names that contain every trigram of the text, ascending ids
+     */
+    private int[] trigramCandidates(String foldedText) {
+        int count = foldedText.length() - 2;
+        Postings[] lists = new Postings[count];
+        for (int i = 0; i < count; i++) {
+            lists[i] = trigrams.get(trigram(foldedText, i));
+            if (lists[i] == null) {
+                return NO_ROWS;
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        int[] candidates = Arrays.copyOf(lists[0].ids, lists[0].size);
+        int size = candidates.length;
+        for (int l = 1; l < lists.length && size > 0; l++) {
+            if (lists[l] == lists[l - 1]) {
+                continue;
+            }
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (Arrays.binarySearch(lists[l].ids, 0, lists[l].size, candidates[i]) >= 0) {
+                    candidates[kept++] = candidates[i];
+                }
+            }
+            size = kept;
+        }
+        return Arrays.copyOf(candidates, size);
+    }
+
+    /**
+     * Names whose folded form starts with the text
+     */
+    private int[] prefixCandidates(String foldedText) {
+        if (sortedIds == null) {
+            sortedIds = sortNames();
+        }
+        int low = 0;
+        int high = nameCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (folded[sortedIds[mid]].compareTo(foldedText) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int end = low;
+        while (end < nameCount && folded[sortedIds[end]].startsWith(foldedText)) {
+            end++;
+        }
+        return Arrays.copyOfRange(sortedIds, low, end);
+    }
+
+    /**
+     * Merge sort the name ids by folded name
+     */
+    private int[] sortNames() {
+        int[] from = new int[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            from[i] = i;
+        }
+        int[] to = new int[nameCount];
+        for (int width = 1; width < nameCount; width *= 2) {
+            for (int start = 0; start < nameCount; start += 2 * width) {
+                int left = start;
+                int leftEnd = Math.min(start + width, nameCount);
+                int right = leftEnd;
+                int rightEnd = Math.min(start + 2 * width, nameCount);
+                int out = start;
+                while (left < leftEnd && right < rightEnd) {
+                    if (folded[from[right]].compareTo(folded[from[left]]) < 0) {
+                        to[out++] = from[right++];
+                    } else {
+                        to[out++] = from[left++];
+                    }
+                }
+                while (left < leftEnd) {
+                    to[out++] = from[left++];
+                }
+                while (right < rightEnd) {
+                    to[out++] = from[right++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        return from;
+    }
+
+    /**
+     * Lower case one char at a time, so the length never changes
+     */
+    static String fold(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Determine if a name, folded like fold, has a folded text at a
+     * position, without copying the name
+     *
+     * @param name The name
+     * @param at The position in the name
+     * @param foldedText The folded text
+     * @return If the text is found at the position
+     */
+    static boolean foldedAt(String name, int at, String foldedText) {
+        if (at + foldedText.length() > name.length()) {
+            return false;
+        }
+        for (int i = 0; i < foldedText.length(); i++) {
+            if (Character.toLowerCase(name.charAt(at + i)) != foldedText.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determine if a name, folded like fold, contains a folded text
+     *
+     * @param name The name
+     * @param foldedText The folded text
+     * @return If the text is found anywhere in the name
+     */
+    static boolean containsFolded(String name, String foldedText) {
+        for (int at = 0; at + foldedText.length() <= name.length(); at++) {
+            if (foldedAt(name, at, foldedText)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long trigram(String text, int at) {
+        return ((long) text.charAt(at) << 32) | ((long) text.charAt(at + 1) << 16) | text.charAt(at + 2);
+    }
+
+    /**
+     * Open addressing table from trigram to postings, avoids boxing the
+     * trigram keys
+     */
+    private static class TrigramTable {
+
+        private long[] keys = new long[1024];
+        private Postings[] values = new Postings[1024];
+        private int size;
+
+        Postings get(long trigram) {
+            long key = trigram + 1;
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+
+        Postings getOrCreate(long trigram) {
+            long key = trigram + 1;
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            for (; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            Postings postings = new Postings();
+            keys[slot] = key;
+            values[slot] = postings;
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+            return postings;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Postings[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Postings[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        /**
+         * Estimate the memory of the table and its postings
+         */
+        long getBytes() {
+            return 12L * keys.length + 32L * size;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /**
+     * Ascending ids of the names that contain one trigram
+     */
+    private static class Postings {
+
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.atlas.model;
+
+/**
+ * Callback for walking the points of a collection without creating Data
+ * objects
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+@FunctionalInterface
+public interface PointConsumer {
+
+    /**
+     * Called once for every point
+     *
+     * @param index The index of the point in the collection
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @param name Name of the point
+     */
+    void accept(int index, double x, double y, String name);
+}
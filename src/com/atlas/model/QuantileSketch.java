@@ -0,0 +1,327 @@
+package com.atlas.model;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable sketch of the distribution of a stream of values, to answer
+ * quantiles like the median in small, fixed memory.
+ *
+ * The sketch is a KLL sketch: values are kept in levels, a value on level h
+ * stands for 2^h values of the stream. When a level is full it is sorted
+ * and every other value, starting at a random one of the first two, moves
+ * up one level. Lower levels get smaller capacities, so the sketch keeps
+ * about four times k values whatever the length of the stream, and the
+ * rank of a returned quantile is off by about 1.7 / k of the count. Two
+ * sketches are merged by joining their levels and compacting again.
+ *
+ * NaN values are not counted. The sketch is not thread-safe while values
+ * are added, once complete it can be read from any thread.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class QuantileSketch {
+
+    /**
+     * Default accuracy, about 1% of the count
+     */
+    public static final int DEFAULT_K = 200;
+
+    /**
+     * Capacity of a level relative to the level above it
+     */
+    private static final double SHRINK = 2.0 / 3.0;
+
+    private static final int MIN_CAPACITY = 8;
+
+    private final int k;
+    private double[][] levels;
+    private int[] sizes;
+    private int[] capacities;
+    private long count;
+    private int retained;
+    private int capacity;
+    private long random;
+    private double[] sortedValues;
+    private long[] sortedRanks;
+
+    /**
+     * Constructor with the default accuracy
+     */
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param k The capacity of the top level, the rank error is about
+     * 1.7 / k
+     */
+    public QuantileSketch(int k) {
+        this.k = k;
+        this.levels = new double[][]{new double[MIN_CAPACITY]};
+        this.sizes = new int[1];
+        this.capacities = new int[]{capacity(0, 1)};
+        this.capacity = capacities[0];
+        this.random = 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Copy constructor
+     *
+     * @param other The sketch to copy
+     */
+    public QuantileSketch(QuantileSketch other) {
+        this.k = other.k;
+        this.levels = new double[other.levels.length][];
+        for (int h = 0; h < levels.length; h++) {
+            levels[h] = other.levels[h].clone();
+        }
+        this.sizes = other.sizes.clone();
+        this.capacities = other.capacities.clone();
+        this.count = other.count;
+        this.retained = other.retained;
+        this.capacity = other.capacity;
+        this.random = other.random;
+    }
+
+    /**
+     * Add a value, NaN is ignored
+     *
+     * @param value The value
+     */
+    public void add(double value) {
+        if (value != value) {
+            return;
+        }
+        double[] bottom = levels[0];
+        int size = sizes[0];
+        if (size == bottom.length) {
+            bottom = levels[0] = Arrays.copyOf(bottom, size * 2);
+        }
+        bottom[size] = value;
+        sizes[0] = size + 1;
+        retained++;
+        count++;
+        sortedValues = null;
+        if (retained >= capacity) {
+            compress();
+        }
+    }
+
+    /**
+     * Add all values of another sketch
+     *
+     * @param other The other sketch, not changed
+     */
+    public void merge(QuantileSketch other) {
+        while (levels.length < other.levels.length) {
+            addLevel();
+        }
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+            if (h > 0) {
+                Arrays.sort(levels[h], 0, sizes[h]);
+            }
+        }
+        count += other.count;
+        while (retained >= capacity) {
+            compress();
+        }
+    }
+
+    /**
+     * Get the number of values added
+     *
+     * @return The count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the number of values kept in the sketch
+     *
+     * @return The number of kept values
+     */
+    public int getRetained() {
+        return retained;
+    }
+
+    /**
+     * Get the value at a quantile, e.g. 0.5 for the median
+     *
+     * @param quantile The quantile, from 0 to 1
+     * @return The value, or NaN if no value was added
+     */
+    public synchronized double getQuantile(double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        sort();
+        long rank = (long) Math.ceil(Math.max(0, Math.min(1, quantile)) * sortedRanks[sortedRanks.length - 1]);
+        int at = Arrays.binarySearch(sortedRanks, Math.max(1, rank));
+        if (at < 0) {
+            at = -at - 1;
+        }
+        return sortedValues[Math.min(at, sortedValues.length - 1)];
+    }
+
+    /**
+     * Get the part of the values that are at most a value
+     *
+     * @param value The value
+     * @return The part, from 0 to 1, or NaN if no value was added
+     */
+    public synchronized double getRank(double value) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        sort();
+        int at = upperBound(sortedValues, value);
+        long total = sortedRanks[sortedRanks.length - 1];
+        return at == 0 ? 0 : (double) sortedRanks[at - 1] / total;
+    }
+
+    /**
+     * Sort the kept values with their cumulative weights, kept until the
+     * next change
+     */
+    private void sort() {
+        if (sortedValues != null) {
+            return;
+        }
+        double[] values = new double[retained];
+        long[] weights = new long[retained];
+        int next = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[next] = levels[h][i];
+                weights[next++] = 1L << h;
+            }
+        }
+        Integer[] order = new Integer[retained];
+        for (int i = 0; i < retained; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        double[] sorted = new double[retained];
+        long[] ranks = new long[retained];
+        long rank = 0;
+        for (int i = 0; i < retained; i++) {
+            sorted[i] = values[order[i]];
+            rank += weights[order[i]];
+            ranks[i] = rank;
+        }
+        sortedValues = sorted;
+        sortedRanks = ranks;
+    }
+
+    private void append(int level, double value) {
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+        }
+        levels[level][sizes[level]++] = value;
+        retained++;
+        sortedValues = null;
+    }
+
+    /**
+     * Compact the lowest level that holds more than its capacity
+     */
+    private void compress() {
+        for (int h = 0; h < levels.length; h++) {
+            if (sizes[h] >= capacities[h]) {
+                if (h + 1 == levels.length) {
+                    addLevel();
+                }
+                compact(h);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Move every other value of a level up, an odd value out stays. The
+     * levels above the bottom are kept sorted, so only the bottom is sorted
+     * here and the moved values are merged into the next level
+     */
+    private void compact(int level) {
+        double[] values = levels[level];
+        int size = sizes[level];
+        if (level == 0) {
+            Arrays.sort(values, 0, size);
+        }
+        int kept = size % 2;
+        int offset = kept + (nextBit() ? 1 : 0);
+        int moved = (size - offset + 1) / 2;
+        // The odd value out is the smallest, already in place at index 0
+        for (int i = 0; i < moved; i++) {
+            values[kept + i] = values[offset + 2 * i];
+        }
+        double[] above = levels[level + 1];
+        int aboveSize = sizes[level + 1];
+        if (aboveSize + moved > above.length) {
+            above = levels[level + 1] = Arrays.copyOf(above, Math.max(above.length * 2, aboveSize + moved));
+        }
+        // Merge from the back, both runs are sorted
+        int a = aboveSize - 1;
+        int b = kept + moved - 1;
+        for (int to = aboveSize + moved - 1; b >= kept; to--) {
+            above[to] = a >= 0 && above[a] > values[b] ? above[a--] : values[b--];
+        }
+        sizes[level] = kept;
+        sizes[level + 1] = aboveSize + moved;
+        retained -= size - kept - moved;
+        sortedValues = null;
+    }
+
+    private void addLevel() {
+        int height = levels.length + 1;
+        levels = Arrays.copyOf(levels, height);
+        levels[height - 1] = new double[MIN_CAPACITY];
+        sizes = Arrays.copyOf(sizes, height);
+        capacities = new int[height];
+        capacity = 0;
+        for (int h = 0; h < height; h++) {
+            capacities[h] = capacity(h, height);
+            capacity += capacities[h];
+        }
+    }
+
+    /**
+     * Capacity of a level, k for the top level and shrinking below it. The
+     * bottom level also holds k, so new values are sorted k at a time
+     * instead of a few at a time
+     */
+    private int capacity(int level, int height) {
+        if (level == 0) {
+            return k;
+        }
+        int depth = height - 1 - level;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(SHRINK, depth)));
+    }
+
+    private boolean nextBit() {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (random & 1) != 0;
+    }
+
+    private static int upperBound(double[] values, double value) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
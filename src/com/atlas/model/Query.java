@@ -0,0 +1,478 @@
+package com.atlas.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A compound query over the points of a collection, e.g.
+ * <code>x &gt;= 10 AND y &lt; 50 AND name ~ "Stock"</code>.
+ *
+ * A query is written as comparisons joined by AND, OR and NOT, with
+ * parentheses. x and y are compared with &lt;, &lt;=, &gt;, &gt;=, = and !=
+ * to a number. A name is compared with ~ (contains), !~, = and != to a text
+ * in quotes or a single word, regardless of case unless the query is
+ * compiled to match case. A text ending with * after ~ must start the name,
+ * like in the name search.
+ *
+ * The text is parsed once into a tree of comparisons: every comparison of a
+ * coordinate becomes a range, the ranges of one coordinate under the same
+ * AND are merged, and the terms of an AND are ordered so the cheap ones are
+ * tested first. The tree is the predicate, testing a point reads only the
+ * values the tree needs.
+ *
+ * To find the points, the term of the top AND that the indexes answer with
+ * the fewest points is looked up in its index, and the other terms are
+ * tested on those points only. The ranges are counted exactly, names are
+ * estimated from the name index. A query with no such term, e.g. one OR at
+ * the top, or whose best term still finds many points, is tested on every
+ * point in one pass. The result is the row ids of the points, nothing is
+ * copied.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class Query {
+
+    /**
+     * An index is only used if it finds at most this part of the points,
+     * testing every point in one pass is faster than collecting more rows
+     * from an index
+     */
+    private static final int SCAN_FRACTION = 16;
+
+    private static final int[] NO_ROWS = new int[0];
+
+    private final Node root;
+    private final String text;
+    private final boolean ignoreCase;
+
+    Query(Node root, boolean ignoreCase) {
+        this.root = root;
+        this.text = root.toString();
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * Parse and compile a query whose names are compared regardless of case
+     *
+     * @param input The query text
+     * @return The query
+     * @throws IllegalArgumentException If the text is not a query, the
+     * message tells where
+     */
+    public static Query compile(String input) {
+        return compile(input, true);
+    }
+
+    /**
+     * Parse and compile a query
+     *
+     * @param input The query text
+     * @param ignoreCase If upper and lower case are the same in the names
+     * @return The query
+     * @throws IllegalArgumentException If the text is not a query, the
+     * message tells where
+     */
+    public static Query compile(String input, boolean ignoreCase) {
+        return new Query(new QueryParser(input, ignoreCase).parse(), ignoreCase);
+    }
+
+    /**
+     * Find the matching points of a collection
+     *
+     * @param data The collection
+     * @return The indexes of the points, in ascending order
+     */
+    public int[] find(CollectionOfData data) {
+        Node[] terms = root instanceof And ? ((And) root).terms : new Node[]{root};
+        int size = data.getSize();
+
+        // The term an index answers with the fewest points
+        Node driver = null;
+        long fewest = Long.MAX_VALUE;
+        for (Node term : terms) {
+            long count = term.estimate(data);
+            if (count >= 0 && count < fewest) {
+                fewest = count;
+                driver = term;
+            }
+        }
+        if (driver == null || fewest > size / SCAN_FRACTION) {
+            return scan(root, data);
+        }
+
+        int[] candidates = driver.find(data);
+        ArrayList<Node> rest = new ArrayList<>();
+        for (Node term : terms) {
+            if (term != driver || !driver.isExact()) {
+                rest.add(term);
+            }
+        }
+        if (rest.isEmpty() || candidates.length == 0) {
+            return candidates;
+        }
+        Node filter = rest.size() == 1 ? rest.get(0) : new And(rest.toArray(new Node[0]));
+        int count = 0;
+        for (int row : candidates) {
+            if (filter.test(data, row)) {
+                candidates[count++] = row;
+            }
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * Determine if a point matches the query
+     *
+     * @param data The collection
+     * @param row The index of the point
+     * @return If the point matches
+     */
+    public boolean matches(CollectionOfData data, int row) {
+        return root.test(data, row);
+    }
+
+    /**
+     * Test every point in one pass
+     */
+    private static int[] scan(Node node, CollectionOfData data) {
+        int size = data.getSize();
+        int[] rows = NO_ROWS;
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (node.test(data, row)) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, Math.max(16, Math.min(size, count + (count >> 1))));
+                }
+                rows[count++] = row;
+            }
+        }
+        return count == rows.length ? rows : Arrays.copyOf(rows, count);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        return object instanceof Query && text.equals(((Query) object).text)
+                && ignoreCase == ((Query) object).ignoreCase;
+    }
+
+    @Override
+    public int hashCode() {
+        return 2 * text.hashCode() + (ignoreCase ? 1 : 0);
+    }
+
+    /**
+     * Get the compiled query as text, e.g. to see how it was read
+     *
+     * @return The query text
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /**
+     * A node of the compiled query
+     */
+    abstract static class Node {
+
+        /**
+         * Test a point
+         */
+        abstract boolean test(CollectionOfData data, int row);
+
+        /**
+         * Estimated cost of a test, to test cheap terms first
+         */
+        abstract int cost();
+
+        /**
+         * Estimate the points an index finds for the node
+         *
+         * @return The number of points, or -1 if no index answers the node
+         */
+        long estimate(CollectionOfData data) {
+            return -1;
+        }
+
+        /**
+         * Find the matching points in ascending order, with an index if
+         * estimate finds one, else by testing every point
+         */
+        int[] find(CollectionOfData data) {
+            return scan(this, data);
+        }
+
+        /**
+         * Determine if find returns exactly the matching points
+         */
+        boolean isExact() {
+            return true;
+        }
+    }
+
+    /**
+     * An inclusive range of x or y
+     */
+    static class Range extends Node {
+
+        private final boolean onX;
+        private final CoordinateRange range;
+
+        Range(boolean onX, CoordinateRange range) {
+            this.onX = onX;
+            this.range = range;
+        }
+
+        boolean isOnX() {
+            return onX;
+        }
+
+        CoordinateRange getRange() {
+            return range;
+        }
+
+        @Override
+        boolean test(CollectionOfData data, int row) {
+            return range.contains(onX ? data.getX(row) : data.getY(row));
+        }
+
+        @Override
+        int cost() {
+            return 1;
+        }
+
+        @Override
+        int[] find(CollectionOfData data) {
+            return onX ? data.findByX(range) : data.findByY(range);
+        }
+
+        @Override
+        long estimate(CollectionOfData data) {
+            return onX ? data.countByX(range) : data.countByY(range);
+        }
+
+        @Override
+        public String toString() {
+            String field = onX ? "x" : "y";
+            double min = range.getMin();
+            double max = range.getMax();
+            if (min == max) {
+                return field + " = " + min;
+            } else if (min == Double.NEGATIVE_INFINITY) {
+                return field + " <= " + max;
+            } else if (max == Double.POSITIVE_INFINITY) {
+                return field + " >= " + min;
+            }
+            return field + " >= " + min + " AND " + field + " <= " + max;
+        }
+    }
+
+    /**
+     * A name that contains, starts with or equals a text, with or without
+     * case
+     */
+    static class Name extends Node {
+
+        static final int CONTAINS = 0;
+        static final int PREFIX = 1;
+        static final int EQUALS = 2;
+
+        private final int kind;
+        private final String text;
+        private final String foldedText;
+        private final boolean ignoreCase;
+
+        Name(int kind, String text, boolean ignoreCase) {
+            this.kind = kind;
+            this.text = text;
+            this.foldedText = NameIndex.fold(text);
+            this.ignoreCase = ignoreCase;
+        }
+
+        @Override
+        boolean test(CollectionOfData data, int row) {
+            String name = data.getName(row);
+            if (name == null) {
+                return false;
+            }
+            if (!ignoreCase) {
+                switch (kind) {
+                    case CONTAINS:
+                        return name.contains(text);
+                    case PREFIX:
+                        return name.startsWith(text);
+                    default:
+                        return name.equals(text);
+                }
+            }
+            switch (kind) {
+                case CONTAINS:
+                    return NameIndex.containsFolded(name, foldedText);
+                case PREFIX:
+                    return NameIndex.foldedAt(name, 0, foldedText);
+                default:
+                    return name.length() == foldedText.length()
+                            && NameIndex.foldedAt(name, 0, foldedText);
+            }
+        }
+
+        @Override
+        int cost() {
+            return 8;
+        }
+
+        @Override
+        long estimate(CollectionOfData data) {
+            return data.estimateByName(text, kind != CONTAINS);
+        }
+
+        @Override
+        int[] find(CollectionOfData data) {
+            return data.findByName(text, kind != CONTAINS, ignoreCase);
+        }
+
+        @Override
+        boolean isExact() {
+            return kind != EQUALS;
+        }
+
+        @Override
+        public String toString() {
+            String quoted = "\"" + (ignoreCase ? foldedText : text).replace("\\", "\\\\").replace("\"", "\\\"");
+            switch (kind) {
+                case CONTAINS:
+                    return "name ~ " + quoted + "\"";
+                case PREFIX:
+                    return "name ~ " + quoted + "*\"";
+                default:
+                    return "name = " + quoted + "\"";
+            }
+        }
+    }
+
+    /**
+     * Terms that must all match, cheap terms first
+     */
+    static class And extends Node {
+
+        private final Node[] terms;
+        private final int cost;
+
+        And(Node[] terms) {
+            this.terms = terms.clone();
+            Arrays.sort(this.terms, Comparator.comparingInt(Node::cost));
+            int sum = 0;
+            for (Node term : terms) {
+                sum += term.cost();
+            }
+            this.cost = sum;
+        }
+
+        @Override
+        boolean test(CollectionOfData data, int row) {
+            for (Node term : terms) {
+                if (!term.test(data, row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        int cost() {
+            return cost;
+        }
+
+        Node[] getTerms() {
+            return terms;
+        }
+
+        @Override
+        public String toString() {
+            return join(terms, " AND ");
+        }
+    }
+
+    /**
+     * Terms of which at least one must match, cheap terms first
+     */
+    static class Or extends Node {
+
+        private final Node[] terms;
+        private final int cost;
+
+        Or(Node[] terms) {
+            this.terms = terms.clone();
+            Arrays.sort(this.terms, Comparator.comparingInt(Node::cost));
+            int sum = 0;
+            for (Node term : terms) {
+                sum += term.cost();
+            }
+            this.cost = sum;
+        }
+
+        @Override
+        boolean test(CollectionOfData data, int row) {
+            for (Node term : terms) {
+                if (term.test(data, row)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        int cost() {
+            return cost;
+        }
+
+        Node[] getTerms() {
+            return terms;
+        }
+
+        @Override
+        public String toString() {
+            return join(terms, " OR ");
+        }
+    }
+
+    /**
+     * A term that must not match
+     */
+    static class Not extends Node {
+
+        private final Node term;
+
+        Not(Node term) {
+            this.term = term;
+        }
+
+        @Override
+        boolean test(CollectionOfData data, int row) {
+            return !term.test(data, row);
+        }
+
+        @Override
+        int cost() {
+            return term.cost();
+        }
+
+        @Override
+        public String toString() {
+            return "NOT (" + term + ")";
+        }
+    }
+
+    private static String join(Node[] terms, String separator) {
+        StringBuilder text = new StringBuilder();
+        for (Node term : terms) {
+            if (text.length() > 0) {
+                text.append(separator);
+            }
+            boolean group = term instanceof And || term instanceof Or;
+            text.append(group ? "(" : "").append(term).append(group ? ")" : "");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,322 @@
+package com.atlas.model;
+
+import java.util.ArrayList;
+
+/**
+ * Parser of the query text, see Query for the syntax.
+ *
+ * A recursive descent over the text: OR binds weaker than AND, which binds
+ * weaker than NOT. Keywords and field names are read regardless of case,
+ * AND, OR and NOT may also be written &amp;&amp;, || and !. Comparisons of
+ * a coordinate are turned into inclusive ranges, a strict bound moves to
+ * the next double, and ranges of one coordinate directly under the same AND
+ * are merged into one.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+class QueryParser {
+
+    private final String input;
+    private final boolean ignoreCase;
+    private int position;
+
+    /**
+     * Constructor
+     *
+     * @param input The query text
+     * @param ignoreCase If the names are compared regardless of case
+     */
+    QueryParser(String input, boolean ignoreCase) {
+        this.input = input;
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * Parse the whole text
+     *
+     * @return The root of the compiled query
+     * @throws IllegalArgumentException If the text is not a query
+     */
+    Query.Node parse() {
+        Query.Node root = parseOr();
+        skipSpace();
+        if (position < input.length()) {
+            throw error("Unexpected \"" + input.charAt(position) + "\"");
+        }
+        return root;
+    }
+
+    private Query.Node parseOr() {
+        ArrayList<Query.Node> terms = new ArrayList<>();
+        terms.add(parseAnd());
+        while (keyword("OR") || symbol("||")) {
+            terms.add(parseAnd());
+        }
+        if (terms.size() == 1) {
+            return terms.get(0);
+        }
+        ArrayList<Query.Node> flat = new ArrayList<>();
+        for (Query.Node term : terms) {
+            if (term instanceof Query.Or) {
+                flat.addAll(childrenOf(term));
+            } else {
+                flat.add(term);
+            }
+        }
+        return new Query.Or(flat.toArray(new Query.Node[0]));
+    }
+
+    private Query.Node parseAnd() {
+        ArrayList<Query.Node> terms = new ArrayList<>();
+        terms.add(parseNot());
+        while (keyword("AND") || symbol("&&")) {
+            terms.add(parseNot());
+        }
+        if (terms.size() == 1) {
+            return terms.get(0);
+        }
+
+        // Flatten nested ANDs and merge the ranges of each coordinate
+        ArrayList<Query.Node> flat = new ArrayList<>();
+        Query.Range onX = null;
+        Query.Range onY = null;
+        for (Query.Node term : terms) {
+            for (Query.Node child : term instanceof Query.And ? childrenOf(term) : single(term)) {
+                if (child instanceof Query.Range) {
+                    Query.Range range = (Query.Range) child;
+                    if (range.isOnX()) {
+                        onX = intersect(onX, range);
+                    } else {
+                        onY = intersect(onY, range);
+                    }
+                } else {
+                    flat.add(child);
+                }
+            }
+        }
+        if (onY != null) {
+            flat.add(0, onY);
+        }
+        if (onX != null) {
+            flat.add(0, onX);
+        }
+        return flat.size() == 1 ? flat.get(0) : new Query.And(flat.toArray(new Query.Node[0]));
+    }
+
+    private Query.Node parseNot() {
+        if (keyword("NOT") || (!peek("!=") && !peek("!~") && symbol("!"))) {
+            return new Query.Not(parseNot());
+        }
+        return parsePrimary();
+    }
+
+    private Query.Node parsePrimary() {
+        if (symbol("(")) {
+            Query.Node inner = parseOr();
+            if (!symbol(")")) {
+                throw error("Expected \")\"");
+            }
+            return inner;
+        }
+        String field = word();
+        if (field == null) {
+            throw error("Expected x, y, name or \"(\"");
+        }
+        switch (field.toLowerCase()) {
+            case "x":
+                return parseComparison(true);
+            case "y":
+                return parseComparison(false);
+            case "name":
+                return parseName();
+            default:
+                throw error("Unknown field \"" + field + "\"");
+        }
+    }
+
+    private Query.Node parseComparison(boolean onX) {
+        String operator = operator();
+        double value = number();
+        double min = Double.NEGATIVE_INFINITY;
+        double max = Double.POSITIVE_INFINITY;
+        switch (operator) {
+            case "<":
+                max = Math.nextDown(value);
+                break;
+            case "<=":
+                max = value;
+                break;
+            case ">":
+                min = Math.nextUp(value);
+                break;
+            case ">=":
+                min = value;
+                break;
+            case "=":
+            case "==":
+                min = max = value;
+                break;
+            case "!=":
+                return new Query.Not(new Query.Range(onX, new CoordinateRange(value, value)));
+            default:
+                throw error("Expected <, <=, >, >=, = or != before the number");
+        }
+        return new Query.Range(onX, new CoordinateRange(min, max));
+    }
+
+    private Query.Node parseName() {
+        String operator = operator();
+        String text = text();
+        switch (operator) {
+            case "~":
+            case "!~":
+                Query.Node match = text.endsWith("*")
+                        ? new Query.Name(Query.Name.PREFIX, text.substring(0, text.length() - 1), ignoreCase)
+                        : new Query.Name(Query.Name.CONTAINS, text, ignoreCase);
+                return operator.equals("~") ? match : new Query.Not(match);
+            case "=":
+            case "==":
+                return new Query.Name(Query.Name.EQUALS, text, ignoreCase);
+            case "!=":
+                return new Query.Not(new Query.Name(Query.Name.EQUALS, text, ignoreCase));
+            default:
+                throw error("Expected ~, !~, = or != before the name");
+        }
+    }
+
+    private static Query.Range intersect(Query.Range merged, Query.Range range) {
+        if (merged == null) {
+            return range;
+        }
+        CoordinateRange a = merged.getRange();
+        CoordinateRange b = range.getRange();
+        return new Query.Range(range.isOnX(), new CoordinateRange(
+                Math.max(a.getMin(), b.getMin()), Math.min(a.getMax(), b.getMax())));
+    }
+
+    private static ArrayList<Query.Node> childrenOf(Query.Node node) {
+        ArrayList<Query.Node> children = new ArrayList<>();
+        Query.Node[] terms = node instanceof Query.And
+                ? ((Query.And) node).getTerms() : ((Query.Or) node).getTerms();
+        for (Query.Node term : terms) {
+            children.add(term);
+        }
+        return children;
+    }
+
+    private static ArrayList<Query.Node> single(Query.Node node) {
+        ArrayList<Query.Node> list = new ArrayList<>();
+        list.add(node);
+        return list;
+    }
+
+    private void skipSpace() {
+        while (position < input.length() && Character.isWhitespace(input.charAt(position))) {
+            position++;
+        }
+    }
+
+    private boolean peek(String symbol) {
+        skipSpace();
+        return input.startsWith(symbol, position);
+    }
+
+    /**
+     * Read a symbol if it comes next
+     */
+    private boolean symbol(String symbol) {
+        if (peek(symbol)) {
+            position += symbol.length();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Read a keyword if it comes next as a whole word
+     */
+    private boolean keyword(String keyword) {
+        skipSpace();
+        int end = position + keyword.length();
+        if (input.regionMatches(true, position, keyword, 0, keyword.length())
+                && (end == input.length() || !isWordChar(input.charAt(end)))) {
+            position = end;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Read a word: letters, digits and the chars _ - . *
+     */
+    private String word() {
+        skipSpace();
+        int start = position;
+        while (position < input.length() && isWordChar(input.charAt(position))) {
+            position++;
+        }
+        return position > start ? input.substring(start, position) : null;
+    }
+
+    private String operator() {
+        skipSpace();
+        String[] operators = {"<=", ">=", "==", "!=", "!~", "<", ">", "=", "~"};
+        for (String operator : operators) {
+            if (input.startsWith(operator, position)) {
+                position += operator.length();
+                return operator;
+            }
+        }
+        throw error("Expected a comparison");
+    }
+
+    private double number() {
+        int start = position;
+        String word = word();
+        if (word == null) {
+            throw error("Expected a number");
+        }
+        try {
+            return Double.parseDouble(word);
+        } catch (NumberFormatException ex) {
+            position = start;
+            throw error("Expected a number, not \"" + word + "\"");
+        }
+    }
+
+    /**
+     * Read a text in double quotes, where \ escapes the next char, or a
+     * single word
+     */
+    private String text() {
+        skipSpace();
+        if (position < input.length() && input.charAt(position) == '"') {
+            StringBuilder text = new StringBuilder();
+            for (position++; position < input.length(); position++) {
+                char c = input.charAt(position);
+                if (c == '"') {
+                    position++;
+                    return text.toString();
+                }
+                if (c == '\\' && position + 1 < input.length()) {
+                    c = input.charAt(++position);
+                }
+                text.append(c);
+            }
+            throw error("Missing closing quote");
+        }
+        String word = word();
+        if (word == null) {
+            throw error("Expected a name in quotes or a word");
+        }
+        return word;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == '*' || c == '+';
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + (position + 1) + " of: " + input);
+    }
+}
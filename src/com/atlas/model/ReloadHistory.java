@@ -0,0 +1,250 @@
+package com.atlas.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bounded history of the collections loaded in one tab.
+ *
+ * Every reload that changed the data is kept as a timestamped snapshot. The
+ * snapshots are kept in tiers: every reload and, by default, one per minute
+ * and one per ten minutes. Each tier gets an equal share of the memory cap.
+ * When a tier holds more than its share, its oldest snapshots are rolled up
+ * into the next tier, where a period keeps only its last snapshot and counts
+ * the reloads it stands for. The coarsest tier drops its oldest snapshots,
+ * so the memory stays flat however long the tab auto-loads, with recent
+ * history in detail and older history coarser. The latest snapshot is
+ * always kept.
+ *
+ * Snapshots are the frozen collections themselves, no copy is made. The
+ * memory of a collection is estimated from its number of points plus the
+ * indexes it has built, a memory-mapped collection only counts its header
+ * and indexes. The estimate is taken when the snapshot is kept, indexes a
+ * kept collection builds later count once it is rolled up.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class ReloadHistory {
+
+    /**
+     * Estimated memory of one point without indexes: two doubles, a name
+     * reference and a share of a short name
+     */
+    private static final long BYTES_PER_POINT = 64;
+    private static final long BYTES_PER_COLLECTION = 128;
+
+    private final long maxBytes;
+    private final long[] periods;
+    private final ArrayList<ArrayDeque<Snapshot>> tiers;
+    private final long[] tierBytes;
+
+    /**
+     * Constructor, rolls up per minute and then per ten minutes
+     *
+     * @param maxBytes The memory cap in bytes
+     */
+    public ReloadHistory(long maxBytes) {
+        this(maxBytes, 60000, 600000);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes The memory cap in bytes
+     * @param periods The periods of the rollup tiers in milliseconds, from
+     * fine to coarse
+     */
+    public ReloadHistory(long maxBytes, long... periods) {
+        this.maxBytes = maxBytes;
+        this.periods = periods.clone();
+        this.tiers = new ArrayList<>();
+        for (int i = 0; i <= periods.length; i++) {
+            tiers.add(new ArrayDeque<>());
+        }
+        this.tierBytes = new long[tiers.size()];
+    }
+
+    /**
+     * Add a loaded collection, rolling up old snapshots if the cap is
+     * exceeded
+     *
+     * @param time The time of the reload in milliseconds
+     * @param data The frozen collection
+     */
+    public synchronized void add(long time, CollectionOfData data) {
+        Snapshot added = new Snapshot(time, time, data, 1);
+        tiers.get(0).addLast(added);
+        tierBytes[0] += added.bytes;
+        long share = maxBytes / tiers.size();
+        int last = tiers.size() - 1;
+        for (int tier = 0; tier <= last; tier++) {
+            ArrayDeque<Snapshot> snapshots = tiers.get(tier);
+            int keep = tier == 0 ? 1 : 0;
+            while (tierBytes[tier] > share && snapshots.size() > keep) {
+                Snapshot oldest = snapshots.pollFirst();
+                tierBytes[tier] -= oldest.bytes;
+                if (tier < last) {
+                    rollUp(oldest, tier + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the snapshot shown at a moment, the last one taken at or before it
+     *
+     * @param time The moment in milliseconds
+     * @return The snapshot, or null if the history starts later
+     */
+    public synchronized Snapshot get(long time) {
+        Snapshot found = null;
+        for (int tier = tiers.size() - 1; tier >= 0; tier--) {
+            for (Snapshot snapshot : tiers.get(tier)) {
+                if (snapshot.getTime() > time) {
+                    break;
+                }
+                found = snapshot;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Get the snapshots taken in a period, e.g. to play the history back
+     *
+     * @param from The start of the period in milliseconds
+     * @param to The end of the period in milliseconds, included
+     * @return The snapshots, oldest first
+     */
+    public synchronized List<Snapshot> getSnapshots(long from, long to) {
+        ArrayList<Snapshot> found = new ArrayList<>();
+        for (int tier = tiers.size() - 1; tier >= 0; tier--) {
+            for (Snapshot snapshot : tiers.get(tier)) {
+                if (snapshot.getTime() >= from && snapshot.getTime() <= to) {
+                    found.add(snapshot);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Get the number of kept snapshots
+     *
+     * @return The number of snapshots
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (ArrayDeque<Snapshot> snapshots : tiers) {
+            size += snapshots.size();
+        }
+        return size;
+    }
+
+    /**
+     * Get the estimated memory of the kept collections
+     *
+     * @return The memory in bytes
+     */
+    public synchronized long getBytes() {
+        long bytes = 0;
+        for (long tier : tierBytes) {
+            bytes += tier;
+        }
+        return bytes;
+    }
+
+    /**
+     * Forget all snapshots
+     */
+    public synchronized void clear() {
+        for (ArrayDeque<Snapshot> snapshots : tiers) {
+            snapshots.clear();
+        }
+        Arrays.fill(tierBytes, 0);
+    }
+
+    /**
+     * Move a snapshot into a coarser tier, where it replaces the snapshot of
+     * the same period
+     */
+    private void rollUp(Snapshot snapshot, int tier) {
+        ArrayDeque<Snapshot> coarser = tiers.get(tier);
+        long period = periods[tier - 1];
+        Snapshot last = coarser.peekLast();
+        if (last != null && Math.floorDiv(last.getTime(), period)
+                == Math.floorDiv(snapshot.getTime(), period)) {
+            coarser.pollLast();
+            tierBytes[tier] -= last.bytes;
+            snapshot = new Snapshot(last.getFrom(), snapshot.getTime(),
+                    snapshot.getData(), last.getReloads() + snapshot.getReloads());
+        } else {
+            // Estimated again, the collection may have built indexes since
+            snapshot = new Snapshot(snapshot.getFrom(), snapshot.getTime(),
+                    snapshot.getData(), snapshot.getReloads());
+        }
+        coarser.addLast(snapshot);
+        tierBytes[tier] += snapshot.bytes;
+    }
+
+    private static long estimate(CollectionOfData data) {
+        long bytes = BYTES_PER_COLLECTION + data.getIndexBytes();
+        if (data.isMapped()) {
+            return bytes;
+        }
+        return bytes + BYTES_PER_POINT * data.getSize();
+    }
+
+    /**
+     * One kept collection, standing for one or more reloads
+     */
+    public static class Snapshot {
+
+        private final long from;
+        private final long time;
+        private final CollectionOfData data;
+        private final int reloads;
+        private final long bytes;
+
+        Snapshot(long from, long time, CollectionOfData data, int reloads) {
+            this.from = from;
+            this.time = time;
+            this.data = data;
+            this.reloads = reloads;
+            this.bytes = estimate(data);
+        }
+
+        /**
+         * Get the time of the first reload the snapshot stands for
+         *
+         * @return The time in milliseconds
+         */
+        public long getFrom() {
+            return from;
+        }
+
+        /**
+         * Get the time the collection was loaded
+         *
+         * @return The time in milliseconds
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public CollectionOfData getData() {
+            return data;
+        }
+
+        /**
+         * Get the number of reloads rolled up into the snapshot
+         *
+         * @return The number of reloads
+         */
+        public int getReloads() {
+            return reloads;
+        }
+    }
+}
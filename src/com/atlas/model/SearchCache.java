@@ -0,0 +1,162 @@
+package com.atlas.model;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Search results of one tab, kept for the collection shown in the tab.
+ *
+ * A result is kept by its query, for one version of one collection: when
+ * the tab gets another collection, or the collection changes, all results
+ * are forgotten. A reload that finds the data unchanged keeps the same
+ * collection, so its results stay. Besides finding a repeated query, the
+ * cache finds the smallest kept result of a query that a new query refines,
+ * so typing on in the search field can filter the points found before.
+ *
+ * The memory is capped, least recently used results are dropped first. A
+ * result is a selection of the found rows, four bytes per point.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class SearchCache {
+
+    private static final long BYTES_PER_ROW = 4;
+    private static final long BYTES_PER_RESULT = 128;
+
+    private final long maxBytes;
+    private final LinkedHashMap<SearchQuery, Entry> entries;
+    private WeakReference<CollectionOfData> data;
+    private int version;
+    private long bytes;
+    private int hits;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes The memory cap in bytes
+     */
+    public SearchCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.data = new WeakReference<>(null);
+    }
+
+    /**
+     * Get the kept result of a query
+     *
+     * @param collection The collection searched
+     * @param query The query
+     * @return The found points, or null if not kept
+     */
+    public synchronized CollectionOfData getResult(CollectionOfData collection, SearchQuery query) {
+        check(collection);
+        Entry entry = entries.get(query);
+        if (entry == null) {
+            return null;
+        }
+        hits++;
+        return entry.result;
+    }
+
+    /**
+     * Get the fewest kept rows that contain all points of a query: the rows
+     * of the query itself, or of a query it refines
+     *
+     * @param collection The collection searched
+     * @param query The query
+     * @return The row indexes, in ascending order, or null if no kept query
+     * contains the query
+     */
+    public synchronized int[] getRows(CollectionOfData collection, SearchQuery query) {
+        check(collection);
+        Entry entry = entries.get(query);
+        if (entry != null) {
+            return entry.rows;
+        }
+        int[] fewest = null;
+        for (Map.Entry<SearchQuery, Entry> kept : entries.entrySet()) {
+            int[] rows = kept.getValue().rows;
+            if ((fewest == null || rows.length < fewest.length) && query.refines(kept.getKey())) {
+                fewest = rows;
+            }
+        }
+        return fewest;
+    }
+
+    /**
+     * Keep the result of a query
+     *
+     * @param collection The collection searched
+     * @param query The query
+     * @param rows The indexes of the found points
+     * @param result The found points
+     */
+    public synchronized void put(CollectionOfData collection, SearchQuery query,
+            int[] rows, CollectionOfData result) {
+        check(collection);
+        Entry entry = new Entry(rows, result);
+        if (entry.bytes > maxBytes) {
+            return;
+        }
+        Entry old = entries.put(query, entry);
+        if (old != null) {
+            bytes -= old.bytes;
+        }
+        bytes += entry.bytes;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Entry dropped = eldest.next();
+            if (dropped != entry) {
+                bytes -= dropped.bytes;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the number of queries answered from a kept result
+     *
+     * @return The number of hits
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * Forget all results
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Forget all results if they were found in another collection or
+     * version
+     */
+    private void check(CollectionOfData collection) {
+        if (data.get() != collection || version != collection.getVersion()) {
+            clear();
+            data = new WeakReference<>(collection);
+            version = collection.getVersion();
+        }
+    }
+
+    /**
+     * The result of one query
+     */
+    private static class Entry {
+
+        private final int[] rows;
+        private final CollectionOfData result;
+        private final long bytes;
+
+        Entry(int[] rows, CollectionOfData result) {
+            this.rows = rows;
+            this.result = result;
+            this.bytes = BYTES_PER_RESULT + BYTES_PER_ROW * rows.length;
+        }
+    }
+}
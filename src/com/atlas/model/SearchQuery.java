@@ -0,0 +1,233 @@
+package com.atlas.model;
+
+import java.util.Arrays;
+
+/**
+ * A search of the search bar: a range of x or y, a name text, or a compound
+ * query, see Query.
+ *
+ * A query can find its points in a whole collection, using the indexes of
+ * the collection, or filter the points found by an earlier query. The
+ * latter is only right if the query refines the earlier one, i.e. every
+ * point it matches is matched by the earlier query too: a range inside the
+ * earlier range, or a name text containing the earlier text. A compound
+ * query only refines itself.
+ *
+ * Name queries match case unless made to ignore it, a query that ignores
+ * case only refines one that ignores case too. Queries are values and can
+ * be used as keys.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class SearchQuery {
+
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int NAME = 2;
+    private static final int QUERY = 3;
+
+    private final int field;
+    private final CoordinateRange range;
+    private final String text;
+    private final String foldedText;
+    private final boolean prefix;
+    private final boolean ignoreCase;
+    private final Query query;
+
+    private SearchQuery(int field, CoordinateRange range, String text, boolean prefix,
+            boolean ignoreCase, Query query) {
+        this.field = field;
+        this.range = range;
+        this.text = text;
+        this.foldedText = text == null ? null : NameIndex.fold(text);
+        this.prefix = prefix;
+        this.ignoreCase = ignoreCase;
+        this.query = query;
+    }
+
+    /**
+     * Make a query for a range of x-coordinates
+     *
+     * @param range The range
+     * @return The query
+     */
+    public static SearchQuery byX(CoordinateRange range) {
+        return new SearchQuery(X, range, null, false, false, null);
+    }
+
+    /**
+     * Make a query for a range of y-coordinates
+     *
+     * @param range The range
+     * @return The query
+     */
+    public static SearchQuery byY(CoordinateRange range) {
+        return new SearchQuery(Y, range, null, false, false, null);
+    }
+
+    /**
+     * Make a query for names
+     *
+     * @param text The text to look for
+     * @param prefix True if the name must start with the text, false if it
+     * must contain it
+     * @param ignoreCase If upper and lower case are the same
+     * @return The query
+     */
+    public static SearchQuery byName(String text, boolean prefix, boolean ignoreCase) {
+        return new SearchQuery(NAME, null, text, prefix, ignoreCase, null);
+    }
+
+    /**
+     * Make a compound query, e.g. x &gt;= 10 AND name ~ "Stock"
+     *
+     * @param text The query text
+     * @param ignoreCase If the names in the query ignore case
+     * @return The query
+     * @throws IllegalArgumentException If the text is not a query
+     */
+    public static SearchQuery byQuery(String text, boolean ignoreCase) {
+        return new SearchQuery(QUERY, null, null, false, ignoreCase, Query.compile(text, ignoreCase));
+    }
+
+    /**
+     * Find the matching points of a collection
+     *
+     * @param data The collection
+     * @return The indexes of the points, in ascending order
+     */
+    public int[] find(CollectionOfData data) {
+        switch (field) {
+            case X:
+                return data.findByX(range);
+            case Y:
+                return data.findByY(range);
+            case QUERY:
+                return query.find(data);
+            default:
+                return data.findByName(text, prefix, ignoreCase);
+        }
+    }
+
+    /**
+     * Keep the points found by an earlier query that match this query, only
+     * right if this query refines the earlier one
+     *
+     * @param data The collection
+     * @param rows The indexes of the points found by the earlier query
+     * @return The indexes of the matching points, in the order of rows
+     */
+    public int[] filter(CollectionOfData data, int[] rows) {
+        int[] matched = new int[rows.length];
+        int count = 0;
+        for (int row : rows) {
+            if (matches(data, row)) {
+                matched[count++] = row;
+            }
+        }
+        return count == matched.length ? matched : Arrays.copyOf(matched, count);
+    }
+
+    /**
+     * Determine if a point matches the query
+     *
+     * @param data The collection
+     * @param row The index of the point
+     * @return If the point matches
+     */
+    public boolean matches(CollectionOfData data, int row) {
+        switch (field) {
+            case X:
+                return range.contains(data.getX(row));
+            case Y:
+                return range.contains(data.getY(row));
+            case QUERY:
+                return query.matches(data, row);
+            default:
+                String name = data.getName(row);
+                if (name == null) {
+                    return false;
+                }
+                if (!ignoreCase) {
+                    return prefix ? name.startsWith(text) : name.contains(text);
+                }
+                return prefix ? NameIndex.foldedAt(name, 0, foldedText)
+                        : NameIndex.containsFolded(name, foldedText);
+        }
+    }
+
+    /**
+     * Determine if every point matched by this query is matched by another
+     * query, so this query may filter the points of the other
+     *
+     * @param other The other query
+     * @return If this query refines the other
+     */
+    public boolean refines(SearchQuery other) {
+        if (field != other.field) {
+            return false;
+        }
+        if (field == QUERY) {
+            return query.equals(other.query);
+        }
+        if (field != NAME) {
+            return range.isWithin(other.range);
+        }
+        if (ignoreCase && !other.ignoreCase) {
+            return false;
+        }
+        // A name matching case also matches regardless of case
+        String mine = other.ignoreCase ? foldedText : text;
+        String earlier = other.ignoreCase ? other.foldedText : other.text;
+        if (other.prefix) {
+            // Only a name starting with the earlier start is sure to match
+            return prefix && mine.startsWith(earlier);
+        }
+        return mine.contains(earlier);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof SearchQuery)) {
+            return false;
+        }
+        SearchQuery other = (SearchQuery) object;
+        if (field != other.field) {
+            return false;
+        }
+        if (field == QUERY) {
+            return query.equals(other.query);
+        }
+        if (field != NAME) {
+            return range.getMin() == other.range.getMin() && range.getMax() == other.range.getMax();
+        }
+        return prefix == other.prefix && ignoreCase == other.ignoreCase
+                && (ignoreCase ? foldedText : text).equals(ignoreCase ? other.foldedText : other.text);
+    }
+
+    @Override
+    public int hashCode() {
+        if (field == QUERY) {
+            return 31 * field + query.hashCode();
+        }
+        if (field != NAME) {
+            return 31 * (31 * field + Double.hashCode(range.getMin())) + Double.hashCode(range.getMax());
+        }
+        int hash = 31 * field + (ignoreCase ? foldedText : text).hashCode();
+        return 31 * hash + (prefix ? 1 : 0) + (ignoreCase ? 2 : 0);
+    }
+
+    @Override
+    public String toString() {
+        switch (field) {
+            case X:
+                return "x " + range;
+            case Y:
+                return "y " + range;
+            case QUERY:
+                return query.toString();
+            default:
+                return "name " + text + (prefix ? "*" : "") + (ignoreCase ? ", ignoring case" : "");
+        }
+    }
+}
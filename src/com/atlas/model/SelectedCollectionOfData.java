@@ -0,0 +1,161 @@
+package com.atlas.model;
+
+import java.util.ArrayList;
+
+/**
+ * A selection of the points of another collection, e.g. a search result.
+ *
+ * The selection only holds the row ids of the selected points, point i of
+ * the selection is point rows[i] of the source. Nothing is copied, so a
+ * search that finds a million points costs four bytes per point, not a
+ * Data object or three column entries.
+ *
+ * The selection is frozen. It stays valid while the source is not changed,
+ * which holds for the frozen collections shown in the tabs.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class SelectedCollectionOfData extends CollectionOfData {
+
+    private final CollectionOfData source;
+    private final int[] rows;
+    private volatile Statistics[] statistics;
+
+    /**
+     * Constructor
+     *
+     * @param source The collection the points are selected from
+     * @param rows The indexes of the selected points in the source, not
+     * copied
+     */
+    public SelectedCollectionOfData(CollectionOfData source, int[] rows) {
+        this.source = source;
+        this.rows = rows;
+        freeze();
+    }
+
+    /**
+     * Get the collection the points are selected from
+     *
+     * @return The source collection
+     */
+    public CollectionOfData getSource() {
+        return source;
+    }
+
+    /**
+     * Get the indexes of the selected points in the source, not a copy
+     *
+     * @return The row ids
+     */
+    public int[] getRows() {
+        return rows;
+    }
+
+    @Override
+    public int getSize() {
+        return rows.length;
+    }
+
+    @Override
+    public double getX(int index) {
+        return source.getX(rows[index]);
+    }
+
+    @Override
+    public double getY(int index) {
+        return source.getY(rows[index]);
+    }
+
+    @Override
+    public String getName(int index) {
+        return source.getName(rows[index]);
+    }
+
+    @Override
+    public Data getPoint(int index) {
+        return source.getPoint(rows[index]);
+    }
+
+    @Override
+    public ArrayList<Data> getData() {
+        return source.getPoints(rows);
+    }
+
+    @Override
+    public void forEachPoint(PointConsumer action) {
+        for (int i = 0; i < rows.length; i++) {
+            int row = rows[i];
+            action.accept(i, source.getX(row), source.getY(row), source.getName(row));
+        }
+    }
+
+    /**
+     * Copy the selected x-coordinates, for the file format
+     */
+    @Override
+    double[] getXColumn() {
+        double[] xs = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            xs[i] = source.getX(rows[i]);
+        }
+        return xs;
+    }
+
+    /**
+     * Copy the selected y-coordinates, for the file format
+     */
+    @Override
+    double[] getYColumn() {
+        double[] ys = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            ys[i] = source.getY(rows[i]);
+        }
+        return ys;
+    }
+
+    /**
+     * Copy the selected names, for the file format
+     */
+    @Override
+    String[] getNameColumn() {
+        String[] names = new String[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            names[i] = source.getName(rows[i]);
+        }
+        return names;
+    }
+
+    @Override
+    public Statistics getXStatistics() {
+        return getStatistics()[0];
+    }
+
+    @Override
+    public Statistics getYStatistics() {
+        return getStatistics()[1];
+    }
+
+    /**
+     * Count the statistics at the first request, one pass over the
+     * selected points
+     */
+    private Statistics[] getStatistics() {
+        Statistics[] counted = statistics;
+        if (counted == null) {
+            counted = statistics = scanStatistics();
+        }
+        return counted;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder dataList = new StringBuilder();
+
+        for (int i = 0; i < rows.length; i++) {
+            dataList.append(getPoint(i));
+        }
+
+        return dataList.toString();
+    }
+}
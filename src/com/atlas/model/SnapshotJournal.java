@@ -0,0 +1,652 @@
+package com.atlas.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the collections loaded in the tabs, so the tabs can
+ * be rebuilt after a restart or a crash.
+ *
+ * Every record is appended at the end of the file:
+ * <pre>
+ * magic     4 bytes "AJNL"
+ * length    int, bytes of the payload
+ * checksum  int, CRC32 of the payload
+ * payload   type byte (0 snapshot, 1 tab removed), tab id int, time long,
+ *           for a snapshot the collection in the .map format
+ * </pre>
+ *
+ * Records are written by one background thread, append never blocks. While
+ * the writer is behind, a newer record of a tab replaces its record that is
+ * still waiting, so at most one record per tab waits and the latest one is
+ * always written. Records are forced to disk in batches, at most once per
+ * flush interval. When the file grows past its limit it is compacted: the
+ * latest snapshot of every open tab is written to a new file, which then
+ * replaces the journal.
+ *
+ * Recovery first walks the record headers only, to find the latest record
+ * of every tab, and then decodes just those. A torn record at the end, from
+ * a crash during a write, is cut off. A latest snapshot with a wrong
+ * checksum falls back to the snapshot before it. A write that fails cuts its
+ * record off again, before the next record is appended, so a failed write
+ * never hides the records after it from recovery.
+ *
+ * One running program owns a journal file. lock takes a lock on a file next
+ * to the journal, its name with ".lock" added, which is never replaced by
+ * compaction. A journal whose lock is held by another program is not used:
+ * it writes nothing and recovers nothing, so two programs never interleave
+ * their records or drop each other's by compacting.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class SnapshotJournal {
+
+    private static final int MAGIC = 0x414A4E4C;
+    private static final int RECORD_HEADER = 12;
+    private static final byte SNAPSHOT = 0;
+    private static final byte REMOVED = 1;
+
+    private final File file;
+    private final long maxBytes;
+    private final long flushInterval;
+    private final LinkedHashMap<Integer, Record> pending;
+    private final Map<Integer, Record> latest;
+    private final ByteBuffer header;
+    private ByteBuffer buffer;
+    private Thread writer;
+    private boolean stopping;
+    private FileChannel channel;
+    private long compactedSize;
+    private long damagedFrom;
+    private volatile int replaced;
+    private volatile IOException lastError;
+    private volatile boolean refused;
+    private FileChannel lockChannel;
+
+    /**
+     * Constructor
+     *
+     * @param file The journal file, created at the first record
+     * @param maxBytes The size after which the file is compacted
+     * @param flushInterval The longest time in milliseconds a written record
+     * waits to be forced to disk
+     */
+    public SnapshotJournal(File file, long maxBytes, long flushInterval) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.flushInterval = flushInterval;
+        this.pending = new LinkedHashMap<>();
+        this.latest = new ConcurrentHashMap<>();
+        this.header = ByteBuffer.allocate(RECORD_HEADER);
+        this.damagedFrom = -1;
+    }
+
+    /**
+     * Take the journal for this program, before it is recovered or written.
+     * The lock is held until unlock or until the program exits. If another
+     * program holds it, or it can not be taken, the journal is not used.
+     *
+     * @return True if the journal was taken, false if another program, or
+     * another journal of this program, holds it
+     * @throws IOException If the lock file can not be opened or locked, the
+     * journal is not used then either
+     */
+    public synchronized boolean lock() throws IOException {
+        if (lockChannel != null) {
+            return true;
+        }
+        refused = true;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        FileChannel channel = FileChannel.open(new File(file.getPath() + ".lock").toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        FileLock taken = null;
+        try {
+            taken = channel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            // Held by another journal of the same file in this program
+        } finally {
+            if (taken == null) {
+                channel.close();
+            }
+        }
+        if (taken == null) {
+            return false;
+        }
+        lockChannel = channel;
+        refused = false;
+        return true;
+    }
+
+    /**
+     * Release the lock taken by lock, e.g. after close
+     */
+    public synchronized void unlock() {
+        if (lockChannel != null) {
+            try {
+                lockChannel.close();
+            } catch (IOException ex) {
+                lastError = ex;
+            }
+            lockChannel = null;
+        }
+    }
+
+    /**
+     * Determine if the journal is not used, since its lock could not be
+     * taken
+     *
+     * @return True if lock failed
+     */
+    public boolean isRefused() {
+        return refused;
+    }
+
+    /**
+     * Record a loaded collection of a tab, without waiting for the write
+     *
+     * @param tab The id of the tab
+     * @param time The time of the reload in milliseconds
+     * @param data The frozen collection
+     */
+    public void append(int tab, long time, CollectionOfData data) {
+        offer(new Record(SNAPSHOT, tab, time, data));
+    }
+
+    /**
+     * Record that a tab was closed, it is not rebuilt at recovery
+     *
+     * @param tab The id of the tab
+     */
+    public void remove(int tab) {
+        offer(new Record(REMOVED, tab, System.currentTimeMillis(), null));
+    }
+
+    /**
+     * Get the number of records replaced by a newer record of the same tab
+     * before they were written
+     *
+     * @return The number of replaced records
+     */
+    public int getReplaced() {
+        return replaced;
+    }
+
+    /**
+     * Get the last error of the writer
+     *
+     * @return The error, or null if all writes succeeded
+     */
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Write the queued records, force them to disk and stop the writer
+     *
+     * @param timeout The longest time in milliseconds to wait for the writer
+     */
+    public void close(long timeout) {
+        Thread thread;
+        synchronized (pending) {
+            thread = writer;
+            writer = null;
+            stopping = true;
+            pending.notifyAll();
+        }
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(timeout);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read the latest snapshot of every tab that was not closed. Call before
+     * the first record is appended.
+     *
+     * @return The snapshots by tab id, in id order
+     * @throws IOException If the journal can not be read
+     * @throws IllegalStateException If a record was appended already
+     */
+    public synchronized Map<Integer, Snapshot> recover() throws IOException {
+        synchronized (pending) {
+            if (writer != null) {
+                throw new IllegalStateException("The journal is recovered after a record was appended");
+            }
+        }
+        TreeMap<Integer, Snapshot> recovered = new TreeMap<>();
+        if (refused || !file.exists()) {
+            return recovered;
+        }
+        Map<Integer, ArrayList<Long>> offsets = new HashMap<>();
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER + 5);
+            while (position + RECORD_HEADER + 5 <= size) {
+                header.clear();
+                readFully(in, header, position);
+                header.flip();
+                int length = header.getInt(4);
+                if (header.getInt(0) != MAGIC || length < 13
+                        || position + RECORD_HEADER + length > size) {
+                    break;
+                }
+                byte type = header.get(RECORD_HEADER);
+                int tab = header.getInt(RECORD_HEADER + 1);
+                if (type == REMOVED) {
+                    offsets.remove(tab);
+                } else {
+                    offsets.computeIfAbsent(tab, (id) -> new ArrayList<>()).add(position);
+                }
+                position += RECORD_HEADER + length;
+            }
+            if (position < size) {
+                // A torn or damaged record, nothing after it can be trusted
+                in.truncate(position);
+            }
+
+            for (Map.Entry<Integer, ArrayList<Long>> entry : offsets.entrySet()) {
+                ArrayList<Long> records = entry.getValue();
+                for (int i = records.size() - 1; i >= 0; i--) {
+                    Snapshot snapshot = readSnapshot(in, records.get(i));
+                    if (snapshot != null) {
+                        recovered.put(entry.getKey(), snapshot);
+                        latest.put(entry.getKey(), new Record(SNAPSHOT, entry.getKey(),
+                                snapshot.getTime(), snapshot.getData()));
+                        break;
+                    }
+                }
+            }
+        }
+        return recovered;
+    }
+
+    private void offer(Record record) {
+        if (refused) {
+            return;
+        }
+        synchronized (pending) {
+            if (writer == null) {
+                stopping = false;
+                writer = new Thread(this::write, "atlas-journal");
+                writer.setDaemon(true);
+                writer.start();
+            }
+            if (pending.remove(record.tab) != null) {
+                replaced++;
+            }
+            pending.put(record.tab, record);
+            pending.notifyAll();
+        }
+    }
+
+    /**
+     * Wait for the next record
+     *
+     * @param wait The longest time to wait in milliseconds, 0 for no limit
+     * @return The record, or null if the time passed or the journal is closed
+     * with no record waiting
+     */
+    private Record next(long wait) throws InterruptedException {
+        synchronized (pending) {
+            long until = System.currentTimeMillis() + wait;
+            while (pending.isEmpty() && !stopping) {
+                long left = until - System.currentTimeMillis();
+                if (wait > 0 && left <= 0) {
+                    return null;
+                }
+                pending.wait(wait > 0 ? left : 0);
+            }
+            if (pending.isEmpty()) {
+                return null;
+            }
+            Iterator<Record> first = pending.values().iterator();
+            Record record = first.next();
+            first.remove();
+            return record;
+        }
+    }
+
+    private boolean isStopping() {
+        synchronized (pending) {
+            return stopping && pending.isEmpty();
+        }
+    }
+
+    /**
+     * The loop of the writer thread
+     */
+    private void write() {
+        long lastForce = System.currentTimeMillis();
+        boolean dirty = false;
+        try {
+            while (!isStopping()) {
+                long wait = 0;
+                if (dirty) {
+                    wait = Math.max(1, lastForce + flushInterval - System.currentTimeMillis());
+                }
+                Record record = next(wait);
+                if (record != null) {
+                    dirty |= write(record);
+                }
+                if (dirty && System.currentTimeMillis() - lastForce >= flushInterval) {
+                    force();
+                    dirty = false;
+                    lastForce = System.currentTimeMillis();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        force();
+        closeChannel();
+    }
+
+    /**
+     * Append one record and compact if the file got too large
+     *
+     * @return If the record was written
+     */
+    private boolean write(Record record) {
+        try {
+            if (record.type == SNAPSHOT) {
+                latest.put(record.tab, record);
+            } else {
+                latest.remove(record.tab);
+            }
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(MapFile.BUFFER_SIZE);
+            }
+            if (channel == null) {
+                File parent = file.getAbsoluteFile().getParentFile();
+                if (parent != null) {
+                    parent.mkdirs();
+                }
+                openChannel(StandardOpenOption.CREATE);
+            }
+            long start = channel.position();
+            try {
+                writeRecord(channel, record);
+            } catch (IOException ex) {
+                cutOff(start);
+                throw ex;
+            }
+            if (channel.size() > Math.max(maxBytes, 2 * compactedSize)) {
+                compact();
+            }
+            return true;
+        } catch (IOException ex) {
+            lastError = ex;
+            closeChannel();
+            return false;
+        }
+    }
+
+    /**
+     * Replace the journal with a file of the latest snapshot of every tab
+     */
+    private void compact() throws IOException {
+        force();
+        closeChannel();
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileChannel out = open(temporary.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Record record : new TreeMap<>(latest).values()) {
+                writeRecord(out, record);
+            }
+            out.force(true);
+            compactedSize = out.size();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        openChannel();
+    }
+
+    /**
+     * Open the journal for appending. A record a failed write could not cut
+     * off is cut off now.
+     */
+    private void openChannel(StandardOpenOption... options) throws IOException {
+        ArrayList<StandardOpenOption> all = new ArrayList<>();
+        all.add(StandardOpenOption.WRITE);
+        for (StandardOpenOption option : options) {
+            all.add(option);
+        }
+        channel = open(file.toPath(), all.toArray(new StandardOpenOption[0]));
+        if (damagedFrom >= 0) {
+            if (damagedFrom < channel.size()) {
+                channel.truncate(damagedFrom);
+            }
+            damagedFrom = -1;
+        }
+        channel.position(channel.size());
+    }
+
+    /**
+     * Open a channel of the journal, the one place the file is opened for
+     * writing
+     *
+     * @param path The path of the file
+     * @param options The options
+     * @return The channel
+     * @throws IOException If the file can not be opened
+     */
+    FileChannel open(Path path, StandardOpenOption... options) throws IOException {
+        return FileChannel.open(path, options);
+    }
+
+    /**
+     * Remove what a failed write left of its record, or remember to remove
+     * it when the journal is opened again
+     */
+    private void cutOff(long start) {
+        damagedFrom = start;
+        try {
+            channel.truncate(start);
+            damagedFrom = -1;
+        } catch (IOException ex) {
+            lastError = ex;
+        }
+    }
+
+    /**
+     * Write a record at the position of a channel, through the buffer of the
+     * writer. The header is written last, over a blank one, once the length
+     * and checksum of the payload are known: a crash before that leaves a
+     * record without magic, which recovery cuts off.
+     */
+    private void writeRecord(FileChannel out, Record record) throws IOException {
+        long start = out.position();
+        header.clear();
+        header.putInt(0).putInt(0).putInt(0);
+        header.flip();
+        while (header.hasRemaining()) {
+            out.write(header);
+        }
+
+        ChecksumChannel payload = new ChecksumChannel(out);
+        buffer.clear();
+        buffer.put(record.type);
+        buffer.putInt(record.tab);
+        buffer.putLong(record.time);
+        if (record.type == SNAPSHOT) {
+            MapFile.write(record.data, payload, buffer);
+        } else {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                payload.write(buffer);
+            }
+        }
+
+        header.clear();
+        header.putInt(MAGIC).putInt((int) payload.written).putInt((int) payload.crc.getValue());
+        header.flip();
+        while (header.hasRemaining()) {
+            out.write(header, start + header.position());
+        }
+    }
+
+    /**
+     * Decode a snapshot record
+     *
+     * @return The snapshot, or null if its checksum is wrong
+     */
+    private Snapshot readSnapshot(FileChannel in, long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        readFully(in, header, position);
+        int length = header.getInt(4);
+        int checksum = header.getInt(8);
+        ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(in, body, position + RECORD_HEADER);
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        long time = body.getLong(5);
+        ByteArrayInputStream image = new ByteArrayInputStream(body.array(), 13, length - 13);
+        CollectionOfData data = MapFile.read(Channels.newChannel(image), file);
+        data.trimToSize();
+        data.buildXIndex();
+        data.buildNameIndex();
+        data.freeze();
+        return new Snapshot(time, data);
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of journal");
+            }
+        }
+    }
+
+    private void force() {
+        if (channel != null) {
+            try {
+                channel.force(false);
+            } catch (IOException ex) {
+                lastError = ex;
+            }
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                lastError = ex;
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Channel that counts and checksums the bytes written through it
+     */
+    private static class ChecksumChannel implements WritableByteChannel {
+
+        private final FileChannel out;
+        private final CRC32 crc;
+        private long written;
+
+        ChecksumChannel(FileChannel out) {
+            this.out = out;
+            this.crc = new CRC32();
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            ByteBuffer done = source.duplicate();
+            int count = out.write(source);
+            done.limit(done.position() + count);
+            crc.update(done);
+            written += count;
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return out.isOpen();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * One queued record
+     */
+    private static class Record {
+
+        private final byte type;
+        private final int tab;
+        private final long time;
+        private final CollectionOfData data;
+
+        Record(byte type, int tab, long time, CollectionOfData data) {
+            this.type = type;
+            this.tab = tab;
+            this.time = time;
+            this.data = data;
+        }
+    }
+
+    /**
+     * A recovered collection of a tab
+     */
+    public static class Snapshot {
+
+        private final long time;
+        private final CollectionOfData data;
+
+        Snapshot(long time, CollectionOfData data) {
+            this.time = time;
+            this.data = data;
+        }
+
+        /**
+         * Get the time the collection was loaded
+         *
+         * @return The time in milliseconds
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public CollectionOfData getData() {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package com.atlas.model;
+
+import java.util.Arrays;
+
+/**
+ * Two-dimensional index over the points of a collection, a k-d tree.
+ *
+ * The tree is stored in three arrays, the row ids and their x and y, with no
+ * node objects: the range [from, to) is split at its middle element, which
+ * is the median on the x axis at even depths and on the y axis at odd
+ * depths. The elements before the middle are not greater and the elements
+ * after it are not smaller on that axis. Small ranges are scanned.
+ *
+ * Box and radius queries visit only the ranges that can overlap the area,
+ * nearest queries visit the side of the pointer first and skip the ranges
+ * that are farther away than the k-th best point found so far. Points with a
+ * NaN coordinate are not in any area and are left out.
+ *
+ * A k-d tree can not take new points without getting unbalanced, so points
+ * added to the collection make the tree be built again at the next query.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+class SpatialIndex {
+
+    private static final int[] NO_ROWS = new int[0];
+
+    /**
+     * Ranges of at most this many points are scanned instead of split
+     */
+    private static final int LEAF_SIZE = 16;
+
+    private int[] rows;
+    private double[] xs;
+    private double[] ys;
+    private int count;
+    private int indexed;
+
+    SpatialIndex() {
+        this.rows = NO_ROWS;
+        this.xs = new double[0];
+        this.ys = new double[0];
+        this.indexed = -1;
+    }
+
+    /**
+     * Build the tree now if the collection changed
+     *
+     * @param data The indexed collection
+     */
+    synchronized void build(CollectionOfData data) {
+        update(data);
+    }
+
+    /**
+     * Find the rows inside a box, borders included
+     *
+     * @param data The indexed collection
+     * @param minX The left border
+     * @param minY The bottom border
+     * @param maxX The right border
+     * @param maxY The top border
+     * @return The row ids, in ascending order
+     */
+    synchronized int[] findInBox(CollectionOfData data, double minX, double minY,
+            double maxX, double maxY) {
+        update(data);
+        Rows found = new Rows();
+        box(0, count, 0, minX, minY, maxX, maxY, found);
+        return found.sorted();
+    }
+
+    /**
+     * Find the rows at most a distance away from a point
+     *
+     * @param data The indexed collection
+     * @param x The x-coordinate of the center
+     * @param y The y-coordinate of the center
+     * @param radius The distance
+     * @return The row ids, in ascending order
+     */
+    synchronized int[] findWithin(CollectionOfData data, double x, double y, double radius) {
+        update(data);
+        Rows found = new Rows();
+        circle(0, count, 0, x, y, radius, radius * radius, found);
+        return found.sorted();
+    }
+
+    /**
+     * Find the rows closest to a point
+     *
+     * @param data The indexed collection
+     * @param x The x-coordinate of the point
+     * @param y The y-coordinate of the point
+     * @param k The number of rows to find
+     * @return At most k row ids, the closest first
+     */
+    synchronized int[] findNearest(CollectionOfData data, double x, double y, int k) {
+        update(data);
+        if (k <= 0 || count == 0 || Double.isNaN(x) || Double.isNaN(y)) {
+            return NO_ROWS;
+        }
+        Nearest best = new Nearest(Math.min(k, count));
+        nearest(0, count, 0, x, y, best);
+        return best.rows();
+    }
+
+    /**
+     * Estimate the memory of the tree
+     *
+     * @return The memory in bytes, a row id and two coordinates per point
+     */
+    synchronized long getBytes() {
+        return 4L * rows.length + 8L * xs.length + 8L * ys.length;
+    }
+
+    /**
+     * Build the tree again if points were added since the last build
+     */
+    private void update(CollectionOfData data) {
+        int size = data.getSize();
+        if (size == indexed) {
+            return;
+        }
+        rows = new int[size];
+        xs = new double[size];
+        ys = new double[size];
+        count = 0;
+        for (int row = 0; row < size; row++) {
+            double x = data.getX(row);
+            double y = data.getY(row);
+            if (!Double.isNaN(x) && !Double.isNaN(y)) {
+                rows[count] = row;
+                xs[count] = x;
+                ys[count] = y;
+                count++;
+            }
+        }
+        split(0, count, 0);
+        indexed = size;
+    }
+
+    /**
+     * Put the median of the range at its middle and split both halves on the
+     * other axis
+     */
+    private void split(int from, int to, int depth) {
+        while (to - from > LEAF_SIZE) {
+            int middle = (from + to) >>> 1;
+            select(from, to - 1, middle, depth % 2 == 0 ? xs : ys);
+            split(from, middle, depth + 1);
+            from = middle + 1;
+            depth++;
+        }
+    }
+
+    /**
+     * Quickselect, after it the element at nth is where sorting the range on
+     * the axis would put it
+     */
+    private void select(int left, int right, int nth, double[] axis) {
+        while (left < right) {
+            double pivot = median(axis[left], axis[(left + right) >>> 1], axis[right]);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (axis[i] < pivot) {
+                    i++;
+                }
+                while (axis[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (nth <= j) {
+                right = j;
+            } else if (nth >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static double median(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private void swap(int i, int j) {
+        int row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+        double x = xs[i];
+        xs[i] = xs[j];
+        xs[j] = x;
+        double y = ys[i];
+        ys[i] = ys[j];
+        ys[j] = y;
+    }
+
+    private void box(int from, int to, int depth, double minX, double minY,
+            double maxX, double maxY, Rows found) {
+        while (to - from > LEAF_SIZE) {
+            int middle = (from + to) >>> 1;
+            if (xs[middle] >= minX && xs[middle] <= maxX
+                    && ys[middle] >= minY && ys[middle] <= maxY) {
+                found.add(rows[middle]);
+            }
+            boolean onX = depth % 2 == 0;
+            double split = onX ? xs[middle] : ys[middle];
+            boolean left = (onX ? minX : minY) <= split;
+            boolean right = (onX ? maxX : maxY) >= split;
+            if (left && right) {
+                box(from, middle, depth + 1, minX, minY, maxX, maxY, found);
+                from = middle + 1;
+            } else if (left) {
+                to = middle;
+            } else if (right) {
+                from = middle + 1;
+            } else {
+                return;
+            }
+            depth++;
+        }
+        for (int i = from; i < to; i++) {
+            if (xs[i] >= minX && xs[i] <= maxX && ys[i] >= minY && ys[i] <= maxY) {
+                found.add(rows[i]);
+            }
+        }
+    }
+
+    private void circle(int from, int to, int depth, double x, double y,
+            double radius, double radiusSquared, Rows found) {
+        while (to - from > LEAF_SIZE) {
+            int middle = (from + to) >>> 1;
+            if (distanceSquared(middle, x, y) <= radiusSquared) {
+                found.add(rows[middle]);
+            }
+            boolean onX = depth % 2 == 0;
+            double offset = (onX ? x : y) - (onX ? xs[middle] : ys[middle]);
+            boolean left = offset - radius <= 0;
+            boolean right = offset + radius >= 0;
+            if (left && right) {
+                circle(from, middle, depth + 1, x, y, radius, radiusSquared, found);
+                from = middle + 1;
+            } else if (left) {
+                to = middle;
+            } else if (right) {
+                from = middle + 1;
+            } else {
+                return;
+            }
+            depth++;
+        }
+        for (int i = from; i < to; i++) {
+            if (distanceSquared(i, x, y) <= radiusSquared) {
+                found.add(rows[i]);
+            }
+        }
+    }
+
+    private void nearest(int from, int to, int depth, double x, double y, Nearest best) {
+        if (to - from <= LEAF_SIZE) {
+            for (int i = from; i < to; i++) {
+                best.offer(rows[i], distanceSquared(i, x, y));
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        best.offer(rows[middle], distanceSquared(middle, x, y));
+        boolean onX = depth % 2 == 0;
+        double offset = (onX ? x : y) - (onX ? xs[middle] : ys[middle]);
+        if (offset <= 0) {
+            nearest(from, middle, depth + 1, x, y, best);
+            if (offset * offset <= best.worst()) {
+                nearest(middle + 1, to, depth + 1, x, y, best);
+            }
+        } else {
+            nearest(middle + 1, to, depth + 1, x, y, best);
+            if (offset * offset <= best.worst()) {
+                nearest(from, middle, depth + 1, x, y, best);
+            }
+        }
+    }
+
+    private double distanceSquared(int i, double x, double y) {
+        double dx = xs[i] - x;
+        double dy = ys[i] - y;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Growing array of found row ids
+     */
+    private static class Rows {
+
+        private int[] rows = new int[16];
+        private int size;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+        int[] sorted() {
+            int[] result = Arrays.copyOf(rows, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+    /**
+     * The k closest rows found so far, a max-heap on distance
+     */
+    private static class Nearest {
+
+        private final int[] rows;
+        private final double[] distances;
+        private int size;
+
+        Nearest(int k) {
+            this.rows = new int[k];
+            this.distances = new double[k];
+        }
+
+        /**
+         * The distance a row must beat to get in, squared
+         */
+        double worst() {
+            return size < rows.length ? Double.POSITIVE_INFINITY : distances[0];
+        }
+
+        void offer(int row, double distance) {
+            if (size < rows.length) {
+                int i = size++;
+                while (i > 0 && distances[(i - 1) / 2] < distance) {
+                    rows[i] = rows[(i - 1) / 2];
+                    distances[i] = distances[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                rows[i] = row;
+                distances[i] = distance;
+            } else if (distance < distances[0]) {
+                siftDown(row, distance, size);
+            }
+        }
+
+        /**
+         * Put a row at the top of the heap of the given size and move it down
+         */
+        private void siftDown(int row, double distance, int heapSize) {
+            int i = 0;
+            while (2 * i + 1 < heapSize) {
+                int child = 2 * i + 1;
+                if (child + 1 < heapSize && distances[child + 1] > distances[child]) {
+                    child++;
+                }
+                if (distances[child] <= distance) {
+                    break;
+                }
+                rows[i] = rows[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            rows[i] = row;
+            distances[i] = distance;
+        }
+
+        /**
+         * Empty the heap, closest first
+         */
+        int[] rows() {
+            int[] result = new int[size];
+            for (int n = size; n > 0; n--) {
+                result[n - 1] = rows[0];
+                siftDown(rows[n - 1], distances[n - 1], n - 1);
+            }
+            return result;
+        }
+    }
+}
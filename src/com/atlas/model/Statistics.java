@@ -0,0 +1,200 @@
+package com.atlas.model;
+
+/**
+ * Running statistics of one coordinate of a collection: count, bounds,
+ * mean, variance and a quantile sketch.
+ *
+ * The statistics are updated as each value is added, so they are read in
+ * constant time however many points the collection has. The mean and
+ * variance use Welford's update, which stays accurate for long streams of
+ * large values. Statistics of two collections can be merged, e.g. for all
+ * tabs at once.
+ *
+ * NaN values are counted as missing and left out of everything else.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class Statistics {
+
+    private long count;
+    private long missing;
+    private double min;
+    private double max;
+    private double mean;
+    private double squares;
+    private final QuantileSketch quantiles;
+
+    /**
+     * Constructor, without values
+     */
+    public Statistics() {
+        this.min = Double.POSITIVE_INFINITY;
+        this.max = Double.NEGATIVE_INFINITY;
+        this.quantiles = new QuantileSketch();
+    }
+
+    /**
+     * Copy constructor
+     *
+     * @param other The statistics to copy
+     */
+    public Statistics(Statistics other) {
+        this.count = other.count;
+        this.missing = other.missing;
+        this.min = other.min;
+        this.max = other.max;
+        this.mean = other.mean;
+        this.squares = other.squares;
+        this.quantiles = new QuantileSketch(other.quantiles);
+    }
+
+    /**
+     * Add a value
+     *
+     * @param value The value, NaN counts as missing
+     */
+    public void add(double value) {
+        if (value != value) {
+            missing++;
+            return;
+        }
+        count++;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+        double delta = value - mean;
+        mean += delta / count;
+        squares += delta * (value - mean);
+        quantiles.add(value);
+    }
+
+    /**
+     * Add the values of other statistics
+     *
+     * @param other The other statistics, not changed
+     */
+    public void merge(Statistics other) {
+        if (other.count > 0) {
+            long total = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / total;
+            squares += other.squares + delta * delta * ((double) count * other.count / total);
+            count = total;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            quantiles.merge(other.quantiles);
+        }
+        missing += other.missing;
+    }
+
+    /**
+     * Get the number of values, not counting NaN
+     *
+     * @return The count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the number of NaN values
+     *
+     * @return The number of missing values
+     */
+    public long getMissing() {
+        return missing;
+    }
+
+    /**
+     * Get the smallest value
+     *
+     * @return The minimum, or NaN if there is no value
+     */
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    /**
+     * Get the largest value
+     *
+     * @return The maximum, or NaN if there is no value
+     */
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    /**
+     * Get the mean
+     *
+     * @return The mean, or NaN if there is no value
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * Get the sample variance
+     *
+     * @return The variance, or NaN if there are less than two values
+     */
+    public double getVariance() {
+        return count < 2 ? Double.NaN : squares / (count - 1);
+    }
+
+    /**
+     * Get the sample standard deviation
+     *
+     * @return The standard deviation, or NaN if there are less than two
+     * values
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Get the number of standard deviations a value lies from the mean,
+     * e.g. to find values out of the ordinary
+     *
+     * @param value The value
+     * @return The distance in standard deviations, or NaN if unknown
+     */
+    public double getDeviations(double value) {
+        return Math.abs(value - getMean()) / getStandardDeviation();
+    }
+
+    /**
+     * Get the approximate value at a quantile, see QuantileSketch
+     *
+     * @param quantile The quantile, from 0 to 1, e.g. 0.5 for the median
+     * @return The value, or NaN if there is no value
+     */
+    public double getQuantile(double quantile) {
+        if (quantile <= 0) {
+            return getMin();
+        } else if (quantile >= 1) {
+            return getMax();
+        }
+        return quantiles.getQuantile(quantile);
+    }
+
+    /**
+     * Get the quantile sketch of the values
+     *
+     * @return The sketch
+     */
+    public QuantileSketch getQuantiles() {
+        return quantiles;
+    }
+
+    @Override
+    public String toString() {
+        if (count == 0) {
+            return "no values";
+        }
+        return String.format("%d values, %g..%g, mean %g, deviation %g, median %g",
+                count, min, max, mean, getStandardDeviation(), getQuantile(0.5));
+    }
+}
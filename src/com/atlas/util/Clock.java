@@ -1,13 +1,15 @@
 package com.atlas.util;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.temporal.ChronoField;
 
 /**
  *
  * @author Wang Zheng-Yu <zhengyuw@kth.se>
  */
-public class Clock extends java.util.Timer{
+public class Clock {
     
     /**
      * Get the current time when a collection of data is loaded
@@ -27,4 +29,18 @@ public class Clock extends java.util.Timer{
                 + year + "-" + month + "-" + day + " "
                 + hour + ":" + minute + ":" + second;
     }
+
+    /**
+     * Get a past time, e.g. of a snapshot in the reload history
+     *
+     * @param millis The time in milliseconds since the epoch
+     * @return A string of the time
+     */
+    public String format(long millis) {
+
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis),
+                ZoneId.systemDefault());
+        return time.getYear() + "-" + time.getMonthValue() + "-" + time.getDayOfMonth() + " "
+                + time.getHour() + ":" + time.getMinute() + ":" + time.getSecond();
+    }
 }
@@ -1,59 +1,336 @@
 package com.atlas.util;
 
-import com.atlas.model.Data;
 import com.atlas.model.CollectionOfData;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Create a URL for the desired page,
- * Read all the text returned by the server,
- * Parse points to data collection
+ * Load the points of a tab from one or more sources, see DataSource.
+ *
+ * A source is named by its address: "http://" and "https://" addresses are
+ * servers, "file:" addresses local files and "socket://host:port" addresses
+ * TCP sockets, all sending the text feed. Every address has one source
+ * object, shared by all tabs, which remembers what it read last, so a fetch
+ * that finds the same data is reported as not modified.
+ *
+ * A tab reading several sources fetches them all at once, each on its own
+ * loader thread, and the points are combined in the order of the addresses
+ * when the last one is done. A source is only fetched once at a time: a tab
+ * asking for a source that is being fetched gets the running fetch, so no
+ * thread waits behind a slow source and there is at most one loader thread
+ * per source. The loader threads are not capped beyond that, so a slow
+ * source only delays the tabs that read it. A source that fails keeps the
+ * points it had at its previous fetch, so one endpoint that is down does not
+ * empty the tab, and its error is reported by LoadResult.getFailure. When no
+ * source changed, the previous combined collection is returned, marked as
+ * not modified.
+ *
+ * Collections returned from a fetch are frozen, since they are shared. Their
+ * x index, which every chart reads, and their name index, which search as
+ * you type reads, are built on the loader thread. The y and spatial indexes
+ * are built by the first search that needs them.
  * @author Wang Zheng-Yu <zhengyuw@kth.se>
  */
 public class DataLoader {
 
     /**
-     * Load data from the online server
+     * The server read when no other address is given
+     */
+    public static final String DEFAULT_ADDRESS = "http://server.address.se";
+
+    private final String address;
+    private final ExecutorService executor;
+    private final Map<String, DataSource> sources;
+    private final Map<String, Combined> combined;
+    private final Map<String, CompletableFuture<LoadResult>> running;
+
+    /**
+     * Constructor
+     */
+    public DataLoader() {
+        this(DEFAULT_ADDRESS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param address The address of the source read when no other is given
+     */
+    public DataLoader(String address) {
+        this.address = address;
+        this.sources = new ConcurrentHashMap<>();
+        this.combined = new ConcurrentHashMap<>();
+        this.running = new ConcurrentHashMap<>();
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool((runnable) -> {
+            Thread thread = new Thread(runnable, "atlas-loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get the address of the source read when no other is given
+     *
+     * @return The address
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Get the loader threads, e.g. to read a file without holding up the
+     * JavaFX Application Thread
+     *
+     * @return The executor of the loader threads
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Create a source for an address, see the class comment for the kinds
+     * of addresses
+     *
+     * @param address The address
+     * @return A new source
+     * @throws IllegalArgumentException If no kind of source reads the
+     * address
+     */
+    public static DataSource createSource(String address) {
+        String lower = address.toLowerCase();
+        if (lower.startsWith("http://") || lower.startsWith("https://")) {
+            return new HttpDataSource(address);
+        } else if (lower.startsWith("file:")) {
+            return new FileDataSource(address);
+        } else if (lower.startsWith("socket://")) {
+            return new SocketDataSource(address);
+        }
+        throw new IllegalArgumentException("Unknown kind of source: " + address);
+    }
+
+    /**
+     * Get the source of an address, created at the first request
+     *
+     * @param address The address
+     * @return The source, shared by all tabs
+     * @throws IllegalArgumentException If no kind of source reads the
+     * address
+     */
+    public DataSource getSource(String address) {
+        DataSource source = sources.get(address);
+        if (source == null) {
+            source = createSource(address);
+            DataSource raced = sources.putIfAbsent(address, source);
+            if (raced != null) {
+                source = raced;
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Add a source of another kind, or replace the source of its address
+     *
+     * @param source The source, read for its address from now on
+     */
+    public void addSource(DataSource source) {
+        sources.put(source.getAddress(), source);
+    }
+
+    /**
+     * Get the key of a list of addresses, e.g. to share a running fetch of
+     * the same sources
+     *
+     * @param addresses The addresses
+     * @return The addresses separated by spaces
+     */
+    public static String getKey(List<String> addresses) {
+        return String.join(" ", addresses);
+    }
+
+    /**
+     * Load data from the default source on a background thread, so the
+     * JavaFX Application Thread never waits for the network
+     *
+     * @return A future completed with the collection of data after one
+     * loading
+     */
+    public CompletableFuture<CollectionOfData> loadDataAsync() {
+        return fetchAsync().thenApply(LoadResult::getData);
+    }
+
+    /**
+     * Fetch the default source on a background thread, see fetch()
+     *
+     * @return A future completed with the result of the fetch
+     */
+    public CompletableFuture<LoadResult> fetchAsync() {
+        return fetchAsync(Collections.singletonList(address));
+    }
+
+    /**
+     * Fetch several sources at once on background threads and combine their
+     * points, see the class comment. If no source could be read, the result
+     * is an empty collection.
+     *
+     * @param addresses The addresses of the sources
+     * @return A future completed with the combined result
+     */
+    public CompletableFuture<LoadResult> fetchAsync(List<String> addresses) {
+        String key = getKey(addresses);
+        List<CompletableFuture<LoadResult>> parts = new ArrayList<>(addresses.size());
+        for (String part : addresses) {
+            parts.add(fetchSource(part));
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0]))
+                .handle((done, ex) -> combine(key, addresses, parts));
+    }
+
+    /**
+     * Fetch one source on a loader thread, or join its fetch if one is
+     * running
+     */
+    private CompletableFuture<LoadResult> fetchSource(String part) {
+        CompletableFuture<LoadResult> fetch = running.get(part);
+        if (fetch != null) {
+            return fetch;
+        }
+        CompletableFuture<LoadResult> started = new CompletableFuture<>();
+        fetch = running.putIfAbsent(part, started);
+        if (fetch != null) {
+            return fetch;
+        }
+        executor.execute(() -> {
+            LoadResult result = null;
+            Throwable failure = null;
+            try {
+                result = getSource(part).fetch();
+            } catch (IOException | RuntimeException | Error ex) {
+                failure = ex;
+            } finally {
+                // Removed before completing, so a fetch asked for from now
+                // on reads the source again
+                running.remove(part, started);
+            }
+            if (failure == null) {
+                started.complete(result);
+            } else {
+                started.completeExceptionally(failure);
+            }
+        });
+        return started;
+    }
+
+    /**
+     * Load data from the default source
      * @return A collection of data after one loading
      */
     public CollectionOfData loadData() {
+        return fetch().getData();
+    }
+
+    /**
+     * Fetch the default source. If nothing changed since the previous fetch
+     * the previous collection is returned, marked as not modified. A failed
+     * fetch gives an empty collection.
+     *
+     * @return The result of the fetch
+     */
+    public LoadResult fetch() {
+        return fetchAsync().join();
+    }
 
-        CollectionOfData dataCollection = new CollectionOfData();
-        List<Data> points = new ArrayList<>();
-        try {
-            // Create a URL for the desired page
-            URL url = new URL("http://server.address.se");
-
-            try ( // Read all the text returned by the server
-                    BufferedReader in = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.ISO_8859_1))) {
-                String str;
-                while ((str = in.readLine()) != null) {
-                    if (str.charAt(0) != '#') {
-                        System.out.println(str);
-                        String[] array = str.split(", ");
-                        int x = Integer.valueOf(array[0]);
-                        int y = Integer.valueOf(array[1]);
-                        String name = array[2];
-                        Data point = new Data(x, y, name);
-                        points.add(point);
-                    }
+    /**
+     * Combine the finished fetches of the sources of a key
+     */
+    private LoadResult combine(String key, List<String> addresses,
+            List<CompletableFuture<LoadResult>> parts) {
+        Combined previous = combined.get(key);
+        CollectionOfData[] results = new CollectionOfData[parts.size()];
+        long bytes = 0;
+        boolean loaded = false;
+        StringBuilder failures = new StringBuilder();
+        for (int i = 0; i < results.length; i++) {
+            CompletableFuture<LoadResult> part = parts.get(i);
+            try {
+                LoadResult result = part.join();
+                results[i] = result.getData();
+                bytes += result.getBytes();
+                loaded = true;
+            } catch (CompletionException ex) {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                failures.append(failures.length() > 0 ? "\n" : "")
+                        .append(addresses.get(i)).append(": ").append(cause.getMessage());
+                if (previous != null) {
+                    results[i] = previous.parts[i];
                 }
-                if (!points.isEmpty()) {
-                    dataCollection.setData((ArrayList<Data>) points);
-                    System.out.println("\nDataCollection: \n" + dataCollection.toString());
+            }
+        }
+        String failure = failures.length() > 0 ? failures.toString() : null;
+        if (!loaded) {
+            return new LoadResult(new CollectionOfData(), true, bytes, failure);
+        }
+        if (results.length == 1) {
+            return parts.get(0).join();
+        }
+        if (previous != null && previous.isSame(results)) {
+            return new LoadResult(previous.data, false, bytes, failure);
+        }
+
+        int size = 0;
+        for (CollectionOfData result : results) {
+            size += result == null ? 0 : result.getSize();
+        }
+        CollectionOfData data = new CollectionOfData(size);
+        for (CollectionOfData result : results) {
+            if (result != null) {
+                result.forEachPoint((index, x, y, name) -> data.addPoint(x, y, name));
+            }
+        }
+        StageTimer index = StageTimer.start(StageTimer.INDEX);
+        data.buildXIndex();
+        data.buildNameIndex();
+        data.freeze();
+        index.stop(size, 0);
+        combined.put(key, new Combined(results, data));
+        return new LoadResult(data, true, bytes, failure);
+    }
+
+    /**
+     * The latest combined collection of a list of sources, with the
+     * collections it was combined from
+     */
+    private static class Combined {
+
+        private final CollectionOfData[] parts;
+        private final CollectionOfData data;
+
+        Combined(CollectionOfData[] parts, CollectionOfData data) {
+            this.parts = parts;
+            this.data = data;
+        }
+
+        /**
+         * Determine if the same collections were fetched again
+         */
+        boolean isSame(CollectionOfData[] results) {
+            for (int i = 0; i < parts.length; i++) {
+                if (parts[i] != results[i]) {
+                    return false;
                 }
-                in.close();
             }
-        } catch (MalformedURLException e) {
-        } catch (IOException e) {
+            return true;
         }
-        return dataCollection;
     }
 }
@@ -0,0 +1,39 @@
+package com.atlas.util;
+
+import java.io.IOException;
+
+/**
+ * A place the points of a tab are read from, e.g. a server, a local file or
+ * a socket.
+ *
+ * A source remembers what it read last, so a fetch that finds the same data
+ * returns the previous collection, marked as not modified, and the chart is
+ * left as it is. Collections returned by a fetch are frozen, since they are
+ * shared by all tabs that read the source.
+ *
+ * A new kind of source implements this interface, or extends FeedSource if
+ * it reads the text feed, and is added with DataLoader.addSource. A source
+ * may be fetched from several threads, but DataLoader never fetches it
+ * twice at once: tabs asking for a source that is being fetched share that
+ * fetch.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public interface DataSource {
+
+    /**
+     * Get the address of the source, which tabs use to name it, e.g.
+     * "http://server.address.se" or "file:/data/points.txt"
+     *
+     * @return The address
+     */
+    String getAddress();
+
+    /**
+     * Read the source
+     *
+     * @return The result of the fetch
+     * @throws IOException If the source can not be read
+     */
+    LoadResult fetch() throws IOException;
+}
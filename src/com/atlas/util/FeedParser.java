@@ -0,0 +1,277 @@
+package com.atlas.util;
+
+import com.atlas.model.CollectionOfData;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming parser for the server feed.
+ *
+ * The feed is ISO-8859-1 text with one point per line, "x, y, name". Lines
+ * starting with '#' are comments and empty lines are skipped. The bytes are
+ * read straight from the stream into a reusable buffer and the coordinates
+ * are parsed as doubles in place, so the only object created per line is the
+ * name of the point. Points are written straight into the collection.
+ *
+ * A parser is not thread safe, use one per load.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class FeedParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Most significant digits that are kept exactly in a long
+     */
+    private static final int MAX_DIGITS = 18;
+
+    /**
+     * Powers of ten that are exact as doubles
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22
+    };
+
+    private byte[] buffer;
+    private int pos;
+    private long lines;
+    private long skippedLines;
+    private long bytes;
+
+    /**
+     * Constructor
+     */
+    public FeedParser() {
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Parse a whole feed into a collection
+     *
+     * @param in The feed, read until the end but not closed
+     * @param target The collection the points are added to
+     * @return The number of points added
+     * @throws IOException If reading the feed fails
+     */
+    public int parse(InputStream in, CollectionOfData target) throws IOException {
+        lines = 0;
+        skippedLines = 0;
+        bytes = 0;
+        int before = target.getSize();
+        int start = 0;
+        int end = 0;
+        int read;
+
+        while ((read = in.read(buffer, end, buffer.length - end)) != -1) {
+            bytes += read;
+            int scan = end;
+            end += read;
+            for (int i = scan; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    parseLine(start, i, target);
+                    start = i + 1;
+                }
+            }
+            if (start > 0) {
+                // Move the unfinished line to the front of the buffer
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            } else if (end == buffer.length) {
+                // A line longer than the buffer
+                byte[] larger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, larger, 0, end);
+                buffer = larger;
+            }
+        }
+        if (end > start) {
+            parseLine(start, end, target);
+        }
+        return target.getSize() - before;
+    }
+
+    /**
+     * Get the number of lines read by the last parse
+     *
+     * @return The number of lines
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * Get the number of malformed lines skipped by the last parse, comments
+     * and empty lines are not counted
+     *
+     * @return The number of skipped lines
+     */
+    public long getSkippedLines() {
+        return skippedLines;
+    }
+
+    /**
+     * Get the number of bytes read by the last parse
+     *
+     * @return The number of bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Parse one line "x, y, name"
+     *
+     * @param from Index of the first byte of the line
+     * @param to Index after the last byte of the line
+     * @param target The collection to add the point to
+     */
+    private void parseLine(int from, int to, CollectionOfData target) {
+        lines++;
+        if (to > from && buffer[to - 1] == '\r') {
+            to--;
+        }
+        if (to == from || buffer[from] == '#') {
+            return;
+        }
+        pos = from;
+        double x = parseNumber(to);
+        if (Double.isNaN(x) || !skipSeparator(to)) {
+            skippedLines++;
+            return;
+        }
+        double y = parseNumber(to);
+        if (Double.isNaN(y) || !skipSeparator(to)) {
+            skippedLines++;
+            return;
+        }
+        // The name runs to the next ", " or the end of the line
+        int nameEnd = pos;
+        while (nameEnd < to && !(buffer[nameEnd] == ',' && nameEnd + 1 < to
+                && buffer[nameEnd + 1] == ' ')) {
+            nameEnd++;
+        }
+        String name = new String(buffer, pos, nameEnd - pos, StandardCharsets.ISO_8859_1);
+        target.addPoint(x, y, name);
+    }
+
+    /**
+     * Skip a ',' and the spaces around it
+     *
+     * @param to Index after the last byte of the line
+     * @return If a separator was found
+     */
+    private boolean skipSeparator(int to) {
+        while (pos < to && buffer[pos] == ' ') {
+            pos++;
+        }
+        if (pos >= to || buffer[pos] != ',') {
+            return false;
+        }
+        pos++;
+        while (pos < to && buffer[pos] == ' ') {
+            pos++;
+        }
+        return true;
+    }
+
+    /**
+     * Parse a decimal number starting at the current position, without
+     * creating a String for the common case.
+     *
+     * Numbers with at most 15 significant digits and a small exponent are
+     * exact in a double and are scaled by one exact power of ten, which
+     * gives the same result as Double.parseDouble. Anything else falls back
+     * to Double.parseDouble.
+     *
+     * @param to Index after the last byte of the line
+     * @return The number, or NaN if there is no number at the position
+     */
+    private double parseNumber(int to) {
+        while (pos < to && buffer[pos] == ' ') {
+            pos++;
+        }
+        int start = pos;
+        boolean negative = false;
+        if (pos < to && (buffer[pos] == '-' || buffer[pos] == '+')) {
+            negative = buffer[pos] == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+
+        while (pos < to && buffer[pos] >= '0' && buffer[pos] <= '9') {
+            anyDigit = true;
+            if (digits < MAX_DIGITS) {
+                mantissa = mantissa * 10 + (buffer[pos] - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+                digits++;
+            }
+            pos++;
+        }
+        if (pos < to && buffer[pos] == '.') {
+            pos++;
+            while (pos < to && buffer[pos] >= '0' && buffer[pos] <= '9') {
+                anyDigit = true;
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + (buffer[pos] - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    exponent--;
+                } else {
+                    digits++;
+                }
+                pos++;
+            }
+        }
+        if (!anyDigit) {
+            pos = start;
+            return Double.NaN;
+        }
+        if (pos < to && (buffer[pos] == 'e' || buffer[pos] == 'E')) {
+            int mark = pos;
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < to && (buffer[pos] == '-' || buffer[pos] == '+')) {
+                negativeExponent = buffer[pos] == '-';
+                pos++;
+            }
+            if (pos < to && buffer[pos] >= '0' && buffer[pos] <= '9') {
+                int value = 0;
+                while (pos < to && buffer[pos] >= '0' && buffer[pos] <= '9') {
+                    if (value < 100000) {
+                        value = value * 10 + (buffer[pos] - '0');
+                    }
+                    pos++;
+                }
+                exponent += negativeExponent ? -value : value;
+            } else {
+                pos = mark;
+            }
+        }
+
+        double result;
+        if (digits <= 15 && exponent >= -22 && exponent <= 22) {
+            result = mantissa;
+            if (exponent < 0) {
+                result /= POWERS_OF_TEN[-exponent];
+            } else {
+                result *= POWERS_OF_TEN[exponent];
+            }
+        } else {
+            return Double.parseDouble(
+                    new String(buffer, start, pos - start, StandardCharsets.ISO_8859_1));
+        }
+        return negative ? -result : result;
+    }
+}
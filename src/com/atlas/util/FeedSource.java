@@ -0,0 +1,105 @@
+package com.atlas.util;
+
+import com.atlas.model.CollectionOfData;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * A source of the text feed, see FeedParser. Subclasses only open the
+ * stream, this class parses it while it is read, builds the x index the
+ * chart needs and the name index searching by name needs, and remembers a
+ * checksum of the content. The checksum is counted as the bytes go by, no
+ * copy of the feed is kept. When the same content is read again, the new
+ * collection is dropped before its indexes are built and the previous one is
+ * reported as not modified.
+ *
+ * Fetches are synchronized to guard the remembered content. DataLoader does
+ * not start a second fetch of a source while one runs, a second tab shares
+ * the running fetch instead of waiting behind it.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public abstract class FeedSource implements DataSource {
+
+    private final String address;
+    private long checksum;
+    private long length;
+    private CollectionOfData data;
+
+    /**
+     * Constructor
+     *
+     * @param address The address of the source
+     */
+    protected FeedSource(String address) {
+        this.address = address;
+    }
+
+    @Override
+    public String getAddress() {
+        return address;
+    }
+
+    @Override
+    public synchronized LoadResult fetch() throws IOException {
+        StageTimer network = StageTimer.start(StageTimer.NETWORK);
+        InputStream stream = open();
+        network.stop(0, 0);
+        if (stream == null) {
+            return new LoadResult(data, false, 0);
+        }
+
+        StageTimer parse = StageTimer.start(StageTimer.PARSE);
+        CollectionOfData dataCollection = new CollectionOfData();
+        FeedParser parser = new FeedParser();
+        CRC32 crc = new CRC32();
+        try (CheckedInputStream in = new CheckedInputStream(stream, crc)) {
+            parser.parse(in, dataCollection);
+        }
+        long bytes = parser.getBytes();
+        parse.stop(dataCollection.getSize(), bytes);
+        completed();
+        if (data != null && length == bytes && checksum == crc.getValue()) {
+            return new LoadResult(data, false, bytes);
+        }
+
+        StageTimer index = StageTimer.start(StageTimer.INDEX);
+        dataCollection.trimToSize();
+        dataCollection.buildXIndex();
+        dataCollection.buildNameIndex();
+        dataCollection.freeze();
+        index.stop(dataCollection.getSize(), 0);
+        checksum = crc.getValue();
+        length = bytes;
+        data = dataCollection;
+        return new LoadResult(dataCollection, true, bytes);
+    }
+
+    /**
+     * Open the feed, it is read to the end and closed by fetch
+     *
+     * @return The stream of the feed, or null if the source knows without
+     * reading that nothing changed since the previous fetch, only possible
+     * when getPrevious is not null
+     * @throws IOException If the source can not be opened
+     */
+    protected abstract InputStream open() throws IOException;
+
+    /**
+     * Called when the stream of open was read to the end without an error,
+     * e.g. to remember what the source answered for the next open
+     */
+    protected void completed() {
+    }
+
+    /**
+     * Get the collection of the previous fetch
+     *
+     * @return The collection, or null before the first successful fetch
+     */
+    protected CollectionOfData getPrevious() {
+        return data;
+    }
+}
@@ -0,0 +1,64 @@
+package com.atlas.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * A local file in the feed format, e.g. a feed saved from the server or
+ * written by another program.
+ *
+ * A file whose size and modification time are the same as at the previous
+ * fetch is not read again.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class FileDataSource extends FeedSource {
+
+    private final File file;
+    private long lastModified;
+    private long size;
+    private long openedModified;
+    private long openedSize;
+
+    /**
+     * Constructor
+     *
+     * @param address A file URI such as "file:/data/points.txt"
+     * @throws IllegalArgumentException If the address is not a file URI
+     */
+    public FileDataSource(String address) {
+        super(address);
+        this.file = new File(URI.create(address));
+    }
+
+    /**
+     * Get the file
+     *
+     * @return The file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    protected InputStream open() throws IOException {
+        long modified = file.lastModified();
+        long length = file.length();
+        if (getPrevious() != null && modified == lastModified && length == size) {
+            return null;
+        }
+        InputStream in = new FileInputStream(file);
+        openedModified = modified;
+        openedSize = length;
+        return in;
+    }
+
+    @Override
+    protected void completed() {
+        lastModified = openedModified;
+        size = openedSize;
+    }
+}
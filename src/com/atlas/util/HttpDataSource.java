@@ -0,0 +1,80 @@
+package com.atlas.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * A server sending the feed over HTTP.
+ *
+ * The ETag and Last-Modified date of the previous answer are sent with the
+ * next request, and an answer of 304 Not Modified is reported as not
+ * modified without reading a body.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class HttpDataSource extends FeedSource {
+
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int READ_TIMEOUT = 20000;
+
+    private final URL url;
+    private String etag;
+    private long lastModified;
+    private String answeredEtag;
+    private long answeredLastModified;
+
+    /**
+     * Constructor
+     *
+     * @param address The URL of the server
+     * @throws IllegalArgumentException If the address is not a URL
+     */
+    public HttpDataSource(String address) {
+        super(address);
+        try {
+            this.url = new URL(address);
+        } catch (MalformedURLException ex) {
+            throw new IllegalArgumentException("Not a URL: " + address, ex);
+        }
+    }
+
+    @Override
+    protected InputStream open() throws IOException {
+        // Create a URL for the desired page
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        boolean loaded = getPrevious() != null;
+        if (loaded) {
+            if (etag != null) {
+                connection.setRequestProperty("If-None-Match", etag);
+            }
+            if (lastModified > 0) {
+                connection.setIfModifiedSince(lastModified);
+            }
+        }
+        if (connection instanceof HttpURLConnection) {
+            HttpURLConnection http = (HttpURLConnection) connection;
+            if (http.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED && loaded) {
+                http.disconnect();
+                return null;
+            }
+        }
+
+        // The text returned by the server, parsed while it arrives
+        InputStream in = connection.getInputStream();
+        answeredEtag = connection.getHeaderField("ETag");
+        answeredLastModified = connection.getLastModified();
+        return in;
+    }
+
+    @Override
+    protected void completed() {
+        etag = answeredEtag;
+        lastModified = answeredLastModified;
+    }
+}
@@ -0,0 +1,132 @@
+package com.atlas.util;
+
+import java.util.Arrays;
+
+/**
+ * The most recent durations of one stage, see StageTimer.
+ *
+ * The last RECENT durations are kept in a ring, recording one costs a few
+ * array writes. Percentiles and bucket counts are worked out from a copy of
+ * the ring when they are asked for, e.g. by the timings panel, so the stage
+ * that records pays nothing for them.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of recent durations kept
+     */
+    public static final int RECENT = 512;
+
+    /**
+     * Upper bounds of the buckets of getBuckets, in nanoseconds: 1 ms,
+     * 10 ms, 100 ms and 1 s, the last bucket has no upper bound
+     */
+    public static final long[] BUCKET_BOUNDS = {
+        1000000L, 10000000L, 100000000L, 1000000000L
+    };
+
+    private final long[] durations;
+    private long count;
+    private long lastPoints;
+    private long lastBytes;
+
+    /**
+     * Constructor
+     */
+    public LatencyHistogram() {
+        this.durations = new long[RECENT];
+    }
+
+    /**
+     * Record a duration
+     *
+     * @param nanos The duration in nanoseconds
+     * @param points The number of points the stage handled
+     * @param bytes The number of bytes the stage handled
+     */
+    public synchronized void record(long nanos, long points, long bytes) {
+        durations[(int) (count % RECENT)] = nanos;
+        count++;
+        lastPoints = points;
+        lastBytes = bytes;
+    }
+
+    /**
+     * Get the number of durations recorded since the start, also the ones
+     * no longer kept
+     *
+     * @return The count
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the points the latest recorded run handled
+     *
+     * @return The number of points
+     */
+    public synchronized long getLastPoints() {
+        return lastPoints;
+    }
+
+    /**
+     * Get the bytes the latest recorded run handled
+     *
+     * @return The number of bytes
+     */
+    public synchronized long getLastBytes() {
+        return lastBytes;
+    }
+
+    /**
+     * Get the latest recorded duration
+     *
+     * @return The duration in nanoseconds, or 0 if none was recorded
+     */
+    public synchronized long getLast() {
+        return count == 0 ? 0 : durations[(int) ((count - 1) % RECENT)];
+    }
+
+    /**
+     * Get a percentile of the recent durations
+     *
+     * @param percentile The percentile, from 0 to 100
+     * @return The duration in nanoseconds, or 0 if none was recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] sorted = getRecent();
+        if (sorted.length == 0) {
+            return 0;
+        }
+        Arrays.sort(sorted);
+        int at = (int) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100 * sorted.length);
+        return sorted[Math.max(0, at - 1)];
+    }
+
+    /**
+     * Count the recent durations per bucket, see BUCKET_BOUNDS
+     *
+     * @return The counts, one more than there are bounds
+     */
+    public int[] getBuckets() {
+        int[] buckets = new int[BUCKET_BOUNDS.length + 1];
+        for (long nanos : getRecent()) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && nanos >= BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket]++;
+        }
+        return buckets;
+    }
+
+    /**
+     * Copy the kept durations
+     */
+    private synchronized long[] getRecent() {
+        return Arrays.copyOf(durations, (int) Math.min(count, RECENT));
+    }
+}
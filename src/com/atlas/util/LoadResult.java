@@ -0,0 +1,81 @@
+package com.atlas.util;
+
+import com.atlas.model.CollectionOfData;
+
+/**
+ * Result of one fetch from a source: the parsed collection and whether it
+ * differs from the previous fetch of the same source
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class LoadResult {
+
+    private final CollectionOfData data;
+    private final boolean modified;
+    private final long bytes;
+    private final String failure;
+
+    /**
+     * Constructor
+     *
+     * @param data The collection of data of the source
+     * @param modified If the data changed since the previous fetch
+     * @param bytes The number of bytes downloaded
+     */
+    public LoadResult(CollectionOfData data, boolean modified, long bytes) {
+        this(data, modified, bytes, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param data The collection of data of the sources that could be read
+     * @param modified If the data changed since the previous fetch
+     * @param bytes The number of bytes downloaded
+     * @param failure Why sources could not be read, or null if all were
+     */
+    public LoadResult(CollectionOfData data, boolean modified, long bytes, String failure) {
+        this.data = data;
+        this.modified = modified;
+        this.bytes = bytes;
+        this.failure = failure;
+    }
+
+    /**
+     * Get the collection of data. When the source is not modified this is
+     * the same collection as returned by the previous fetch.
+     *
+     * @return The collection of data
+     */
+    public CollectionOfData getData() {
+        return data;
+    }
+
+    /**
+     * Determine if the data changed since the previous fetch of the source
+     *
+     * @return False if the server answered 304 or sent the same content
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Get the number of bytes downloaded
+     *
+     * @return The number of bytes, 0 for a 304 answer
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Get why sources of the fetch could not be read
+     *
+     * @return The address and error of each failed source, one per line, or
+     * null if every source was read
+     */
+    public String getFailure() {
+        return failure;
+    }
+}
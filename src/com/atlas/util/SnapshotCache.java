@@ -0,0 +1,97 @@
+package com.atlas.util;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the latest fetch of every source, shared by all tabs.
+ *
+ * While a fetch of a source is running, every other request for the same
+ * source gets the same future instead of starting another download. A
+ * finished fetch is handed out again until it is older than the time to
+ * live. All requesters get the same frozen collection of data. A failed or
+ * empty fetch is not cached.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class SnapshotCache {
+
+    private final long timeToLive;
+    private final Map<String, Entry> entries;
+
+    /**
+     * Constructor
+     *
+     * @param timeToLive How long a finished fetch is reused, in milliseconds
+     */
+    public SnapshotCache(long timeToLive) {
+        this.timeToLive = timeToLive;
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the latest fetch of a source, starting a new one if there is none
+     * running and the cached one is too old
+     *
+     * @param source The key of the source, e.g. its URL
+     * @param fetcher Starts a new fetch of the source
+     * @return A future of the result, shared with other requesters
+     */
+    public CompletableFuture<LoadResult> get(String source,
+            Supplier<CompletableFuture<LoadResult>> fetcher) {
+
+        long now = System.currentTimeMillis();
+        boolean[] started = new boolean[1];
+        Entry entry = entries.compute(source, (key, cached) -> {
+            if (cached != null && (!cached.future.isDone()
+                    || now - cached.loadedAt < timeToLive)) {
+                return cached;
+            }
+            started[0] = true;
+            return new Entry(fetcher.get());
+        });
+        if (started[0]) {
+            entry.future.whenComplete((result, ex) -> {
+                if (ex != null || result.getData().isEmpty()) {
+                    entries.remove(source, entry);
+                } else {
+                    entry.loadedAt = System.currentTimeMillis();
+                }
+            });
+        }
+        return entry.future;
+    }
+
+    /**
+     * Drop the cached fetch of a source, the next request fetches again
+     *
+     * @param source The key of the source
+     */
+    public void invalidate(String source) {
+        entries.remove(source);
+    }
+
+    /**
+     * Get the time to live of a finished fetch
+     *
+     * @return The time in milliseconds
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * The fetch of one source
+     */
+    private static class Entry {
+
+        private final CompletableFuture<LoadResult> future;
+        private volatile long loadedAt;
+
+        Entry(CompletableFuture<LoadResult> future) {
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.atlas.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+
+/**
+ * A plain TCP socket that sends the feed and closes the connection, e.g.
+ * "socket://localhost:9000". Nothing is sent to the other end, the whole
+ * feed is read at every fetch.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class SocketDataSource extends FeedSource {
+
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int READ_TIMEOUT = 20000;
+
+    private final String host;
+    private final int port;
+
+    /**
+     * Constructor
+     *
+     * @param address The address, "socket://host:port"
+     * @throws IllegalArgumentException If the address has no host or port
+     */
+    public SocketDataSource(String address) {
+        super(address);
+        URI uri = URI.create(address);
+        if (uri.getHost() == null || uri.getPort() < 0) {
+            throw new IllegalArgumentException("Expected socket://host:port, not " + address);
+        }
+        this.host = uri.getHost();
+        this.port = uri.getPort();
+    }
+
+    @Override
+    protected InputStream open() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+            socket.setSoTimeout(READ_TIMEOUT);
+            // Closing the stream closes the socket
+            return socket.getInputStream();
+        } catch (IOException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+}
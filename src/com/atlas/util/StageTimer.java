@@ -0,0 +1,178 @@
+package com.atlas.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Timing of the stages of a reload: network, parsing, indexing, chart
+ * conversion, showing, layout and tooltips.
+ *
+ * A stage is timed by calling start before it and stop after it. The
+ * duration goes into the LatencyHistogram of the stage, shown in the timings
+ * panel, and into a Flight Recorder event "com.atlas.Stage" with the number
+ * of points and bytes, so a recording of a slow session shows where the time
+ * went:
+ *
+ * <pre>java -XX:StartFlightRecording=filename=atlas.jfr ...</pre>
+ *
+ * The events need the jdk.jfr API, so StageEvent is only compiled on a JDK
+ * that has it and is looked up at run time. Without it, or on a JVM without
+ * jdk.jfr, only the histograms are kept. A stage that fails is not
+ * recorded. Timing costs two reads of the clock and a few array writes, and
+ * an event that no recording wants is dropped without being filled in.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class StageTimer {
+
+    /**
+     * Reading the feed from the server
+     */
+    public static final int NETWORK = 0;
+
+    /**
+     * Parsing the feed into a collection
+     */
+    public static final int PARSE = 1;
+
+    /**
+     * Building the indexes of a loaded collection
+     */
+    public static final int INDEX = 2;
+
+    /**
+     * Converting a collection to the points of a chart
+     */
+    public static final int CONVERT = 3;
+
+    /**
+     * Handing the points to the chart
+     */
+    public static final int SHOW = 4;
+
+    /**
+     * Laying out the chart with the new points, from handing them over until
+     * the next pulse has laid the chart out
+     */
+    public static final int LAYOUT = 5;
+
+    /**
+     * Indexing the shown points for the tooltip
+     */
+    public static final int TOOLTIPS = 6;
+
+    private static final String[] NAMES = {
+        "Network", "Parse", "Index", "Convert", "Show", "Layout", "Tooltips"
+    };
+
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[NAMES.length];
+
+    /**
+     * StageEvent.start and StageEvent.stop, null without Flight Recorder
+     */
+    private static final MethodHandle START_EVENT;
+    private static final MethodHandle STOP_EVENT;
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i] = new LatencyHistogram();
+        }
+        MethodHandle start = null;
+        MethodHandle stop = null;
+        try {
+            Class<?> events = Class.forName("com.atlas.util.StageEvent", true,
+                    StageTimer.class.getClassLoader());
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            start = lookup.findStatic(events, "start", MethodType.methodType(Object.class));
+            stop = lookup.findStatic(events, "stop", MethodType.methodType(void.class,
+                    Object.class, String.class, long.class, long.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            start = null;
+        }
+        START_EVENT = start;
+        STOP_EVENT = start == null ? null : stop;
+    }
+
+    private final int stage;
+    private final long started;
+    private final Object event;
+
+    private StageTimer(int stage) {
+        this.stage = stage;
+        this.event = START_EVENT != null ? startEvent() : null;
+        this.started = System.nanoTime();
+    }
+
+    /**
+     * Start timing a stage
+     *
+     * @param stage The stage, e.g. PARSE
+     * @return The timer, to stop at the end of the stage
+     */
+    public static StageTimer start(int stage) {
+        return new StageTimer(stage);
+    }
+
+    /**
+     * Stop timing and record the duration
+     *
+     * @param points The number of points the stage handled
+     * @param bytes The number of bytes the stage handled, 0 if it handled no
+     * bytes
+     * @return The duration in nanoseconds
+     */
+    public long stop(long points, long bytes) {
+        long nanos = System.nanoTime() - started;
+        HISTOGRAMS[stage].record(nanos, points, bytes);
+        if (event != null) {
+            stopEvent(event, NAMES[stage], points, bytes);
+        }
+        return nanos;
+    }
+
+    /**
+     * Get the number of stages
+     *
+     * @return The number of stages, they are numbered from 0
+     */
+    public static int getStageCount() {
+        return NAMES.length;
+    }
+
+    /**
+     * Get the name of a stage
+     *
+     * @param stage The stage
+     * @return The name, e.g. "Parse"
+     */
+    public static String getName(int stage) {
+        return NAMES[stage];
+    }
+
+    /**
+     * Get the recent durations of a stage
+     *
+     * @param stage The stage
+     * @return The histogram of the stage
+     */
+    public static LatencyHistogram getHistogram(int stage) {
+        return HISTOGRAMS[stage];
+    }
+
+    private static Object startEvent() {
+        try {
+            return (Object) START_EVENT.invokeExact();
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    private static void stopEvent(Object event, String stage, long points, long bytes) {
+        try {
+            STOP_EVENT.invokeExact(event, stage, points, bytes);
+        } catch (Throwable e) {
+            // The stage is still in its histogram
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.atlas.control.AtlasController;
 import javafx.scene.layout.BorderPane;
 import com.atlas.model.CollectionOfData;
 import java.util.ArrayList;
+import java.util.List;
 import javafx.animation.PathTransition;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
@@ -14,8 +15,10 @@ import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.ButtonBar.ButtonData;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
@@ -24,7 +27,9 @@ import javafx.scene.control.RadioButton;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
 import javafx.scene.control.TextField;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.control.ToggleGroup;
+import javafx.scene.control.Tooltip;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
@@ -52,8 +57,12 @@ public class AtlasView extends VBox {
     private Dialog exitSave;
     private ToggleGroup radioGroup;
     private TextField searchField;
+    private CheckBox allTabsBox;
+    private CheckBox matchCaseBox;
     private TabPane tabView;
-    private ArrayList<LineChart> charts;
+    private ArrayList<LineChart<Number, Number>> charts;
+    private ArrayList<CanvasChart> canvasCharts;
+    private CheckMenuItem canvasItem;
     private ArrayList<Tab> tabs;
     private PathTransition transition;
     private ImageView image;
@@ -69,6 +78,7 @@ public class AtlasView extends VBox {
         this.primaryStage = primaryStage;
         this.collections = new ArrayList<>();
         this.charts = new ArrayList<>();
+        this.canvasCharts = new ArrayList<>();
         this.tabs = new ArrayList<>();
         this.controller = new AtlasController(collections, primaryStage, this);
         initView();
@@ -83,12 +93,45 @@ public class AtlasView extends VBox {
     /**
      * Get the line charts of data
      *
-     * @return
+     * @return The line charts, one per tab
      */
-    public ArrayList<LineChart> getCharts() {
+    public List<LineChart<Number, Number>> getCharts() {
         return this.charts;
     }
 
+    /**
+     * Get the canvas charts of data, one per tab like the line charts
+     *
+     * @return The canvas charts
+     */
+    public ArrayList<CanvasChart> getCanvasCharts() {
+        return this.canvasCharts;
+    }
+
+    /**
+     * Determine if a tab shows its canvas chart instead of its line chart
+     *
+     * @param tab The position of the tab
+     * @return If the canvas chart is shown
+     */
+    public boolean isCanvasRenderer(int tab) {
+        return tab >= 0 && tab < canvasCharts.size()
+                && getTab(tab).getContent() == canvasCharts.get(tab);
+    }
+
+    /**
+     * Show the canvas chart or the line chart in a tab
+     *
+     * @param tab The position of the tab
+     * @param canvas True for the canvas chart, false for the line chart
+     */
+    public void setCanvasRenderer(int tab, boolean canvas) {
+        getTab(tab).setContent(canvas ? canvasCharts.get(tab) : charts.get(tab));
+        if (tab == getSelectedTab()) {
+            canvasItem.setSelected(canvas);
+        }
+    }
+
     /**
      * Get the active tab
      *
@@ -98,6 +141,26 @@ public class AtlasView extends VBox {
         return tabView.getSelectionModel().getSelectedIndex();
     }
 
+    /**
+     * Get a tab by its position
+     *
+     * @param index The position of the tab
+     * @return The tab
+     */
+    public Tab getTab(int index) {
+        return tabView.getTabs().get(index);
+    }
+
+    /**
+     * Get the current position of a tab
+     *
+     * @param tab The tab
+     * @return The position, or -1 if the tab is closed
+     */
+    public int indexOfTab(Tab tab) {
+        return tabView.getTabs().indexOf(tab);
+    }
+
     /**
      * Create a tab
      *
@@ -127,8 +190,11 @@ public class AtlasView extends VBox {
         if (tab < 0) {
             throw new ArrayIndexOutOfBoundsException("Tab is out of bounds");
         } else {
+            controller.stopAutoLoad(tab);
+            controller.tabRemoved(tab);
             collections.remove(tab);
             charts.remove(tab);
+            canvasCharts.remove(tab);
             tabs.remove(tab);
             tabView.getTabs().remove(tab);
         }
@@ -155,7 +221,13 @@ public class AtlasView extends VBox {
         initFileChooser();
         initSaveDialog();
         this.getChildren().addAll(menuBar, pane);
+        tabView.getSelectionModel().selectedItemProperty().addListener(
+                (observable, oldTab, newTab) -> {
+                    controller.tabSelected(newTab);
+                    canvasItem.setSelected(isCanvasRenderer(getSelectedTab()));
+                });
         controller.createMap(tabView);
+        controller.recoverTabs(tabView);
         primaryStage.setOnCloseRequest(new CloseHandler());
     }
 
@@ -185,6 +257,7 @@ public class AtlasView extends VBox {
         MenuItem autoItem = new MenuItem("Auto");
         MenuItem stopItem = new MenuItem("Stop");
         MenuItem refreshItem = new MenuItem("Refresh");
+        MenuItem sourcesItem = new MenuItem("Sources");
         MenuItem exitItem = new MenuItem("Exit");
 
         createItem.setOnAction(new CreateMapHandler());
@@ -192,10 +265,11 @@ public class AtlasView extends VBox {
         autoItem.setOnAction(new AutoLoadHandler());
         stopItem.setOnAction(new StopHandler());
         refreshItem.setOnAction(new RefreshHandler());
+        sourcesItem.setOnAction(new SourcesHandler());
         exitItem.setOnAction(new ExitHandler());
 
         menu.getItems().addAll(createItem, reloadItem, autoItem,
-                stopItem, refreshItem, exitItem);
+                stopItem, refreshItem, sourcesItem, exitItem);
 
         Menu fileMenu = new Menu("File");
         MenuItem saveItem = new MenuItem("Save as");
@@ -206,6 +280,15 @@ public class AtlasView extends VBox {
 
         fileMenu.getItems().addAll(saveItem, loadItem);
 
+        Menu viewMenu = new Menu("View");
+        canvasItem = new CheckMenuItem("Canvas renderer");
+        canvasItem.setOnAction(new RendererHandler());
+        MenuItem statisticsItem = new MenuItem("Statistics");
+        statisticsItem.setOnAction(new StatisticsHandler());
+        MenuItem timingsItem = new MenuItem("Timings");
+        timingsItem.setOnAction(new TimingsHandler());
+        viewMenu.getItems().addAll(canvasItem, statisticsItem, timingsItem);
+
         Menu helpMenu = new Menu("Help");
         MenuItem versionItem = new MenuItem("Version");
         MenuItem aboutItem = new MenuItem("About");
@@ -216,7 +299,7 @@ public class AtlasView extends VBox {
         helpMenu.getItems().addAll(versionItem, aboutItem);
 
         menuBar = new MenuBar();
-        menuBar.getMenus().addAll(menu, fileMenu, helpMenu);
+        menuBar.getMenus().addAll(menu, fileMenu, viewMenu, helpMenu);
 
         return menuBar;
     }
@@ -226,7 +309,7 @@ public class AtlasView extends VBox {
      *
      * @return A line chart without data/points
      */
-    public LineChart initChartView() {
+    public LineChart<Number, Number> initChartView() {
 
         final NumberAxis xAxis = new NumberAxis();
         final NumberAxis yAxis = new NumberAxis();
@@ -236,7 +319,11 @@ public class AtlasView extends VBox {
                 = new LineChart<>(xAxis, yAxis);
         lineChart.getStylesheets().add(getClass()
                 .getResource("/resources/chart.css").toExternalForm());
+        lineChart.widthProperty().addListener(
+                (observable, oldWidth, newWidth) -> controller.chartResized(lineChart));
+        ChartHover.install(lineChart);
         charts.add(lineChart);
+        canvasCharts.add(new CanvasChart("X - Axis", "Y - Axis"));
         return lineChart;
     }
 
@@ -280,14 +367,36 @@ public class AtlasView extends VBox {
         yRadio.setToggleGroup(radioGroup);
         RadioButton nameRadio = new RadioButton("Name");
         nameRadio.setToggleGroup(radioGroup);
+        RadioButton queryRadio = new RadioButton("Query");
+        queryRadio.setToggleGroup(radioGroup);
+        queryRadio.setTooltip(new Tooltip("Comparisons joined by AND, OR and NOT, e.g.\n"
+                + "x >= 10 AND y < 50 AND name ~ \"Stock\""));
         Button searchButton = new Button("Search");
 
+        allTabsBox = new CheckBox("All tabs");
+        // Names match case by default, as the name search always did
+        matchCaseBox = new CheckBox("Match case");
+        matchCaseBox.setSelected(true);
+
         searchField = new TextField();
-        searchField.setPromptText("Enter value here");
+        searchField.setPromptText("Enter value, or range like 10..20");
         searchField.setMinWidth(200);
-
-        boxSearch.getChildren().addAll(xRadio, yRadio, nameRadio, searchField, searchButton);
-        searchButton.setOnAction(new SearchHandler(xRadio, yRadio, nameRadio));
+        // Search as the user types, or changes what to search
+        Runnable searchChanged = () -> controller.searchChanged(radioGroup, xRadio,
+                yRadio, nameRadio, queryRadio, searchField, allTabsBox.isSelected(),
+                matchCaseBox.isSelected());
+        searchField.textProperty().addListener(
+                (observable, oldText, newText) -> searchChanged.run());
+        radioGroup.selectedToggleProperty().addListener(
+                (observable, oldToggle, newToggle) -> searchChanged.run());
+        allTabsBox.selectedProperty().addListener(
+                (observable, oldValue, newValue) -> searchChanged.run());
+        matchCaseBox.selectedProperty().addListener(
+                (observable, oldValue, newValue) -> searchChanged.run());
+
+        boxSearch.getChildren().addAll(xRadio, yRadio, nameRadio, queryRadio, searchField,
+                allTabsBox, matchCaseBox, searchButton);
+        searchButton.setOnAction(new SearchHandler(xRadio, yRadio, nameRadio, queryRadio));
 
         return boxSearch;
     }
@@ -435,18 +544,74 @@ public class AtlasView extends VBox {
         private RadioButton xRadio;
         private RadioButton yRadio;
         private RadioButton nameRadio;
+        private RadioButton queryRadio;
 
         public SearchHandler(RadioButton xRadio, RadioButton yRadio,
-                RadioButton nameRadio) {
+                RadioButton nameRadio, RadioButton queryRadio) {
             this.xRadio = xRadio;
             this.yRadio = yRadio;
             this.nameRadio = nameRadio;
+            this.queryRadio = queryRadio;
         }
 
         @Override
         public void handle(ActionEvent event) {
-            controller.searchData(radioGroup, xRadio, yRadio, nameRadio,
-                    searchField);
+            controller.searchData(radioGroup, xRadio, yRadio, nameRadio, queryRadio,
+                    searchField, allTabsBox.isSelected(), matchCaseBox.isSelected());
+        }
+    }
+
+    /**
+     * Handler for choosing the sources the selected tab is loaded from
+     */
+    private class SourcesHandler implements EventHandler<ActionEvent> {
+
+        @Override
+        public void handle(ActionEvent event) {
+            int tab = getSelectedTab();
+            if (tab < 0) {
+                return;
+            }
+            TextInputDialog dialog = new TextInputDialog(controller.getSourcesText(tab));
+            dialog.setTitle("Sources");
+            dialog.setHeaderText("Addresses to load this tab from, separated by spaces.\n"
+                    + "Several sources are loaded at once and their points combined.");
+            dialog.setContentText("http://, file: or socket://host:port");
+            dialog.showAndWait().ifPresent(text -> controller.setSources(tab, text));
+        }
+    }
+
+    /**
+     * Handler for showing the statistics of the selected tab
+     */
+    private class StatisticsHandler implements EventHandler<ActionEvent> {
+
+        @Override
+        public void handle(ActionEvent event) {
+            controller.showStatistics(getSelectedTab());
+        }
+    }
+
+    /**
+     * Handler for showing how long the stages of loading took
+     */
+    private class TimingsHandler implements EventHandler<ActionEvent> {
+
+        @Override
+        public void handle(ActionEvent event) {
+            controller.showTimings();
+        }
+    }
+
+    /**
+     * Handler for switching the selected tab between the line chart and the
+     * canvas chart
+     */
+    private class RendererHandler implements EventHandler<ActionEvent> {
+
+        @Override
+        public void handle(ActionEvent event) {
+            controller.setCanvasRenderer(getSelectedTab(), canvasItem.isSelected());
         }
     }
 
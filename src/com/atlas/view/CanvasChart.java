@@ -0,0 +1,510 @@
+package com.atlas.view;
+
+import com.atlas.control.Downsampler;
+import com.atlas.model.CollectionOfData;
+import com.atlas.model.MappedCollectionOfData;
+import com.atlas.model.Statistics;
+import javafx.geometry.HPos;
+import javafx.geometry.Side;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.ColumnConstraints;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.RowConstraints;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+import javafx.scene.shape.Line;
+import javafx.scene.shape.Path;
+
+/**
+ * Chart that draws a collection of data straight onto a canvas.
+ *
+ * A line chart makes a node for every point, which gets slow with many
+ * points. This chart reads the points from the collection, ordered by x, and
+ * draws them as one line. When there are more points than pixels across,
+ * each pixel column is drawn from its first, lowest, highest and last point,
+ * which gives the same picture as drawing every point. The columns are only
+ * computed again when the data or the size changes.
+ *
+ * Ordering the points may sort them, finding the bounds may read them all
+ * and hovering needs the spatial index, so a collection is prepared for
+ * drawing by prepare, off the JavaFX Application Thread where it can be
+ * large. A large memory-mapped collection
+ * is drawn from evenly spaced points only, like the line charts, see
+ * Downsampler.orderByX.
+ *
+ * The axes are JavaFX axes and the title, background, line and symbol
+ * colors come from the same style sheet as the line charts, read from
+ * hidden nodes with the style classes of a line chart. Hovering a point
+ * highlights it and shows its coordinates and name, the point is found with
+ * the spatial index of the collection.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class CanvasChart extends GridPane {
+
+    /**
+     * Symbols are drawn for at most this many points
+     */
+    private static final int MAX_SYMBOLS = 2000;
+
+    /**
+     * Distance in pixels within which the pointer hovers a point
+     */
+    private static final double HOVER_RADIUS = 6;
+
+    private static final int TICKS = 10;
+
+    private final NumberAxis xAxis;
+    private final NumberAxis yAxis;
+    private final Label title;
+    private final Label legend;
+    private final Pane plot;
+    private final Canvas canvas;
+    private final Canvas overlay;
+    private final Path lineStyle;
+    private final Region symbolStyle;
+    private final Region hoverStyle;
+    private final Line gridStyle;
+    private final Tooltip tooltip;
+
+    private CollectionOfData data;
+    private int[] rows;
+    private boolean sampled;
+    private int hovered;
+
+    /**
+     * Constructor
+     *
+     * @param xLabel The label of the x axis
+     * @param yLabel The label of the y axis
+     */
+    public CanvasChart(String xLabel, String yLabel) {
+        getStyleClass().add("chart");
+        xAxis = new NumberAxis();
+        yAxis = new NumberAxis();
+        xAxis.setLabel(xLabel);
+        yAxis.setLabel(yLabel);
+        xAxis.setSide(Side.BOTTOM);
+        yAxis.setSide(Side.LEFT);
+        xAxis.setAutoRanging(false);
+        yAxis.setAutoRanging(false);
+        title = new Label();
+        title.getStyleClass().add("chart-title");
+        legend = new Label();
+        legend.getStyleClass().add("chart-legend-item");
+
+        canvas = new Canvas();
+        overlay = new Canvas();
+        Region background = new Region();
+        background.getStyleClass().add("chart-plot-background");
+        lineStyle = new Path();
+        lineStyle.getStyleClass().addAll("chart-series-line", "series0", "default-color0");
+        symbolStyle = new Region();
+        symbolStyle.getStyleClass().addAll("chart-line-symbol", "series0", "default-color0");
+        hoverStyle = new Region();
+        hoverStyle.getStyleClass().addAll("chart-line-symbol", "onHover");
+        gridStyle = new Line();
+        gridStyle.getStyleClass().add("chart-vertical-grid-lines");
+        for (Region style : new Region[]{symbolStyle, hoverStyle}) {
+            style.setManaged(false);
+            style.setVisible(false);
+        }
+        lineStyle.setManaged(false);
+        gridStyle.setManaged(false);
+        gridStyle.setVisible(false);
+
+        plot = new Pane(background, canvas, overlay, lineStyle, symbolStyle, hoverStyle, gridStyle);
+        plot.setMinSize(0, 0);
+        background.prefWidthProperty().bind(plot.widthProperty());
+        background.prefHeightProperty().bind(plot.heightProperty());
+        canvas.widthProperty().bind(plot.widthProperty());
+        canvas.heightProperty().bind(plot.heightProperty());
+        overlay.widthProperty().bind(plot.widthProperty());
+        overlay.heightProperty().bind(plot.heightProperty());
+        canvas.widthProperty().addListener((observable, oldWidth, newWidth) -> redraw());
+        canvas.heightProperty().addListener((observable, oldHeight, newHeight) -> redraw());
+        lineStyle.strokeProperty().addListener((observable, oldStroke, newStroke) -> redraw());
+
+        add(title, 0, 0, 2, 1);
+        add(yAxis, 0, 1);
+        add(plot, 1, 1);
+        add(xAxis, 1, 2);
+        add(legend, 0, 3, 2, 1);
+        GridPane.setHalignment(title, HPos.CENTER);
+        GridPane.setHalignment(legend, HPos.CENTER);
+        ColumnConstraints axisColumn = new ColumnConstraints();
+        ColumnConstraints plotColumn = new ColumnConstraints();
+        plotColumn.setHgrow(Priority.ALWAYS);
+        getColumnConstraints().addAll(axisColumn, plotColumn);
+        RowConstraints titleRow = new RowConstraints();
+        RowConstraints plotRow = new RowConstraints();
+        plotRow.setVgrow(Priority.ALWAYS);
+        getRowConstraints().addAll(titleRow, plotRow);
+
+        tooltip = new Tooltip();
+        hovered = -1;
+        overlay.setOnMouseMoved(this::hover);
+        overlay.setOnMouseExited(event -> clearHover());
+        getStylesheets().add(getClass().getResource("/resources/chart.css").toExternalForm());
+    }
+
+    /**
+     * Set the title of the chart
+     *
+     * @param text The title
+     */
+    public void setTitle(String text) {
+        title.setText(text);
+    }
+
+    /**
+     * Get the collection drawn in the chart
+     *
+     * @return The collection, or null if the chart is empty
+     */
+    public CollectionOfData getData() {
+        return data;
+    }
+
+    /**
+     * Order a collection by x and find its bounds for drawing. May be called
+     * on any thread, and should be for a collection without an x index or
+     * kept statistics, e.g. a collection read from a file.
+     *
+     * @param collection The collection of data
+     * @return The prepared points
+     */
+    public static Points prepare(CollectionOfData collection) {
+        int[] rows = Downsampler.orderByX(collection);
+        boolean sampled = Downsampler.isSampled(collection);
+        if (!sampled) {
+            // Hovering finds the point with the spatial index, built here
+            // and not by the first mouse move
+            collection.buildSpatialIndex();
+            // Kept by a collection, or counted once by a view of one
+            Statistics onX = collection.getXStatistics();
+            Statistics onY = collection.getYStatistics();
+            return new Points(collection, rows, false,
+                    onX.getMin(), onX.getMax(), onY.getMin(), onY.getMax());
+        }
+        if (collection instanceof MappedCollectionOfData) {
+            // The bounds of all points, kept in the header of the file
+            MappedCollectionOfData mapped = (MappedCollectionOfData) collection;
+            return new Points(collection, rows, true, mapped.getMinX(), mapped.getMaxX(),
+                    mapped.getMinY(), mapped.getMaxY());
+        }
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int row : rows) {
+            double x = collection.getX(row);
+            double y = collection.getY(row);
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            if (!Double.isNaN(y)) {
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+            }
+        }
+        return new Points(collection, rows, true, minX, maxX, minY, maxY);
+    }
+
+    /**
+     * Draw prepared points, replacing the ones drawn before
+     *
+     * @param points The points, see prepare
+     * @param name The name of the series, shown under the chart
+     */
+    public void setData(Points points, String name) {
+        data = points.data;
+        rows = points.rows;
+        sampled = points.sampled;
+        legend.setText(name);
+        setBounds(xAxis, points.minX, points.maxX);
+        setBounds(yAxis, points.minY, points.maxY);
+        clearHover();
+        redraw();
+    }
+
+    /**
+     * Remove the drawn collection
+     */
+    public void clear() {
+        data = null;
+        rows = null;
+        sampled = false;
+        legend.setText("");
+        clearHover();
+        redraw();
+    }
+
+    /**
+     * Round the bounds of an axis out to whole ticks
+     */
+    private static void setBounds(NumberAxis axis, double min, double max) {
+        if (!(min <= max) || Double.isInfinite(min) || Double.isInfinite(max)) {
+            min = 0;
+            max = 1;
+        } else if (min == max) {
+            min -= 1;
+            max += 1;
+        }
+        double unit = niceUnit((max - min) / TICKS);
+        axis.setTickUnit(unit);
+        axis.setLowerBound(Math.floor(min / unit) * unit);
+        axis.setUpperBound(Math.ceil(max / unit) * unit);
+    }
+
+    /**
+     * 1, 2 or 5 times a power of ten, at least the given step
+     */
+    private static double niceUnit(double step) {
+        double power = Math.pow(10, Math.floor(Math.log10(step)));
+        double fraction = step / power;
+        if (fraction <= 1) {
+            return power;
+        } else if (fraction <= 2) {
+            return 2 * power;
+        } else if (fraction <= 5) {
+            return 5 * power;
+        }
+        return 10 * power;
+    }
+
+    private double toPixelX(double x, double width) {
+        return (x - xAxis.getLowerBound()) / (xAxis.getUpperBound() - xAxis.getLowerBound()) * width;
+    }
+
+    private double toPixelY(double y, double height) {
+        return height - (y - yAxis.getLowerBound()) / (yAxis.getUpperBound() - yAxis.getLowerBound()) * height;
+    }
+
+    /**
+     * Draw the grid and the collection onto the canvas
+     */
+    private void redraw() {
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, width, height);
+        drawGrid(g, width, height);
+        if (rows == null || rows.length == 0 || width < 1 || height < 1) {
+            return;
+        }
+
+        g.setStroke(paint(lineStyle.getStroke(), Color.web("#f3622d")));
+        g.setLineWidth(2);
+        g.beginPath();
+        int columns = (int) Math.ceil(width);
+        if (rows.length <= 4 * columns) {
+            boolean first = true;
+            for (int row : rows) {
+                double y = data.getY(row);
+                if (Double.isNaN(y)) {
+                    continue;
+                }
+                double px = toPixelX(data.getX(row), width);
+                double py = toPixelY(y, height);
+                if (first) {
+                    g.moveTo(px, py);
+                    first = false;
+                } else {
+                    g.lineTo(px, py);
+                }
+            }
+        } else {
+            drawColumns(g, width, height, columns);
+        }
+        g.stroke();
+
+        if (rows.length <= MAX_SYMBOLS) {
+            g.setFill(symbolFill());
+            for (int row : rows) {
+                double y = data.getY(row);
+                if (!Double.isNaN(y)) {
+                    g.fillOval(toPixelX(data.getX(row), width) - 2.5,
+                            toPixelY(y, height) - 2.5, 5, 5);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the line through the first, lowest, highest and last point of
+     * every pixel column to the path
+     */
+    private void drawColumns(GraphicsContext g, double width, double height, int columns) {
+        double[] first = new double[columns];
+        double[] last = new double[columns];
+        double[] low = new double[columns];
+        double[] high = new double[columns];
+        boolean[] used = new boolean[columns];
+        for (int row : rows) {
+            double y = data.getY(row);
+            if (Double.isNaN(y)) {
+                continue;
+            }
+            int column = (int) toPixelX(data.getX(row), width);
+            column = Math.max(0, Math.min(columns - 1, column));
+            if (!used[column]) {
+                used[column] = true;
+                first[column] = low[column] = high[column] = y;
+            } else {
+                low[column] = Math.min(low[column], y);
+                high[column] = Math.max(high[column], y);
+            }
+            last[column] = y;
+        }
+        boolean started = false;
+        for (int column = 0; column < columns; column++) {
+            if (!used[column]) {
+                continue;
+            }
+            double px = column + 0.5;
+            if (started) {
+                g.lineTo(px, toPixelY(first[column], height));
+            } else {
+                g.moveTo(px, toPixelY(first[column], height));
+                started = true;
+            }
+            g.lineTo(px, toPixelY(low[column], height));
+            g.lineTo(px, toPixelY(high[column], height));
+            g.lineTo(px, toPixelY(last[column], height));
+        }
+    }
+
+    private void drawGrid(GraphicsContext g, double width, double height) {
+        g.setStroke(paint(gridStyle.getStroke(), Color.LIGHTGRAY));
+        g.setLineWidth(0.5);
+        double unit = xAxis.getTickUnit();
+        for (double x = xAxis.getLowerBound(); x <= xAxis.getUpperBound() + unit / 2; x += unit) {
+            double px = Math.round(toPixelX(x, width)) + 0.5;
+            g.strokeLine(px, 0, px, height);
+        }
+        unit = yAxis.getTickUnit();
+        for (double y = yAxis.getLowerBound(); y <= yAxis.getUpperBound() + unit / 2; y += unit) {
+            double py = Math.round(toPixelY(y, height)) + 0.5;
+            g.strokeLine(0, py, width, py);
+        }
+    }
+
+    /**
+     * Highlight the point under the pointer and show its tooltip
+     */
+    private void hover(MouseEvent event) {
+        if (data == null || rows.length == 0) {
+            return;
+        }
+        double width = overlay.getWidth();
+        double height = overlay.getHeight();
+        double xPerPixel = (xAxis.getUpperBound() - xAxis.getLowerBound()) / width;
+        double yPerPixel = (yAxis.getUpperBound() - yAxis.getLowerBound()) / height;
+        double x = xAxis.getLowerBound() + event.getX() * xPerPixel;
+        double y = yAxis.getLowerBound() + (height - event.getY()) * yPerPixel;
+        // The spatial index of a sampled collection would read every point,
+        // its few drawn points are looked at one by one instead
+        int[] near = sampled ? rows : data.findInBox(x - HOVER_RADIUS * xPerPixel,
+                y - HOVER_RADIUS * yPerPixel, x + HOVER_RADIUS * xPerPixel,
+                y + HOVER_RADIUS * yPerPixel);
+
+        int closest = -1;
+        double best = Double.POSITIVE_INFINITY;
+        for (int row : near) {
+            double dx = toPixelX(data.getX(row), width) - event.getX();
+            double dy = toPixelY(data.getY(row), height) - event.getY();
+            double distance = dx * dx + dy * dy;
+            if (distance < best) {
+                best = distance;
+                closest = row;
+            }
+        }
+        if (closest < 0 || best > HOVER_RADIUS * HOVER_RADIUS) {
+            clearHover();
+            return;
+        }
+        if (closest == hovered) {
+            return;
+        }
+        hovered = closest;
+        double px = toPixelX(data.getX(closest), width);
+        double py = toPixelY(data.getY(closest), height);
+        GraphicsContext g = overlay.getGraphicsContext2D();
+        g.clearRect(0, 0, width, height);
+        g.setFill(paint(background(hoverStyle), Color.web("#1af24c")));
+        g.fillOval(px - 4, py - 4, 8, 8);
+        tooltip.setText("X: " + data.getX(closest) + "\n"
+                + "Y : " + data.getY(closest) + "\n"
+                + "Name: " + data.getName(closest));
+        tooltip.show(overlay, event.getScreenX() + 12, event.getScreenY() + 12);
+    }
+
+    private void clearHover() {
+        hovered = -1;
+        overlay.getGraphicsContext2D().clearRect(0, 0, overlay.getWidth(), overlay.getHeight());
+        tooltip.hide();
+    }
+
+    private Paint symbolFill() {
+        return paint(background(symbolStyle), Color.web("#f3622d"));
+    }
+
+    /**
+     * The first background fill of a styled region
+     */
+    private static Paint background(Region region) {
+        Background background = region.getBackground();
+        if (background == null || background.getFills().isEmpty()) {
+            return null;
+        }
+        return background.getFills().get(0).getFill();
+    }
+
+    private static Paint paint(Paint styled, Paint fallback) {
+        return styled == null ? fallback : styled;
+    }
+
+    /**
+     * The points of a collection ordered by x, with their bounds, ready to
+     * be drawn, see prepare
+     */
+    public static class Points {
+
+        private final CollectionOfData data;
+        private final int[] rows;
+        private final boolean sampled;
+        private final double minX;
+        private final double maxX;
+        private final double minY;
+        private final double maxY;
+
+        Points(CollectionOfData data, int[] rows, boolean sampled,
+                double minX, double maxX, double minY, double maxY) {
+            this.data = data;
+            this.rows = rows;
+            this.sampled = sampled;
+            this.minX = minX;
+            this.maxX = maxX;
+            this.minY = minY;
+            this.maxY = maxY;
+        }
+
+        /**
+         * Get the collection the points are taken from
+         *
+         * @return The collection of data
+         */
+        public CollectionOfData getData() {
+            return data;
+        }
+    }
+}
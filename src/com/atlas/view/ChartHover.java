@@ -0,0 +1,188 @@
+package com.atlas.view;
+
+import com.atlas.util.StageTimer;
+import java.util.ArrayList;
+import javafx.collections.ListChangeListener;
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.MouseEvent;
+
+/**
+ * One tooltip and hover highlight for all points of a line chart.
+ *
+ * Instead of a tooltip and mouse handlers on the node of every point, the
+ * chart has one mouse handler. On a move the point closest to the pointer is
+ * found in an index of the shown points ordered by x, its node gets the
+ * "onHover" style class and the tooltip text is made for that point only.
+ *
+ * The index is built again at the first move after the series of the chart
+ * changed. Points whose values are changed in place, e.g. by SeriesUpdater,
+ * are not seen by the chart, invalidate must be called after such a change.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class ChartHover {
+
+    private static final String KEY = "atlas.hover";
+
+    /**
+     * Distance in pixels within which the pointer hovers a point
+     */
+    private static final double RADIUS = 8;
+
+    private final LineChart<Number, Number> chart;
+    private final NumberAxis xAxis;
+    private final NumberAxis yAxis;
+    private final Tooltip tooltip;
+    private final ListChangeListener<Object> changed;
+    private ArrayList<XYChart.Data<Number, Number>> points;
+    private double[] xs;
+    private boolean stale;
+    private XYChart.Data<Number, Number> hovered;
+
+    private ChartHover(LineChart<Number, Number> chart) {
+        this.chart = chart;
+        this.xAxis = (NumberAxis) chart.getXAxis();
+        this.yAxis = (NumberAxis) chart.getYAxis();
+        this.tooltip = new Tooltip();
+        this.stale = true;
+        this.changed = (change) -> stale = true;
+        chart.getData().addListener((ListChangeListener.Change<? extends XYChart.Series<Number, Number>> change) -> {
+            stale = true;
+            while (change.next()) {
+                for (XYChart.Series<Number, Number> series : change.getRemoved()) {
+                    series.getData().removeListener(changed);
+                }
+                for (XYChart.Series<Number, Number> series : change.getAddedSubList()) {
+                    series.getData().addListener(changed);
+                }
+            }
+        });
+        chart.addEventHandler(MouseEvent.MOUSE_MOVED, this::moved);
+        chart.addEventHandler(MouseEvent.MOUSE_EXITED, event -> clear());
+    }
+
+    /**
+     * Attach a hover to a line chart with number axes
+     *
+     * @param chart The line chart
+     * @return The hover, kept by the chart
+     */
+    public static ChartHover install(LineChart<Number, Number> chart) {
+        ChartHover hover = new ChartHover(chart);
+        chart.getProperties().put(KEY, hover);
+        return hover;
+    }
+
+    /**
+     * Build the index again at the next move, after values of the shown
+     * points were changed in place
+     *
+     * @param chart A line chart with a hover
+     */
+    public static void invalidate(LineChart<Number, Number> chart) {
+        Object hover = chart.getProperties().get(KEY);
+        if (hover instanceof ChartHover) {
+            ((ChartHover) hover).stale = true;
+        }
+    }
+
+    private void moved(MouseEvent event) {
+        if (stale) {
+            index();
+        }
+        Point2D onX = xAxis.sceneToLocal(event.getSceneX(), event.getSceneY());
+        Point2D onY = yAxis.sceneToLocal(event.getSceneX(), event.getSceneY());
+        double x = xAxis.getValueForDisplay(onX.getX()).doubleValue();
+        double xPerPixel = Math.abs(xAxis.getValueForDisplay(onX.getX() + 1).doubleValue() - x);
+
+        int from = lowerBound(x - RADIUS * xPerPixel);
+        XYChart.Data<Number, Number> closest = null;
+        double best = RADIUS * RADIUS;
+        for (int i = from; i < xs.length && xs[i] <= x + RADIUS * xPerPixel; i++) {
+            XYChart.Data<Number, Number> point = points.get(i);
+            double dx = xAxis.getDisplayPosition(point.getXValue()) - onX.getX();
+            double dy = yAxis.getDisplayPosition(point.getYValue()) - onY.getY();
+            double distance = dx * dx + dy * dy;
+            if (distance <= best) {
+                best = distance;
+                closest = point;
+            }
+        }
+        if (closest == null) {
+            clear();
+            return;
+        }
+        if (closest != hovered) {
+            highlight(closest);
+            tooltip.setText("X: " + closest.getXValue() + "\n"
+                    + "Y : " + closest.getYValue() + "\n"
+                    + "Name: " + closest.getExtraValue());
+        }
+        tooltip.show(chart, event.getScreenX() + 12, event.getScreenY() + 12);
+    }
+
+    private void highlight(XYChart.Data<Number, Number> point) {
+        unhighlight();
+        hovered = point;
+        Node node = point.getNode();
+        if (node != null) {
+            node.getStyleClass().add("onHover");
+        }
+    }
+
+    private void unhighlight() {
+        if (hovered != null && hovered.getNode() != null) {
+            hovered.getNode().getStyleClass().remove("onHover");
+        }
+        hovered = null;
+    }
+
+    private void clear() {
+        unhighlight();
+        tooltip.hide();
+    }
+
+    /**
+     * Order the points of all shown series by x
+     */
+    private void index() {
+        StageTimer timer = StageTimer.start(StageTimer.TOOLTIPS);
+        int count = 0;
+        for (XYChart.Series<Number, Number> series : chart.getData()) {
+            count += series.getData().size();
+        }
+        ArrayList<XYChart.Data<Number, Number>> all = new ArrayList<>(count);
+        for (XYChart.Series<Number, Number> series : chart.getData()) {
+            all.addAll(series.getData());
+        }
+        all.sort((a, b) -> Double.compare(a.getXValue().doubleValue(),
+                b.getXValue().doubleValue()));
+        xs = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = all.get(i).getXValue().doubleValue();
+        }
+        points = all;
+        stale = false;
+        unhighlight();
+        timer.stop(count, 0);
+    }
+
+    private int lowerBound(double x) {
+        int low = 0;
+        int high = xs.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (xs[mid] < x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,183 @@
+package com.atlas.control;
+
+import com.atlas.model.CollectionOfData;
+import com.atlas.model.MapFile;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of Downsampler, the kept points compared with the buckets worked out
+ * again point by point.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class DownsamplerTest {
+
+    private static double[] ascending(int length, Random random) {
+        double[] xs = new double[length];
+        for (int i = 1; i < length; i++) {
+            xs[i] = xs[i - 1] + random.nextInt(3);
+        }
+        return xs;
+    }
+
+    private static double[] walk(int length, Random random) {
+        double[] ys = new double[length];
+        for (int i = 1; i < length; i++) {
+            ys[i] = ys[i - 1] + random.nextGaussian();
+        }
+        return ys;
+    }
+
+    /**
+     * The first position of a bucket, the last bucket ends before the last
+     * point
+     */
+    private static int bucketStart(int bucket, int length, int threshold) {
+        return (int) ((long) bucket * (length - 2) / (threshold - 2)) + 1;
+    }
+
+    /**
+     * Twice the area of a triangle
+     */
+    private static double area(double ax, double ay, double bx, double by, double cx, double cy) {
+        return Math.abs((bx - ax) * (cy - ay) - (cx - ax) * (by - ay));
+    }
+
+    private static void checkBuckets(double[] xs, double[] ys, int threshold) {
+        int length = xs.length;
+        int[] kept = Downsampler.lttb(xs, ys, threshold);
+        assertEquals(threshold, kept.length);
+        assertEquals(0, kept[0]);
+        assertEquals(length - 1, kept[threshold - 1]);
+
+        int buckets = threshold - 2;
+        assertEquals(length - 1, bucketStart(buckets, length, threshold));
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int start = bucketStart(bucket, length, threshold);
+            int end = bucketStart(bucket + 1, length, threshold);
+            assertTrue("Empty bucket " + bucket, start < end);
+            int chosen = kept[bucket + 1];
+            assertTrue("Bucket " + bucket + " kept " + chosen, chosen >= start && chosen < end);
+
+            // The next bucket is the last point for the last bucket
+            int nextStart = end;
+            int nextEnd = bucket + 1 < buckets ? bucketStart(bucket + 2, length, threshold) : length;
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += xs[i];
+                averageY += ys[i];
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            int previous = kept[bucket];
+            double largest = -1;
+            for (int i = start; i < end; i++) {
+                largest = Math.max(largest,
+                        area(xs[previous], ys[previous], xs[i], ys[i], averageX, averageY));
+            }
+            double area = area(xs[previous], ys[previous], xs[chosen], ys[chosen], averageX, averageY);
+            assertEquals("Bucket " + bucket, largest, area, largest * 1e-9);
+        }
+    }
+
+    @Test
+    public void eachBucketKeepsItsLargestTriangle() {
+        Random random = new Random(1);
+        int[] lengths = {4, 5, 10, 99, 100, 1000, 4321};
+        for (int length : lengths) {
+            double[] xs = ascending(length, random);
+            double[] ys = walk(length, random);
+            for (int threshold = 3; threshold < length; threshold += 1 + length / 20) {
+                checkBuckets(xs, ys, threshold);
+            }
+            checkBuckets(xs, ys, length - 1);
+        }
+    }
+
+    @Test
+    public void allPointsAreKeptBelowThreeOrAboveTheLength() {
+        double[] xs = {0, 1, 2, 3, 4};
+        double[] ys = {4, 1, 3, 0, 2};
+        int[] all = {0, 1, 2, 3, 4};
+        assertArrayEquals(all, Downsampler.lttb(xs, ys, 5));
+        assertArrayEquals(all, Downsampler.lttb(xs, ys, 50));
+        assertArrayEquals(all, Downsampler.lttb(xs, ys, 2));
+        assertArrayEquals(all, Downsampler.lttb(xs, ys, 0));
+        assertArrayEquals(new int[0], Downsampler.lttb(new double[0], new double[0], 10));
+    }
+
+    @Test
+    public void aSpikeIsKept() {
+        int length = 1000;
+        double[] xs = new double[length];
+        double[] ys = new double[length];
+        for (int i = 0; i < length; i++) {
+            xs[i] = i;
+        }
+        ys[617] = 100;
+        boolean found = false;
+        for (int position : Downsampler.lttb(xs, ys, 20)) {
+            found |= position == 617;
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void selectKeepsTheEndsOrderedByX() {
+        Random random = new Random(2);
+        CollectionOfData data = new CollectionOfData();
+        for (int i = 0; i < 5000; i++) {
+            data.addPoint(random.nextInt(100000), random.nextGaussian(), null);
+        }
+        int[] rows = Downsampler.select(data, 300);
+        assertEquals(300, rows.length);
+        int[] ordered = data.orderByX();
+        assertEquals(data.getX(ordered[0]), data.getX(rows[0]), 0);
+        assertEquals(data.getX(ordered[ordered.length - 1]), data.getX(rows[rows.length - 1]), 0);
+        for (int i = 1; i < rows.length; i++) {
+            assertTrue(data.getX(rows[i - 1]) <= data.getX(rows[i]));
+        }
+        assertArrayEquals(ordered, Downsampler.select(data, 5000));
+    }
+
+    @Test
+    public void largeMappedCollectionIsSampled() throws IOException {
+        Random random = new Random(3);
+        CollectionOfData data = new CollectionOfData();
+        for (int i = 0; i < 25000; i++) {
+            data.addPoint(random.nextInt(100000), random.nextGaussian(), null);
+        }
+        assertFalse(Downsampler.isSampled(data));
+        assertArrayEquals(data.orderByX(), Downsampler.orderByX(data));
+
+        File file = File.createTempFile("sampled", ".map");
+        try {
+            MapFile.write(data, file);
+            CollectionOfData mapped = MapFile.map(file);
+            assertTrue(Downsampler.isSampled(mapped));
+            int[] rows = Downsampler.orderByX(mapped);
+            // Every third point, the first one included
+            assertEquals(8334, rows.length);
+            boolean[] seen = new boolean[data.getSize()];
+            for (int i = 0; i < rows.length; i++) {
+                assertEquals(0, rows[i] % 3);
+                assertFalse(seen[rows[i]]);
+                seen[rows[i]] = true;
+                if (i > 0) {
+                    assertTrue(mapped.getX(rows[i - 1]) <= mapped.getX(rows[i]));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
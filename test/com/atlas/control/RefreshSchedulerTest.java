@@ -0,0 +1,149 @@
+package com.atlas.control;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of RefreshScheduler: the limit on running jobs, the preferred job
+ * taken first, and jobs cancelled by key after the tabs moved.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class RefreshSchedulerTest {
+
+    private static final long HOUR = 3600000;
+
+    private RefreshScheduler scheduler;
+    private final List<Object> started = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<Object, CompletableFuture<Void>> runs = new ConcurrentHashMap<>();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * A task that records its start and completes when the test says so
+     */
+    private Supplier<CompletableFuture<?>> held(Object key) {
+        return () -> {
+            started.add(key);
+            CompletableFuture<Void> run = new CompletableFuture<>();
+            runs.put(key, run);
+            return run;
+        };
+    }
+
+    private void release(Object key) {
+        runs.remove(key).complete(null);
+    }
+
+    @Test
+    public void runsNoMoreThanTheLimit() throws InterruptedException {
+        scheduler = new RefreshScheduler(2);
+        for (String key : Arrays.asList("a", "b", "c", "d")) {
+            scheduler.schedule(key, HOUR, held(key));
+        }
+        await(() -> started.size() == 2 && scheduler.getQueuedCount() == 2);
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<>(started));
+
+        release("a");
+        await(() -> started.size() == 3);
+        assertEquals("c", started.get(2));
+        assertEquals(1, scheduler.getQueuedCount());
+
+        release("b");
+        release("c");
+        await(() -> started.size() == 4);
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    @Test
+    public void preferredJobGoesFirst() throws InterruptedException {
+        scheduler = new RefreshScheduler(1);
+        scheduler.schedule("busy", HOUR, held("busy"));
+        await(() -> started.size() == 1);
+        for (String key : Arrays.asList("a", "b", "c")) {
+            scheduler.schedule(key, HOUR, held(key));
+        }
+        await(() -> scheduler.getQueuedCount() == 3);
+        scheduler.setPreferred("c");
+
+        release("busy");
+        await(() -> started.size() == 2);
+        assertEquals("c", started.get(1));
+
+        release("c");
+        await(() -> started.size() == 3);
+        assertEquals("a", started.get(2));
+    }
+
+    @Test
+    public void cancelFollowsTheKeyAfterTabsMove() throws InterruptedException {
+        scheduler = new RefreshScheduler(4);
+        List<Object> tabs = new ArrayList<>(Arrays.asList(new Object(), new Object(), new Object()));
+        ConcurrentHashMap<Object, AtomicInteger> counts = new ConcurrentHashMap<>();
+        for (Object tab : tabs) {
+            AtomicInteger count = new AtomicInteger();
+            counts.put(tab, count);
+            scheduler.schedule(tab, 10, () -> {
+                count.incrementAndGet();
+                return CompletableFuture.completedFuture(null);
+            });
+        }
+        Object first = tabs.remove(0);
+        scheduler.cancel(first);
+        // The second tab is now at position 0
+        Object second = tabs.get(0);
+        scheduler.cancel(second);
+        Object third = tabs.get(1);
+
+        assertFalse(scheduler.isScheduled(first));
+        assertFalse(scheduler.isScheduled(second));
+        assertTrue(scheduler.isScheduled(third));
+        assertEquals(1, scheduler.getScheduledCount());
+
+        // A run taken just before its cancel may still be starting
+        Thread.sleep(50);
+        int firstRuns = counts.get(first).get();
+        int secondRuns = counts.get(second).get();
+        int thirdRuns = counts.get(third).get();
+        await(() -> counts.get(third).get() >= thirdRuns + 3);
+        assertEquals(firstRuns, counts.get(first).get());
+        assertEquals(secondRuns, counts.get(second).get());
+    }
+
+    @Test
+    public void tasksStartWithoutTheLock() throws InterruptedException {
+        scheduler = new RefreshScheduler(1);
+        List<Boolean> locked = new CopyOnWriteArrayList<>();
+        for (String key : Arrays.asList("a", "b", "c")) {
+            scheduler.schedule(key, HOUR, () -> {
+                locked.add(Thread.holdsLock(scheduler));
+                return CompletableFuture.completedFuture(null);
+            });
+        }
+        await(() -> locked.size() == 3);
+        assertEquals(Arrays.asList(false, false, false), new ArrayList<>(locked));
+    }
+}
@@ -0,0 +1,154 @@
+package com.atlas.control;
+
+import com.atlas.model.CollectionOfData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import javafx.scene.chart.XYChart;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of SeriesUpdater: which chart data of a series are kept, changed,
+ * added and removed when the next loading is applied.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class SeriesUpdaterTest {
+
+    private static final int WIDTH = 1000;
+
+    private static CollectionOfData points(Object... rows) {
+        CollectionOfData data = new CollectionOfData();
+        for (int i = 0; i < rows.length; i += 3) {
+            data.addPoint(((Number) rows[i]).doubleValue(), ((Number) rows[i + 1]).doubleValue(),
+                    (String) rows[i + 2]);
+        }
+        return data;
+    }
+
+    private static XYChart.Series<Number, Number> series(CollectionOfData data) {
+        XYChart.Series<Number, Number> series = new XYChart.Series<>();
+        series.getData().setAll(AtlasController.getChartPoints(data, WIDTH));
+        return series;
+    }
+
+    /**
+     * Apply the next collection, check the series shows it, and return the
+     * chart data that were changed or added
+     */
+    private static List<XYChart.Data<Number, Number>> apply(XYChart.Series<Number, Number> series,
+            CollectionOfData next) {
+        List<XYChart.Data<Number, Number>> points = AtlasController.getChartPoints(next, WIDTH);
+        List<XYChart.Data<Number, Number>> changed = new SeriesUpdater().update(series, points);
+        assertEquals(next.getSize(), series.getData().size());
+        for (int row = 0; row < next.getSize(); row++) {
+            boolean found = false;
+            for (XYChart.Data<Number, Number> point : series.getData()) {
+                found |= point.getXValue().doubleValue() == next.getX(row)
+                        && point.getYValue().doubleValue() == next.getY(row)
+                        && next.getName(row).equals(point.getExtraValue());
+            }
+            assertTrue("Missing row " + row, found);
+        }
+        return changed;
+    }
+
+    private static Set<XYChart.Data<Number, Number>> identities(List<XYChart.Data<Number, Number>> data) {
+        Set<XYChart.Data<Number, Number>> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(data);
+        return set;
+    }
+
+    @Test
+    public void samePointsChangeNothing() {
+        CollectionOfData data = points(1, 10, "A", 2, 20, "B", 3, 30, "C");
+        XYChart.Series<Number, Number> series = series(data);
+        List<XYChart.Data<Number, Number>> before = new ArrayList<>(series.getData());
+
+        assertTrue(apply(series, data).isEmpty());
+        for (int i = 0; i < before.size(); i++) {
+            assertSame(before.get(i), series.getData().get(i));
+        }
+    }
+
+    @Test
+    public void pointsAreMatchedByName() {
+        XYChart.Series<Number, Number> series = series(points(1, 10, "A", 2, 20, "B", 3, 30, "C"));
+        XYChart.Data<Number, Number> a = series.getData().get(0);
+        XYChart.Data<Number, Number> b = series.getData().get(1);
+        XYChart.Data<Number, Number> c = series.getData().get(2);
+
+        // B moved, A and C swapped places on the x axis
+        List<XYChart.Data<Number, Number>> changed
+                = apply(series, points(3, 10, "A", 2, 25, "B", 1, 30, "C"));
+
+        assertEquals(3, series.getData().size());
+        assertTrue(identities(series.getData()).containsAll(identities(Arrays.asList(a, b, c))));
+        assertEquals(3, a.getXValue().doubleValue(), 0);
+        assertEquals(25, b.getYValue().doubleValue(), 0);
+        assertEquals(1, c.getXValue().doubleValue(), 0);
+        assertEquals(identities(Arrays.asList(a, b, c)), identities(changed));
+    }
+
+    @Test
+    public void unchangedPointsAreNotReported() {
+        XYChart.Series<Number, Number> series = series(points(1, 10, "A", 2, 20, "B"));
+        XYChart.Data<Number, Number> b = series.getData().get(1);
+
+        List<XYChart.Data<Number, Number>> changed = apply(series, points(1, 10, "A", 2, 21, "B"));
+
+        assertEquals(1, changed.size());
+        assertSame(b, changed.get(0));
+    }
+
+    @Test
+    public void newNamesReuseTheFreedPositions() {
+        XYChart.Series<Number, Number> series = series(points(1, 10, "A", 2, 20, "B", 3, 30, "C"));
+        XYChart.Data<Number, Number> a = series.getData().get(0);
+        XYChart.Data<Number, Number> b = series.getData().get(1);
+
+        // B is renamed D at the same position, so its chart data is kept
+        List<XYChart.Data<Number, Number>> changed
+                = apply(series, points(1, 10, "A", 2, 20, "D", 3, 30, "C"));
+
+        assertSame(a, series.getData().get(0));
+        assertSame(b, series.getData().get(1));
+        assertEquals("D", b.getExtraValue());
+        assertEquals(1, changed.size());
+        assertSame(b, changed.get(0));
+    }
+
+    @Test
+    public void pointsAreAddedAndRemoved() {
+        XYChart.Series<Number, Number> series = series(points(1, 10, "A", 2, 20, "B", 3, 30, "C"));
+        XYChart.Data<Number, Number> a = series.getData().get(0);
+        XYChart.Data<Number, Number> b = series.getData().get(1);
+        XYChart.Data<Number, Number> c = series.getData().get(2);
+
+        // Fewer points: C is dropped, A and B are kept
+        apply(series, points(1, 10, "A", 2, 20, "B"));
+        Set<XYChart.Data<Number, Number>> kept = identities(series.getData());
+        assertTrue(kept.contains(a));
+        assertTrue(kept.contains(b));
+        assertFalse(kept.contains(c));
+
+        // More points: A and B are kept, the new ones are the chart data of
+        // the next loading
+        List<XYChart.Data<Number, Number>> next
+                = AtlasController.getChartPoints(points(1, 10, "A", 2, 20, "B", 4, 40, "E", 5, 50, "F"), WIDTH);
+        List<XYChart.Data<Number, Number>> changed = new SeriesUpdater().update(series, next);
+        assertEquals(4, series.getData().size());
+        assertSame(a, series.getData().get(0));
+        assertSame(b, series.getData().get(1));
+        assertSame(next.get(2), series.getData().get(2));
+        assertSame(next.get(3), series.getData().get(3));
+        assertEquals(identities(next.subList(2, 4)), identities(changed));
+    }
+}
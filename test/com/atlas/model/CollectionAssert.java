@@ -0,0 +1,33 @@
+package com.atlas.model;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Assertions on collections of data shared by the tests of the model.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+final class CollectionAssert {
+
+    private CollectionAssert() {
+    }
+
+    /**
+     * Assert that two collections hold the same points in the same order.
+     * Coordinates are compared bit for bit, so NaN and -0.0 must come back
+     * as they were written.
+     *
+     * @param expected The expected collection
+     * @param actual The actual collection
+     */
+    static void assertSamePoints(CollectionOfData expected, CollectionOfData actual) {
+        assertEquals(expected.getSize(), actual.getSize());
+        for (int row = 0; row < expected.getSize(); row++) {
+            assertEquals("x of row " + row, Double.doubleToRawLongBits(expected.getX(row)),
+                    Double.doubleToRawLongBits(actual.getX(row)));
+            assertEquals("y of row " + row, Double.doubleToRawLongBits(expected.getY(row)),
+                    Double.doubleToRawLongBits(actual.getY(row)));
+            assertEquals("name of row " + row, expected.getName(row), actual.getName(row));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.atlas.model;
+
+import java.util.ArrayList;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the columns of CollectionOfData: how they grow and shrink, a
+ * frozen collection, and replacing the columns.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class CollectionOfDataTest {
+
+    private static void addPoints(CollectionOfData data, int count) {
+        for (int i = 0; i < count; i++) {
+            data.addPoint(i, -i, "Point " + i);
+        }
+    }
+
+    private static int capacity(CollectionOfData data) {
+        int capacity = data.getXColumn().length;
+        assertEquals(capacity, data.getYColumn().length);
+        assertEquals(capacity, data.getNameColumn().length);
+        return capacity;
+    }
+
+    @Test
+    public void columnsGrowByHalf() {
+        CollectionOfData data = new CollectionOfData();
+        assertEquals(0, capacity(data));
+        addPoints(data, 1);
+        assertEquals(16, capacity(data));
+        addPoints(data, 16);
+        assertEquals(24, capacity(data));
+        addPoints(data, 8);
+        assertEquals(36, capacity(data));
+
+        // A small known capacity grows to the default one
+        data = new CollectionOfData(10);
+        addPoints(data, 11);
+        assertEquals(16, capacity(data));
+
+        data = new CollectionOfData(100);
+        addPoints(data, 100);
+        assertEquals(100, capacity(data));
+        addPoints(data, 1);
+        assertEquals(150, capacity(data));
+        // The points before the growth are kept
+        assertEquals(101, data.getSize());
+        assertEquals(99, data.getX(99), 0);
+        assertEquals("Point 99", data.getName(99));
+        assertEquals("Point 0", data.getName(100));
+    }
+
+    @Test
+    public void capacityIsEnsuredAndTrimmed() {
+        CollectionOfData data = new CollectionOfData();
+        data.ensureCapacity(1000);
+        assertEquals(1000, capacity(data));
+        data.ensureCapacity(10);
+        assertEquals(1000, capacity(data));
+        // Half of the capacity when that is more than asked for
+        data.ensureCapacity(1001);
+        assertEquals(1500, capacity(data));
+
+        addPoints(data, 3);
+        data.trimToSize();
+        assertEquals(3, capacity(data));
+        assertEquals(3, data.getSize());
+        assertEquals(2, data.getX(2), 0);
+        assertEquals(-2, data.getY(2), 0);
+        assertEquals("Point 2", data.getName(2));
+
+        addPoints(data, 1);
+        assertEquals(16, capacity(data));
+    }
+
+    @Test
+    public void frozenCollectionRejectsChanges() {
+        CollectionOfData data = new CollectionOfData();
+        addPoints(data, 5);
+        data.freeze();
+        assertTrue(data.isFrozen());
+        try {
+            data.addPoint(1, 2, "Late");
+            fail("added to a frozen collection");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            data.ensureCapacity(100);
+            fail("grew a frozen collection");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            data.trimToSize();
+            fail("trimmed a frozen collection");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            data.setData(new ArrayList<>());
+            fail("replaced the points of a frozen collection");
+        } catch (UnsupportedOperationException expected) {
+        }
+        assertEquals(5, data.getSize());
+        assertEquals(5, data.getXStatistics().getCount());
+    }
+
+    @Test
+    public void setColumnsDropsIndexes() {
+        CollectionOfData data = new CollectionOfData();
+        addPoints(data, 50);
+        data.buildIndexes();
+        assertTrue(data.getIndexBytes() > 0);
+        assertEquals(10, data.findByX(new CoordinateRange(0, 9)).length);
+        int version = data.getVersion();
+
+        data.setColumns(new double[]{5, 3, 4, 0}, new double[]{1, 2, 3, 0},
+                new String[]{"A", "B", "C", null}, 3);
+        assertEquals(0, data.getIndexBytes());
+        assertNotEquals(version, data.getVersion());
+        assertEquals(3, data.getSize());
+        // The indexes are built again from the new columns
+        assertArrayEquals(new int[]{1, 2, 0}, data.orderByX());
+        assertArrayEquals(new int[]{1, 2}, data.findByX(new CoordinateRange(0, 4)));
+        assertEquals(1, data.findByName("B", false, false).length);
+        assertEquals(3, data.getXStatistics().getCount());
+        assertEquals(5, data.getXStatistics().getMax(), 0);
+    }
+
+    @Test
+    public void emptyMeansNoPoints() {
+        assertTrue(new CollectionOfData().isEmpty());
+        // Room for points is not a point
+        CollectionOfData data = new CollectionOfData(100);
+        assertTrue(data.isEmpty());
+        data.addPoint(1, 1, null);
+        assertFalse(data.isEmpty());
+        data.setData(new ArrayList<>());
+        assertTrue(data.isEmpty());
+        assertEquals(0, data.getSize());
+    }
+}
@@ -0,0 +1,169 @@
+package com.atlas.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the sorted CoordinateIndex, every query compared with a scan of
+ * all points.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class CoordinateIndexTest {
+
+    /**
+     * Random whole x-coordinates, so many are equal, with a few NaN, -0.0
+     * and infinite ones
+     */
+    private static void addPoints(CollectionOfData data, int count, int width, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            double x = random.nextInt(width) - width / 2;
+            if (i % 53 == 0) {
+                x = Double.NaN;
+            } else if (i % 41 == 0) {
+                x = -0.0;
+            } else if (i % 97 == 0) {
+                x = i % 2 == 0 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+            }
+            data.addPoint(x, 0, null);
+        }
+    }
+
+    /**
+     * The rows in the range, ordered by coordinate and by row among equal
+     * coordinates
+     */
+    private static int[] scan(CollectionOfData data, CoordinateRange range) {
+        ArrayList<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < data.getSize(); row++) {
+            if (range.contains(data.getX(row))) {
+                rows.add(row);
+            }
+        }
+        rows.sort(Comparator.comparingDouble((Integer row) -> data.getX(row) + 0.0)
+                .thenComparingInt(row -> row));
+        int[] array = new int[rows.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = rows.get(i);
+        }
+        return array;
+    }
+
+    private static void check(CollectionOfData data, CoordinateIndex index, CoordinateRange range) {
+        int[] expected = scan(data, range);
+        assertArrayEquals(range.toString(), expected, index.find(data, range));
+        assertEquals(range.toString(), expected.length, index.count(data, range));
+    }
+
+    private static void checkRanges(CollectionOfData data, CoordinateIndex index, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < 200; i++) {
+            double min = random.nextInt(120) - 60;
+            double max = min + random.nextInt(30);
+            check(data, index, new CoordinateRange(min, max));
+            check(data, index, new CoordinateRange(min, min));
+        }
+        check(data, index, new CoordinateRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+        check(data, index, new CoordinateRange(Double.NEGATIVE_INFINITY, 0));
+        check(data, index, new CoordinateRange(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void rangesMatchScan() {
+        CollectionOfData data = new CollectionOfData();
+        addPoints(data, 5000, 100, 1);
+        CoordinateIndex index = new CoordinateIndex(true);
+        index.build(data);
+        checkRanges(data, index, 2);
+    }
+
+    @Test
+    public void addedPointsAreMergedIntoTheIndex() {
+        CollectionOfData data = new CollectionOfData();
+        CoordinateIndex index = new CoordinateIndex(true);
+        check(data, index, new CoordinateRange(0, 10));
+        for (int step = 0; step < 12; step++) {
+            // Batches of every size, the first ones smaller than the index
+            addPoints(data, 1 + step * step * 7, 100, step);
+            checkRanges(data, index, step);
+        }
+        assertEquals(data.getSize(), index.count(data,
+                new CoordinateRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY))
+                + scanNaN(data));
+    }
+
+    private static int scanNaN(CollectionOfData data) {
+        int count = 0;
+        for (int row = 0; row < data.getSize(); row++) {
+            if (Double.isNaN(data.getX(row))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void negativeZeroIsZero() {
+        CollectionOfData data = new CollectionOfData();
+        data.addPoint(-0.0, 0, null);
+        data.addPoint(0.0, 0, null);
+        data.addPoint(-Double.MIN_VALUE, 0, null);
+        data.addPoint(Double.MIN_VALUE, 0, null);
+        CoordinateIndex index = new CoordinateIndex(true);
+        assertArrayEquals(new int[]{0, 1}, index.find(data, new CoordinateRange(0, 0)));
+        assertArrayEquals(new int[]{0, 1}, index.find(data, new CoordinateRange(-0.0, -0.0)));
+        assertArrayEquals(new int[]{2, 0, 1}, index.find(data, new CoordinateRange(-1, -0.0)));
+        assertArrayEquals(new int[]{0, 1, 3}, index.find(data, new CoordinateRange(-0.0, 1)));
+        data.addPoint(-0.0, 0, null);
+        assertArrayEquals(new int[]{0, 1, 4}, index.find(data, CoordinateRange.parse("0")));
+    }
+
+    @Test
+    public void notANumberIsNeverFound() {
+        CollectionOfData data = new CollectionOfData();
+        addPoints(data, 2000, 50, 3);
+        CoordinateIndex index = new CoordinateIndex(true);
+        CoordinateRange[] ranges = {
+            new CoordinateRange(Double.NaN, Double.NaN),
+            new CoordinateRange(Double.NaN, 10),
+            new CoordinateRange(-10, Double.NaN),
+            CoordinateRange.parse("NaN")
+        };
+        for (CoordinateRange range : ranges) {
+            check(data, index, range);
+            assertEquals(0, index.count(data, range));
+        }
+    }
+
+    @Test
+    public void emptyAndInvertedRangesFindNothing() {
+        CollectionOfData data = new CollectionOfData();
+        addPoints(data, 3000, 100, 4);
+        CoordinateIndex index = new CoordinateIndex(true);
+        check(data, index, new CoordinateRange(10, 5));
+        check(data, index, new CoordinateRange(Math.nextUp(5.0), 5));
+        check(data, index, new CoordinateRange(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY));
+
+        // Ranges merged from the comparisons under one AND
+        String[] queries = {"x > 10 AND x < 5", "x > 5 AND x < 5", "x > 5 AND x <= 5",
+            "x >= 5 AND x <= 5", "x > 4 AND x < 6", "x <= 3 AND x >= 3 AND x != 3"};
+        for (String text : queries) {
+            Query query = Query.compile(text);
+            Query.Node root = new QueryParser(text, true).parse();
+            if (root instanceof Query.Range) {
+                CoordinateRange range = ((Query.Range) root).getRange();
+                check(data, index, range);
+                assertEquals(text, scan(data, range).length, root.estimate(data));
+            }
+            int[] expected = IntStream.range(0, data.getSize())
+                    .filter(row -> query.matches(data, row)).toArray();
+            assertArrayEquals(text, expected, query.find(data));
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.atlas.model;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static com.atlas.model.CollectionAssert.assertSamePoints;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of MapFile: collections come back as they were written, legacy
+ * files are read and converted, and damaged files are rejected.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class MapFileTest {
+
+    private File file;
+    private File other;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("collection", ".map");
+        other = File.createTempFile("copy", ".map");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        other.delete();
+    }
+
+    private static CollectionOfData points(int size, long seed) {
+        Random random = new Random(seed);
+        CollectionOfData data = new CollectionOfData(size);
+        for (int i = 0; i < size; i++) {
+            data.addPoint(random.nextGaussian() * 1000, random.nextInt(100),
+                    i % 5 == 0 ? null : "Point å中 " + random.nextInt(40));
+        }
+        data.addPoint(Double.NaN, -0.0, "");
+        data.addPoint(Double.NEGATIVE_INFINITY, Double.MAX_VALUE, "Last");
+        return data;
+    }
+
+    private void assertRejected() throws ClassNotFoundException {
+        try {
+            MapFile.read(file);
+            fail("read " + file);
+        } catch (IOException expected) {
+        }
+        try {
+            MapFile.map(file);
+            fail("mapped " + file);
+        } catch (IOException expected) {
+        }
+    }
+
+    private void patchInt(long offset, int value) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(offset);
+            out.writeInt(value);
+        }
+    }
+
+    private void truncate(long length) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(length);
+        }
+    }
+
+    @Test
+    public void plainCollectionIsReadBack() throws IOException, ClassNotFoundException {
+        CollectionOfData data = points(5000, 1);
+        data.serializeToFile(file);
+        assertFalse(MapFile.isLegacy(file));
+        assertSamePoints(data, MapFile.read(file));
+
+        CollectionOfData loaded = new CollectionOfData();
+        loaded.deSerializeFromFile(file);
+        assertSamePoints(data, loaded);
+
+        MapFile.write(new CollectionOfData(), file);
+        assertEquals(0, MapFile.read(file).getSize());
+        assertEquals(0, MapFile.map(file).getSize());
+    }
+
+    @Test
+    public void mappedCollectionIsReadBack() throws IOException, ClassNotFoundException {
+        CollectionOfData data = points(5000, 2);
+        MapFile.write(data, file);
+        CollectionOfData mapped = MapFile.map(file);
+        assertTrue(mapped.isMapped());
+        assertTrue(mapped.isFrozen());
+        assertSamePoints(data, mapped);
+        assertEquals(data.getXStatistics().getMean(), mapped.getXStatistics().getMean(), 1e-9);
+
+        // A mapped collection is copied, or written column by column
+        MapFile.write(mapped, other);
+        assertSamePoints(data, MapFile.read(other));
+        try (RandomAccessFile out = new RandomAccessFile(other, "rw")) {
+            out.setLength(0);
+            MapFile.write(mapped, out.getChannel());
+        }
+        assertSamePoints(data, MapFile.map(other));
+    }
+
+    @Test
+    public void boundsAreReadFromTheHeader() throws IOException {
+        CollectionOfData data = points(5000, 7);
+        data.addPoint(1, Double.NaN, "No y");
+        MapFile.write(data, file);
+        MappedCollectionOfData mapped = (MappedCollectionOfData) MapFile.map(file);
+        // NaN is left out, as in the statistics
+        assertEquals(data.getXStatistics().getMin(), mapped.getMinX(), 0);
+        assertEquals(data.getXStatistics().getMax(), mapped.getMaxX(), 0);
+        assertEquals(data.getYStatistics().getMin(), mapped.getMinY(), 0);
+        assertEquals(data.getYStatistics().getMax(), mapped.getMaxY(), 0);
+        assertEquals(Double.NEGATIVE_INFINITY, mapped.getMinX(), 0);
+        assertEquals(Double.MAX_VALUE, mapped.getMaxY(), 0);
+        assertEquals(mapped.getYStatistics().getMin(), mapped.getMinY(), 0);
+
+        MapFile.write(new CollectionOfData(), file);
+        mapped = (MappedCollectionOfData) MapFile.map(file);
+        assertTrue(Double.isNaN(mapped.getMinX()));
+        assertTrue(Double.isNaN(mapped.getMaxY()));
+    }
+
+    @Test
+    public void selectedCollectionIsReadBack() throws IOException, ClassNotFoundException {
+        CollectionOfData data = points(5000, 3);
+        int[] rows = data.findByX(new CoordinateRange(-500, 500));
+        assertTrue(rows.length > 0 && rows.length < data.getSize());
+        CollectionOfData selected = new CollectionOfData(data.getPoints(rows));
+        MapFile.write(selected, file);
+        CollectionOfData read = MapFile.read(file);
+        assertSamePoints(selected, read);
+        for (int i = 0; i < rows.length; i++) {
+            assertEquals(data.getName(rows[i]), read.getName(i));
+        }
+
+        // A selection of a mapped collection
+        CollectionOfData mapped = MapFile.map(file);
+        int[] again = mapped.findByY(new CoordinateRange(10, 20));
+        CollectionOfData subset = new CollectionOfData(mapped.getPoints(again));
+        MapFile.write(subset, other);
+        assertSamePoints(subset, MapFile.map(other));
+    }
+
+    @Test
+    public void legacyFileIsReadAndConverted() throws IOException, ClassNotFoundException {
+        CollectionOfData data = points(300, 4);
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
+            out.writeObject(new ArrayList<>(data.getData()));
+        }
+        assertTrue(MapFile.isLegacy(file));
+        assertSamePoints(data, MapFile.read(file));
+
+        MapFile.convert(file, other);
+        assertFalse(MapFile.isLegacy(other));
+        assertSamePoints(data, MapFile.read(other));
+        assertSamePoints(data, MapFile.map(other));
+    }
+
+    @Test
+    public void damagedHeaderIsRejected() throws IOException, ClassNotFoundException {
+        CollectionOfData data = points(100, 5);
+
+        MapFile.write(data, file);
+        truncate(30);
+        assertRejected();
+        truncate(0);
+        assertRejected();
+
+        MapFile.write(data, file);
+        patchInt(0, 0x414D4151);
+        assertRejected();
+
+        MapFile.write(data, file);
+        patchInt(4, MapFile.VERSION + 1);
+        assertRejected();
+        patchInt(4, 0);
+        assertRejected();
+        patchInt(4, -1);
+        assertRejected();
+
+        MapFile.write(data, file);
+        patchInt(12, -1);
+        assertRejected();
+        patchInt(12, data.getSize() + 1);
+        assertRejected();
+    }
+
+    @Test
+    public void damagedBodyIsRejected() throws IOException, ClassNotFoundException {
+        CollectionOfData data = points(100, 6);
+
+        // Cut in the y column
+        MapFile.write(data, file);
+        truncate(MapFile.HEADER_SIZE + 8L * data.getSize() + 100);
+        assertRejected();
+
+        // Cut in the name table, in the bytes of the last name or in the
+        // lengths of the names
+        MapFile.write(data, file);
+        truncate(file.length() - 3);
+        assertRejected();
+        MapFile.write(data, file);
+        truncate(MapFile.HEADER_SIZE + 20L * data.getSize() + 6);
+        assertRejected();
+
+        // A negative name count
+        MapFile.write(data, file);
+        patchInt(48, -1);
+        assertRejected();
+
+        // A name outside the name table
+        MapFile.write(data, file);
+        patchInt(MapFile.HEADER_SIZE + 16L * data.getSize(), 1000);
+        try {
+            MapFile.read(file);
+            fail("read " + file);
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.atlas.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of MappedCollectionOfData in small mappings, so values and names are
+ * read across the end of a mapping.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class MappedCollectionOfDataTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("mapped", ".map");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static CollectionOfData points(int size, long seed) {
+        Random random = new Random(seed);
+        CollectionOfData data = new CollectionOfData(size);
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            // Names of every length put the name lengths at every offset
+            name.setLength(0);
+            for (int j = random.nextInt(13); j > 0; j--) {
+                name.append((char) ('a' + random.nextInt(26)));
+            }
+            data.addPoint(random.nextGaussian(), random.nextInt(1000),
+                    i % 9 == 0 ? null : name.toString());
+        }
+        return data;
+    }
+
+    @Test
+    public void pointsAreReadAcrossMappings() throws IOException, ClassNotFoundException {
+        CollectionOfData data = points(2000, 1);
+        MapFile.write(data, file);
+        for (int shift = MappedCollectionOfData.MIN_SEGMENT_SHIFT; shift <= 12; shift++) {
+            MappedCollectionOfData mapped = new MappedCollectionOfData(file, shift);
+            assertEquals(data.getSize(), mapped.getSize());
+            for (int row = 0; row < data.getSize(); row++) {
+                assertEquals(data.getX(row), mapped.getX(row), 0);
+                assertEquals(data.getY(row), mapped.getY(row), 0);
+                assertEquals("shift " + shift + ", row " + row, data.getName(row), mapped.getName(row));
+            }
+            assertArrayEquals(data.findByY(new CoordinateRange(100, 300)),
+                    mapped.findByY(new CoordinateRange(100, 300)));
+        }
+        // The default mapping agrees with reading the file
+        CollectionOfData read = MapFile.read(file);
+        CollectionOfData mapped = MapFile.map(file);
+        for (int row = 0; row < data.getSize(); row++) {
+            assertEquals(read.getName(row), mapped.getName(row));
+        }
+    }
+
+    @Test
+    public void singlePointFileIsReadInTheSmallestMappings() throws IOException {
+        CollectionOfData data = new CollectionOfData();
+        data.addPoint(1.5, -2.5, "Only point");
+        MapFile.write(data, file);
+        MappedCollectionOfData mapped = new MappedCollectionOfData(file,
+                MappedCollectionOfData.MIN_SEGMENT_SHIFT);
+        assertEquals(1.5, mapped.getX(0), 0);
+        assertEquals(-2.5, mapped.getY(0), 0);
+        assertEquals("Only point", mapped.getName(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooSmallMappingsAreRefused() throws IOException {
+        MapFile.write(points(10, 2), file);
+        new MappedCollectionOfData(file, MappedCollectionOfData.MIN_SEGMENT_SHIFT - 1);
+    }
+}
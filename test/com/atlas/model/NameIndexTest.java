@@ -0,0 +1,152 @@
+package com.atlas.model;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of NameIndex, every search checked against a scan of the names:
+ * substrings of three chars or more through the trigrams, shorter ones
+ * through every name, prefixes through the sorted names, with and without
+ * case.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class NameIndexTest {
+
+    private static final String[] WORDS = {
+        "Stock", "STATION", "station", "Harbor", "harBOR", "Åre", "åre", "Tower", "ab", "Ab"
+    };
+
+    /**
+     * Names made of words and numbers in mixed case, some repeated and a few
+     * missing
+     */
+    private static CollectionOfData points(int size, long seed) {
+        Random random = new Random(seed);
+        CollectionOfData data = new CollectionOfData(size);
+        for (int i = 0; i < size; i++) {
+            String name = i % 31 == 0 ? null
+                    : WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(30);
+            data.addPoint(i, i, name);
+        }
+        return data;
+    }
+
+    private static int[] scan(CollectionOfData data, String text, boolean prefix, boolean ignoreCase) {
+        ArrayList<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < data.getSize(); row++) {
+            String name = data.getName(row);
+            if (name == null) {
+                continue;
+            }
+            String target = ignoreCase ? name.toLowerCase(Locale.ROOT) : name;
+            String wanted = ignoreCase ? text.toLowerCase(Locale.ROOT) : text;
+            if (prefix ? target.startsWith(wanted) : target.contains(wanted)) {
+                rows.add(row);
+            }
+        }
+        int[] array = new int[rows.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = rows.get(i);
+        }
+        return array;
+    }
+
+    private static void check(CollectionOfData data, NameIndex index, String text) {
+        for (boolean prefix : new boolean[]{false, true}) {
+            for (boolean ignoreCase : new boolean[]{false, true}) {
+                String what = text + (prefix ? "*" : "") + (ignoreCase ? " ignoring case" : "");
+                int[] expected = scan(data, text, prefix, ignoreCase);
+                assertArrayEquals(what, expected, index.find(data, text, prefix, ignoreCase));
+            }
+        }
+    }
+
+    @Test
+    public void substringsMatchScan() {
+        CollectionOfData data = points(5000, 1);
+        NameIndex index = new NameIndex();
+        index.build(data);
+        String[] texts = {
+            "station", "STATION", "Station", "arbor 1", "HARBOR", "åre 2", "ÅRE", "tock 29",
+            "Tower 3", "ower", "zzz", "n 1", "r 2"
+        };
+        for (String text : texts) {
+            check(data, index, text);
+        }
+    }
+
+    @Test
+    public void shortTextsMatchScan() {
+        CollectionOfData data = points(3000, 2);
+        NameIndex index = new NameIndex();
+        String[] texts = {"", "a", "A", "å", "Å", "ab", "AB", "1", " 2", "q"};
+        for (String text : texts) {
+            check(data, index, text);
+        }
+    }
+
+    @Test
+    public void prefixesMatchScan() {
+        CollectionOfData data = points(3000, 3);
+        NameIndex index = new NameIndex();
+        String[] texts = {"S", "s", "St", "ST", "sta", "Station 1", "har", "Å", "åre 1", "Tower 29",
+            "Towers", "~"};
+        for (String text : texts) {
+            check(data, index, text);
+        }
+    }
+
+    @Test
+    public void pointsAddedAfterAQueryAreFound() {
+        CollectionOfData data = new CollectionOfData();
+        NameIndex index = new NameIndex();
+        data.addPoint(0, 0, "Harbor 1");
+        data.addPoint(1, 1, null);
+        assertArrayEquals(new int[]{0}, index.find(data, "harbor", false, true));
+        data.addPoint(2, 2, "HARBOR 2");
+        data.addPoint(3, 3, "Harbor 1");
+        data.addPoint(4, 4, "Bridge");
+        assertArrayEquals(new int[]{0, 2, 3}, index.find(data, "harbor", false, true));
+        assertArrayEquals(new int[]{0, 3}, index.find(data, "Harbor", false, false));
+        assertArrayEquals(new int[]{0, 2, 3}, index.find(data, "HAR", true, true));
+        assertArrayEquals(new int[]{2}, index.find(data, "HAR", true, false));
+        assertArrayEquals(new int[]{4}, index.find(data, "b", true, true));
+        assertEquals(3, index.estimate(data, "harbor", false));
+        assertEquals(0, index.estimate(data, "tower", false));
+        assertTrue(index.getBytes() > 0);
+
+        // A collection grown from empty
+        CollectionOfData more = points(2000, 4);
+        NameIndex grown = new NameIndex();
+        CollectionOfData growing = new CollectionOfData();
+        for (int row = 0; row < more.getSize(); row++) {
+            growing.addPoint(row, row, more.getName(row));
+            if (row % 97 == 0) {
+                grown.find(growing, "station", false, true);
+            }
+        }
+        check(growing, grown, "station");
+        check(growing, grown, "Har");
+    }
+
+    @Test
+    public void foldingKeepsTheLength() {
+        assertEquals("åre harbor", NameIndex.fold("ÅRE HarBor"));
+        assertEquals("i", NameIndex.fold("İ"));
+        assertTrue(NameIndex.containsFolded("Big HARBOR", "harbor"));
+        assertTrue(NameIndex.containsFolded("x", ""));
+        assertFalse(NameIndex.containsFolded("Harb", "harbor"));
+        assertTrue(NameIndex.foldedAt("Åre", 0, "åre"));
+        assertTrue(NameIndex.foldedAt("Big Åre", 4, "år"));
+        assertFalse(NameIndex.foldedAt("Big Åre", 5, "åre"));
+        // A dotted capital I folds to one char, so it is found at its place
+        assertTrue(NameIndex.containsFolded("İstanbul", "istanbul"));
+    }
+}
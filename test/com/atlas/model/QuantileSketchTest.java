@@ -0,0 +1,263 @@
+package com.atlas.model;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of QuantileSketch and Statistics: quantiles compared with an exact
+ * sort, merged sketches and statistics compared with a single stream.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class QuantileSketchTest {
+
+    /**
+     * Largest rank error allowed, twice the expected error of the default
+     * sketch
+     */
+    private static final double RANK_ERROR = 2 * 1.7 / QuantileSketch.DEFAULT_K;
+
+    private static final int SIZE = 200000;
+
+    private static double[] gaussian(int size, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = random.nextGaussian() * 100;
+        }
+        return values;
+    }
+
+    private static double[] ascending(int size) {
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = i;
+        }
+        return values;
+    }
+
+    private static QuantileSketch sketch(double[] values, int from, int to) {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = from; i < to; i++) {
+            sketch.add(values[i]);
+        }
+        return sketch;
+    }
+
+    /**
+     * Largest distance of a quantile from the exact ranks of the value the
+     * sketch returns for it
+     */
+    private static double rankError(QuantileSketch sketch, double[] sorted) {
+        double worst = 0;
+        for (int percent = 1; percent < 100; percent++) {
+            double quantile = percent / 100.0;
+            double value = sketch.getQuantile(quantile);
+            // The value covers the ranks from its first to its last copy
+            double low = (double) lowerBound(sorted, value) / sorted.length;
+            double high = (double) upperBound(sorted, value) / sorted.length;
+            worst = Math.max(worst, Math.max(low - quantile, quantile - high));
+
+            double exact = (double) upperBound(sorted, sorted[(int) (quantile * sorted.length)])
+                    / sorted.length;
+            worst = Math.max(worst, Math.abs(sketch.getRank(sorted[(int) (quantile * sorted.length)]) - exact));
+        }
+        return worst;
+    }
+
+    private static int lowerBound(double[] sorted, double value) {
+        int at = Arrays.binarySearch(sorted, value);
+        if (at < 0) {
+            return -at - 1;
+        }
+        while (at > 0 && sorted[at - 1] == value) {
+            at--;
+        }
+        return at;
+    }
+
+    private static int upperBound(double[] sorted, double value) {
+        int at = lowerBound(sorted, value);
+        while (at < sorted.length && sorted[at] == value) {
+            at++;
+        }
+        return at;
+    }
+
+    private static void checkStream(String name, double[] values) {
+        QuantileSketch sketch = sketch(values, 0, values.length);
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        assertEquals(name, values.length, sketch.getCount());
+        double error = rankError(sketch, sorted);
+        assertTrue(name + " rank error " + error, error <= RANK_ERROR);
+        assertTrue(name + " keeps " + sketch.getRetained(),
+                sketch.getRetained() <= 5 * QuantileSketch.DEFAULT_K);
+    }
+
+    @Test
+    public void quantilesOfRandomValuesAreWithinTheRankError() {
+        checkStream("gaussian", gaussian(SIZE, 1));
+        Random random = new Random(2);
+        double[] repeated = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            repeated[i] = random.nextInt(20);
+        }
+        checkStream("repeated", repeated);
+    }
+
+    @Test
+    public void quantilesOfSortedValuesAreWithinTheRankError() {
+        double[] up = ascending(SIZE);
+        checkStream("ascending", up);
+        double[] down = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            down[i] = up[SIZE - 1 - i];
+        }
+        checkStream("descending", down);
+    }
+
+    @Test
+    public void smallStreamsAreExact() {
+        QuantileSketch sketch = new QuantileSketch();
+        assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+        assertTrue(Double.isNaN(sketch.getRank(0)));
+        sketch.add(Double.NaN);
+        assertEquals(0, sketch.getCount());
+        for (int i = 1; i <= 99; i++) {
+            sketch.add(i);
+        }
+        assertEquals(50, sketch.getQuantile(0.5), 0);
+        assertEquals(1, sketch.getQuantile(0), 0);
+        assertEquals(99, sketch.getQuantile(1), 0);
+        assertEquals(0.5, sketch.getRank(49.5), 0.01);
+    }
+
+    @Test
+    public void mergedSketchesMatchOneStream() {
+        double[] values = gaussian(SIZE, 3);
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        QuantileSketch whole = sketch(values, 0, values.length);
+
+        // Parts of every size, the first ones smaller than a level
+        QuantileSketch merged = new QuantileSketch();
+        int from = 0;
+        for (int part = 1; from < values.length; part++) {
+            int to = Math.min(values.length, from + part * part * 50);
+            merged.merge(sketch(values, from, to));
+            from = to;
+        }
+        assertEquals(SIZE, merged.getCount());
+        double error = rankError(merged, sorted);
+        assertTrue("merged rank error " + error, error <= RANK_ERROR);
+        assertTrue("merged keeps " + merged.getRetained(),
+                merged.getRetained() <= 5 * QuantileSketch.DEFAULT_K);
+        for (int percent = 1; percent < 100; percent++) {
+            double quantile = percent / 100.0;
+            assertEquals(whole.getRank(merged.getQuantile(quantile)), quantile, 2 * RANK_ERROR);
+        }
+
+        // Merging into a copy leaves the copied sketch alone
+        QuantileSketch copy = new QuantileSketch(whole);
+        copy.merge(whole);
+        assertEquals(2L * SIZE, copy.getCount());
+        assertEquals(SIZE, whole.getCount());
+        assertEquals(0.5, whole.getRank(copy.getQuantile(0.5)), 2 * RANK_ERROR);
+    }
+
+    /**
+     * Values far from zero with a small spread, where the sum of squares
+     * loses the variance, and a few NaN
+     */
+    private static double[] offsetValues(int size, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = i % 101 == 0 ? Double.NaN : 1e9 + random.nextGaussian();
+        }
+        return values;
+    }
+
+    @Test
+    public void mergedStatisticsMatchADirectComputation() {
+        double[] values = offsetValues(100000, 4);
+        Statistics merged = new Statistics();
+        merged.merge(new Statistics());
+        int from = 0;
+        for (int part = 0; from < values.length; part++) {
+            int to = Math.min(values.length, from + 1 + part * 37);
+            Statistics statistics = new Statistics();
+            for (int i = from; i < to; i++) {
+                statistics.add(values[i]);
+            }
+            merged.merge(statistics);
+            from = to;
+        }
+
+        // Two passes: the mean, then the squares around it
+        long count = 0;
+        long missing = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            if (Double.isNaN(value)) {
+                missing++;
+            } else {
+                count++;
+                sum += value - 1e9;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        double mean = 1e9 + sum / count;
+        double squares = 0;
+        for (double value : values) {
+            if (!Double.isNaN(value)) {
+                squares += (value - mean) * (value - mean);
+            }
+        }
+        double variance = squares / (count - 1);
+
+        assertEquals(count, merged.getCount());
+        assertEquals(missing, merged.getMissing());
+        assertEquals(min, merged.getMin(), 0);
+        assertEquals(max, merged.getMax(), 0);
+        assertEquals(min, merged.getQuantile(0), 0);
+        assertEquals(max, merged.getQuantile(1), 0);
+        assertEquals(mean, merged.getMean(), 1e-6);
+        assertEquals(variance, merged.getVariance(), variance * 1e-6);
+        assertEquals(1e9, merged.getQuantile(0.5), 0.1);
+
+        Statistics whole = new Statistics();
+        for (double value : values) {
+            whole.add(value);
+        }
+        assertEquals(whole.getMean(), merged.getMean(), 1e-6);
+        assertEquals(whole.getVariance(), merged.getVariance(), variance * 1e-6);
+    }
+
+    @Test
+    public void emptyStatisticsHaveNoValues() {
+        Statistics statistics = new Statistics();
+        assertTrue(Double.isNaN(statistics.getMean()));
+        assertTrue(Double.isNaN(statistics.getMin()));
+        statistics.add(Double.NaN);
+        statistics.add(5);
+        assertEquals(1, statistics.getMissing());
+        assertEquals(5, statistics.getMean(), 0);
+        assertTrue(Double.isNaN(statistics.getVariance()));
+
+        Statistics copy = new Statistics(statistics);
+        copy.merge(new Statistics());
+        statistics.merge(copy);
+        assertEquals(2, statistics.getCount());
+        assertEquals(2, statistics.getMissing());
+        assertEquals(0, statistics.getVariance(), 0);
+        assertEquals(1, copy.getCount());
+    }
+}
@@ -0,0 +1,224 @@
+package com.atlas.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of Query and QueryParser, every query checked against a predicate
+ * written by hand and tested on every point.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class QueryTest {
+
+    private static final String[] WORDS = {
+        "Stock", "Harbor", "Station", "Tower", "Bridge", "Market", "Park"
+    };
+
+    /**
+     * What a query should match, written by hand
+     */
+    private interface Expected {
+
+        boolean test(double x, double y, String name);
+    }
+
+    /**
+     * Points with whole coordinates, so equal values are common, names like
+     * "Harbor 12", a few names missing and a few NaN coordinates
+     */
+    private static CollectionOfData points(int size) {
+        Random random = new Random(1);
+        CollectionOfData data = new CollectionOfData(size);
+        for (int i = 0; i < size; i++) {
+            double x = i % 211 == 0 ? Double.NaN : random.nextInt(1000);
+            double y = random.nextInt(100);
+            String name = i % 53 == 0 ? null
+                    : WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(20);
+            data.addPoint(x, y, name);
+        }
+        return data;
+    }
+
+    private static int[] scan(CollectionOfData data, Expected expected) {
+        ArrayList<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < data.getSize(); row++) {
+            if (expected.test(data.getX(row), data.getY(row), data.getName(row))) {
+                rows.add(row);
+            }
+        }
+        int[] array = new int[rows.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = rows.get(i);
+        }
+        return array;
+    }
+
+    private static boolean contains(String name, String text) {
+        return name != null && name.toLowerCase().contains(text.toLowerCase());
+    }
+
+    private static void check(CollectionOfData data, String text, Expected expected) {
+        Query query = Query.compile(text);
+        int[] rows = scan(data, expected);
+        assertArrayEquals(text, rows, query.find(data));
+        for (int row = 0; row < data.getSize(); row++) {
+            assertEquals(text + " row " + row,
+                    expected.test(data.getX(row), data.getY(row), data.getName(row)),
+                    query.matches(data, row));
+        }
+    }
+
+    @Test
+    public void selectiveQueriesMatchScan() {
+        CollectionOfData data = points(20000);
+        check(data, "x = 17", (x, y, name) -> x == 17);
+        check(data, "x >= 100 AND x < 110 AND y > 50", (x, y, name) -> x >= 100 && x < 110 && y > 50);
+        check(data, "x = 17 AND name ~ har", (x, y, name) -> x == 17 && contains(name, "har"));
+        check(data, "name = \"harbor 12\" AND y <= 30",
+                (x, y, name) -> "harbor 12".equalsIgnoreCase(name) && y <= 30);
+        check(data, "name ~ \"Tower 1*\" AND NOT x > 500",
+                (x, y, name) -> name != null && name.startsWith("Tower 1") && !(x > 500));
+    }
+
+    @Test
+    public void unselectiveQueriesMatchScan() {
+        CollectionOfData data = points(20000);
+        check(data, "y >= 0", (x, y, name) -> y >= 0);
+        check(data, "x < 900 AND name !~ park", (x, y, name) -> x < 900 && !contains(name, "park"));
+        check(data, "x = 3 OR y = 7", (x, y, name) -> x == 3 || y == 7);
+        check(data, "NOT (x > 10 OR y > 10)", (x, y, name) -> !(x > 10 || y > 10));
+        check(data, "name != \"Bridge 3\"", (x, y, name) -> !"bridge 3".equalsIgnoreCase(name));
+    }
+
+    @Test
+    public void andBindsStrongerThanOr() {
+        CollectionOfData data = points(5000);
+        check(data, "x = 1 OR x = 2 AND y = 3", (x, y, name) -> x == 1 || (x == 2 && y == 3));
+        check(data, "(x = 1 OR x = 2) AND y = 3", (x, y, name) -> (x == 1 || x == 2) && y == 3);
+        check(data, "y < 5 and x < 500 or y > 95", (x, y, name) -> (y < 5 && x < 500) || y > 95);
+        check(data, "y < 5 && x < 500 || y > 95", (x, y, name) -> (y < 5 && x < 500) || y > 95);
+        assertEquals("x = 1.0 OR (x = 2.0 AND y = 3.0)", Query.compile("x = 1 OR x = 2 AND y = 3").toString());
+    }
+
+    @Test
+    public void notBindsStrongerThanAnd() {
+        CollectionOfData data = points(5000);
+        check(data, "NOT x < 500 AND y < 50", (x, y, name) -> !(x < 500) && y < 50);
+        check(data, "! y < 50 OR x = 4", (x, y, name) -> !(y < 50) || x == 4);
+        check(data, "NOT NOT y = 4", (x, y, name) -> y == 4);
+    }
+
+    @Test
+    public void bangIsNotOnlyBeforeATerm() {
+        CollectionOfData data = points(5000);
+        check(data, "x != 5", (x, y, name) -> !(x == 5));
+        check(data, "!x = 5", (x, y, name) -> !(x == 5));
+        check(data, "name !~ station", (x, y, name) -> !contains(name, "station"));
+        check(data, "!name ~ station", (x, y, name) -> !contains(name, "station"));
+        check(data, "!(y != 5)", (x, y, name) -> y == 5);
+        assertEquals("NOT (x = 5.0)", Query.compile("x != 5").toString());
+    }
+
+    @Test
+    public void strictBoundsExcludeTheValue() {
+        CollectionOfData data = new CollectionOfData();
+        data.addPoint(10, 0, null);
+        data.addPoint(Math.nextUp(10.0), 0, null);
+        data.addPoint(Math.nextDown(10.0), 0, null);
+        assertArrayEquals(new int[]{1}, Query.compile("x > 10").find(data));
+        assertArrayEquals(new int[]{2}, Query.compile("x < 10").find(data));
+        assertArrayEquals(new int[]{0, 1}, Query.compile("x >= 10").find(data));
+        assertArrayEquals(new int[]{0, 2}, Query.compile("x <= 10").find(data));
+        assertArrayEquals(new int[]{0}, Query.compile("x > 9.5 AND x < 10.5 AND x = 10").find(data));
+        assertEquals("x >= " + Math.nextUp(10.0), Query.compile("x > 10").toString());
+    }
+
+    @Test
+    public void rangesUnderAnAndAreMerged() {
+        CollectionOfData data = points(5000);
+        assertEquals("x >= 3.0 AND x <= 7.0", Query.compile("x >= 3 AND x <= 9 AND x <= 7 AND x > 2").toString());
+        check(data, "x >= 3 AND x <= 9 AND x <= 7 AND x > 2", (x, y, name) -> x >= 3 && x <= 7);
+        check(data, "x >= 3 AND (x <= 7 AND y < 20)", (x, y, name) -> x >= 3 && x <= 7 && y < 20);
+    }
+
+    @Test
+    public void contradictoryRangesFindNothing() {
+        CollectionOfData data = points(5000);
+        check(data, "x > 10 AND x < 5", (x, y, name) -> false);
+        check(data, "x > 5 AND x < 5", (x, y, name) -> false);
+        check(data, "x >= 5 AND x <= 5", (x, y, name) -> x == 5);
+        check(data, "y > 10 AND y < 5 OR x = 8", (x, y, name) -> x == 8);
+        check(data, "NOT (x > 10 AND x < 5)", (x, y, name) -> true);
+    }
+
+    @Test
+    public void invalidQueriesAreRejected() {
+        String[] invalid = {
+            "", "x", "x >", "x > abc", "size = 1", "(x = 1", "x = 1)", "x = 1 y = 2",
+            "name ~ \"abc", "name < abc", "x ~ 1", "x = 1 AND", "NOT"
+        };
+        for (String text : invalid) {
+            try {
+                Query.compile(text);
+                fail("Accepted: " + text);
+            } catch (IllegalArgumentException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage().contains("at position"));
+            }
+        }
+    }
+
+    @Test
+    public void equalQueriesAreEqual() {
+        assertEquals(Query.compile("x>1 and y<2"), Query.compile("y < 2 AND x > 1"));
+        assertFalse(Query.compile("x > 1").equals(Query.compile("x >= 1")));
+        assertFalse(Query.compile("name ~ har").equals(Query.compile("name ~ har", false)));
+    }
+
+    @Test
+    public void everyNodeFindsItsPoints() {
+        CollectionOfData data = points(5000);
+        String[] texts = {"x = 3 OR y = 7", "NOT x > 10", "x < 100 AND name ~ har", "y = 4",
+            "name ~ \"Tower 1*\""};
+        for (String text : texts) {
+            Query.Node node = new QueryParser(text, true).parse();
+            int[] rows = node.find(data);
+            assertArrayEquals(text, Query.compile(text).find(data), rows);
+            for (int row = 0; row < data.getSize(); row++) {
+                assertEquals(text + " row " + row, node.test(data, row),
+                        Arrays.binarySearch(rows, row) >= 0);
+            }
+        }
+    }
+
+    @Test
+    public void namesMatchCaseWhenAsked() {
+        CollectionOfData data = points(20000);
+        String[] texts = {"name ~ Har", "name ~ har", "name ~ \"Tower 1*\"", "name ~ \"tower 1*\"",
+            "name = \"Harbor 12\"", "name ~ arbor AND x < 100"};
+        for (String text : texts) {
+            Query query = Query.compile(text, false);
+            Query ignoring = Query.compile(text);
+            int[] rows = query.find(data);
+            for (int row = 0; row < data.getSize(); row++) {
+                assertEquals(text + " row " + row, query.matches(data, row),
+                        Arrays.binarySearch(rows, row) >= 0);
+                if (query.matches(data, row)) {
+                    assertTrue(text + " row " + row, ignoring.matches(data, row));
+                }
+            }
+        }
+        assertEquals(0, Query.compile("name ~ har", false).find(data).length);
+        assertArrayEquals(Query.compile("name ~ Har", false).find(data),
+                Query.compile("name ~ har").find(data));
+        assertArrayEquals(scan(data, (x, y, name) -> "Harbor 12".equals(name)),
+                Query.compile("name = \"Harbor 12\"", false).find(data));
+    }
+}
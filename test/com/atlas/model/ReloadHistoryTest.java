@@ -0,0 +1,148 @@
+package com.atlas.model;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of ReloadHistory: the memory cap, the rollup of old reloads into
+ * coarser tiers, and which snapshot is shown at a moment.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class ReloadHistoryTest {
+
+    private static final int POINTS = 100;
+
+    /**
+     * Estimated memory of one collection of POINTS points without indexes
+     */
+    private static final long SNAPSHOT_BYTES = 128 + 64 * POINTS;
+
+    private static CollectionOfData points(long seed) {
+        CollectionOfData data = new CollectionOfData(POINTS);
+        for (int i = 0; i < POINTS; i++) {
+            data.addPoint(seed, i, "Point " + i);
+        }
+        data.freeze();
+        return data;
+    }
+
+    /**
+     * The snapshot taken last at or before a moment, found by a scan of all
+     * snapshots
+     */
+    private static ReloadHistory.Snapshot scan(List<ReloadHistory.Snapshot> snapshots, long time) {
+        ReloadHistory.Snapshot found = null;
+        for (ReloadHistory.Snapshot snapshot : snapshots) {
+            if (snapshot.getTime() <= time && (found == null || snapshot.getTime() > found.getTime())) {
+                found = snapshot;
+            }
+        }
+        return found;
+    }
+
+    @Test
+    public void memoryStaysUnderTheCap() {
+        long maxBytes = 3 * 4 * SNAPSHOT_BYTES;
+        ReloadHistory history = new ReloadHistory(maxBytes);
+        CollectionOfData latest = null;
+        for (int i = 0; i < 5000; i++) {
+            latest = points(i);
+            history.add(i * 7000L, latest);
+            assertTrue("bytes " + history.getBytes(), history.getBytes() <= maxBytes);
+        }
+        assertTrue("size " + history.size(), history.size() <= 12);
+        assertSame(latest, history.get(Long.MAX_VALUE).getData());
+
+        history.clear();
+        assertEquals(0, history.size());
+        assertEquals(0, history.getBytes());
+        assertNull(history.get(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void latestSnapshotIsKeptOverTheCap() {
+        ReloadHistory history = new ReloadHistory(SNAPSHOT_BYTES / 2);
+        CollectionOfData first = points(1);
+        CollectionOfData second = points(2);
+        history.add(1000, first);
+        history.add(2000, second);
+        assertEquals(1, history.size());
+        assertSame(second, history.get(5000).getData());
+        assertNull(history.get(1500));
+    }
+
+    @Test
+    public void oldReloadsAreRolledUpPerPeriod() {
+        // Room for six snapshots in each tier: a minute of reloads every
+        // ten seconds, six minutes and an hour in ten minute periods
+        ReloadHistory history = new ReloadHistory(3 * 6 * SNAPSHOT_BYTES, 60000, 600000);
+        Map<Long, CollectionOfData> added = new HashMap<>();
+        int reloads = 360;
+        for (int i = 0; i < reloads; i++) {
+            long time = i * 10000L;
+            CollectionOfData data = points(i);
+            added.put(time, data);
+            history.add(time, data);
+        }
+
+        List<ReloadHistory.Snapshot> snapshots = history.getSnapshots(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(history.size(), snapshots.size());
+        assertTrue("size " + snapshots.size(), snapshots.size() <= 18);
+        int counted = 0;
+        long previous = Long.MIN_VALUE;
+        for (ReloadHistory.Snapshot snapshot : snapshots) {
+            assertTrue(snapshot.getFrom() > previous);
+            assertTrue(snapshot.getTime() >= snapshot.getFrom());
+            previous = snapshot.getTime();
+            // A rolled up snapshot is the last reload of its period and
+            // counts the reloads from the first one
+            assertSame(added.get(snapshot.getTime()), snapshot.getData());
+            assertEquals(snapshot.getReloads(), (snapshot.getTime() - snapshot.getFrom()) / 10000 + 1);
+            assertEquals(snapshot.getFrom() / 600000, snapshot.getTime() / 600000);
+            counted += snapshot.getReloads();
+        }
+        assertEquals(reloads, counted);
+
+        // The last minute in detail, the first ten minutes in one snapshot
+        ReloadHistory.Snapshot first = snapshots.get(0);
+        assertEquals(0, first.getFrom());
+        assertEquals(590000, first.getTime());
+        assertEquals(60, first.getReloads());
+        List<ReloadHistory.Snapshot> lastMinute = history.getSnapshots(3540000, 3600000);
+        assertEquals(6, lastMinute.size());
+        for (ReloadHistory.Snapshot snapshot : lastMinute) {
+            assertEquals(1, snapshot.getReloads());
+        }
+    }
+
+    @Test
+    public void latestSnapshotAtAMomentWinsAcrossTiers() {
+        ReloadHistory history = new ReloadHistory(3 * 3 * SNAPSHOT_BYTES, 60000, 600000);
+        for (int i = 0; i < 500; i++) {
+            history.add(i * 13000L, points(i));
+        }
+        List<ReloadHistory.Snapshot> snapshots = history.getSnapshots(Long.MIN_VALUE, Long.MAX_VALUE);
+        long end = 500 * 13000L;
+        for (long time = -1000; time <= end; time += 1000) {
+            assertSame("at " + time, scan(snapshots, time), history.get(time));
+        }
+        // A moment inside a rolled up period shows the snapshot before it
+        ReloadHistory.Snapshot rolled = null;
+        for (ReloadHistory.Snapshot snapshot : snapshots) {
+            if (snapshot.getReloads() > 1) {
+                rolled = snapshot;
+                break;
+            }
+        }
+        assertTrue(rolled != null);
+        ReloadHistory.Snapshot before = history.get(rolled.getTime() - 1);
+        assertTrue(before == null || before.getTime() < rolled.getFrom());
+    }
+}
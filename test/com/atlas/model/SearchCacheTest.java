@@ -0,0 +1,147 @@
+package com.atlas.model;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of SearchCache: results found again, refined queries filtering a
+ * kept result, and results forgotten when the collection changes.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class SearchCacheTest {
+
+    private static final String[] WORDS = {"Harbor", "harbor", "Station", "Tower"};
+
+    private static CollectionOfData points(int size, long seed) {
+        Random random = new Random(seed);
+        CollectionOfData data = new CollectionOfData(size);
+        for (int i = 0; i < size; i++) {
+            data.addPoint(random.nextInt(100), random.nextInt(100),
+                    WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(20));
+        }
+        return data;
+    }
+
+    /**
+     * Search like the controller: filter the kept rows of a refined query,
+     * or search the whole collection, and keep the result
+     */
+    private static int[] search(SearchCache cache, CollectionOfData data, SearchQuery query) {
+        int[] kept = cache.getRows(data, query);
+        int[] rows = kept == null ? query.find(data) : query.filter(data, kept);
+        cache.put(data, query, rows, new CollectionOfData(data.getPoints(rows)));
+        return rows;
+    }
+
+    @Test
+    public void repeatedQueryIsFoundAgain() {
+        CollectionOfData data = points(2000, 1);
+        SearchCache cache = new SearchCache(1 << 20);
+        SearchQuery query = SearchQuery.byX(new CoordinateRange(10, 20));
+        assertNull(cache.getResult(data, query));
+        int[] rows = query.find(data);
+        CollectionOfData result = new CollectionOfData(data.getPoints(rows));
+        cache.put(data, query, rows, result);
+        assertSame(result, cache.getResult(data, SearchQuery.byX(new CoordinateRange(10, 20))));
+        assertSame(rows, cache.getRows(data, query));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void refinedQueriesFilterTheFewestKeptRows() {
+        CollectionOfData data = points(5000, 2);
+        SearchCache cache = new SearchCache(1 << 20);
+        search(cache, data, SearchQuery.byX(new CoordinateRange(0, 50)));
+        int[] narrow = search(cache, data, SearchQuery.byX(new CoordinateRange(10, 30)));
+
+        // Inside both kept ranges, the narrower one is filtered
+        SearchQuery inside = SearchQuery.byX(new CoordinateRange(15, 20));
+        assertSame(narrow, cache.getRows(data, inside));
+        // Not inside any kept range
+        assertNull(cache.getRows(data, SearchQuery.byX(new CoordinateRange(40, 60))));
+        assertNull(cache.getRows(data, SearchQuery.byY(new CoordinateRange(15, 20))));
+
+        // Typing on in the name field
+        String[] typed = {"h", "ha", "har", "harb", "harbor 1"};
+        for (boolean ignoreCase : new boolean[]{true, false}) {
+            cache.clear();
+            for (int i = 0; i < typed.length; i++) {
+                SearchQuery query = SearchQuery.byName(typed[i], false, ignoreCase);
+                if (i > 0) {
+                    SearchQuery before = SearchQuery.byName(typed[i - 1], false, ignoreCase);
+                    // The fewest kept rows, those of the text typed before
+                    assertEquals(cache.getRows(data, before).length, cache.getRows(data, query).length);
+                }
+                assertArrayEquals(typed[i], query.find(data), search(cache, data, query));
+            }
+        }
+        // A name that matches case also matches regardless of case, not the
+        // other way around
+        cache.clear();
+        int[] ignoring = search(cache, data, SearchQuery.byName("arb", false, true));
+        assertSame(ignoring, cache.getRows(data, SearchQuery.byName("Harb", false, false)));
+        cache.clear();
+        search(cache, data, SearchQuery.byName("arb", false, false));
+        assertNull(cache.getRows(data, SearchQuery.byName("Harb", false, true)));
+
+        // A prefix only refines a longer prefix
+        search(cache, data, SearchQuery.byName("Har", true, false));
+        SearchQuery longer = SearchQuery.byName("Harbor", true, false);
+        assertArrayEquals(longer.find(data), search(cache, data, longer));
+        assertNull(cache.getRows(data, SearchQuery.byName("Tow", true, false)));
+    }
+
+    @Test
+    public void changedCollectionForgetsTheResults() {
+        CollectionOfData data = points(1000, 3);
+        SearchCache cache = new SearchCache(1 << 20);
+        SearchQuery query = SearchQuery.byX(new CoordinateRange(10, 20));
+        search(cache, data, query);
+
+        // Points added to the same collection
+        data.addPoint(15, 15, "Added");
+        assertNull(cache.getResult(data, query));
+        assertNull(cache.getRows(data, SearchQuery.byX(new CoordinateRange(12, 14))));
+        int[] rows = search(cache, data, query);
+        assertEquals(data.getSize() - 1, rows[rows.length - 1]);
+
+        // Another collection shown in the tab
+        CollectionOfData reloaded = points(1000, 3);
+        assertNull(cache.getResult(reloaded, query));
+        assertNull(cache.getRows(data, query));
+
+        // A frozen collection keeps its results
+        reloaded.freeze();
+        search(cache, reloaded, query);
+        assertArrayEquals(query.find(reloaded), cache.getRows(reloaded, query));
+    }
+
+    @Test
+    public void leastRecentlyUsedResultsAreDroppedOverTheCap() {
+        CollectionOfData data = points(1000, 4);
+        SearchQuery first = SearchQuery.byX(new CoordinateRange(1, 1));
+        SearchQuery second = SearchQuery.byX(new CoordinateRange(2, 2));
+        SearchQuery third = SearchQuery.byX(new CoordinateRange(3, 3));
+        // Room for two of the three results
+        long bytes = 3 * 128 + 4 * (first.find(data).length + second.find(data).length
+                + third.find(data).length);
+        SearchCache cache = new SearchCache(bytes - 1);
+        search(cache, data, first);
+        search(cache, data, second);
+        cache.getResult(data, first);
+        search(cache, data, third);
+        assertNull(cache.getResult(data, second));
+        assertEquals(first.find(data).length, cache.getResult(data, first).getSize());
+        assertEquals(third.find(data).length, cache.getResult(data, third).getSize());
+
+        // A result over the cap is not kept
+        SearchQuery all = SearchQuery.byX(new CoordinateRange(0, 100));
+        search(cache, data, all);
+        assertNull(cache.getResult(data, all));
+    }
+}
@@ -0,0 +1,397 @@
+package com.atlas.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static com.atlas.model.CollectionAssert.assertSamePoints;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of SnapshotJournal: what is written is recovered, also after a
+ * failed write.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class SnapshotJournalTest {
+
+    private static final long WAIT = 10000;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("journal", ".jnl");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+        new File(file.getPath() + ".lock").delete();
+    }
+
+    private static CollectionOfData points(int size, long seed) {
+        Random random = new Random(seed);
+        CollectionOfData data = new CollectionOfData(size);
+        for (int i = 0; i < size; i++) {
+            data.addPoint(random.nextInt(1000), random.nextGaussian(),
+                    i % 7 == 0 ? null : "Point " + random.nextInt(50));
+        }
+        data.freeze();
+        return data;
+    }
+
+    private Map<Integer, SnapshotJournal.Snapshot> recover() throws IOException {
+        return new SnapshotJournal(file, Long.MAX_VALUE, 0).recover();
+    }
+
+    @Test
+    public void latestSnapshotOfEveryOpenTabIsRecovered() throws IOException {
+        SnapshotJournal journal = new SnapshotJournal(file, Long.MAX_VALUE, 0);
+        CollectionOfData old = points(300, 7);
+        CollectionOfData latest = points(200, 8);
+        CollectionOfData other = points(0, 9);
+        journal.append(1, 10, old);
+        journal.append(2, 11, points(10, 10));
+        journal.close(WAIT);
+        journal.append(1, 20, latest);
+        journal.append(3, 21, other);
+        journal.remove(2);
+        journal.close(WAIT);
+        assertNull(journal.getLastError());
+
+        Map<Integer, SnapshotJournal.Snapshot> recovered = recover();
+        assertEquals(2, recovered.size());
+        assertSamePoints(latest, recovered.get(1).getData());
+        assertEquals(20, recovered.get(1).getTime());
+        assertSamePoints(other, recovered.get(3).getData());
+        assertTrue(recovered.get(1).getData().isFrozen());
+    }
+
+    @Test
+    public void wrongChecksumFallsBackToTheSnapshotBefore() throws IOException {
+        SnapshotJournal journal = new SnapshotJournal(file, Long.MAX_VALUE, 0);
+        CollectionOfData first = points(100, 11);
+        journal.append(1, 10, first);
+        journal.close(WAIT);
+        journal.append(1, 20, points(100, 12));
+        journal.close(WAIT);
+        try (RandomAccessFile damaged = new RandomAccessFile(file, "rw")) {
+            // The last byte is in the name table of the second snapshot
+            damaged.seek(damaged.length() - 1);
+            int last = damaged.read();
+            damaged.seek(damaged.length() - 1);
+            damaged.write(last ^ 0xFF);
+        }
+
+        Map<Integer, SnapshotJournal.Snapshot> recovered = recover();
+        assertSamePoints(first, recovered.get(1).getData());
+        assertEquals(10, recovered.get(1).getTime());
+    }
+
+    @Test
+    public void tornRecordAtTheEndIsCutOff() throws IOException {
+        SnapshotJournal journal = new SnapshotJournal(file, Long.MAX_VALUE, 0);
+        CollectionOfData first = points(100, 13);
+        journal.append(1, 10, first);
+        journal.close(WAIT);
+        long whole = file.length();
+        journal.append(2, 20, points(100, 14));
+        journal.close(WAIT);
+        try (RandomAccessFile torn = new RandomAccessFile(file, "rw")) {
+            torn.setLength(whole + (file.length() - whole) / 2);
+        }
+
+        Map<Integer, SnapshotJournal.Snapshot> recovered = recover();
+        assertEquals(1, recovered.size());
+        assertSamePoints(first, recovered.get(1).getData());
+        assertEquals(whole, file.length());
+    }
+
+    @Test
+    public void compactionKeepsTheLatestSnapshots() throws IOException {
+        SnapshotJournal journal = new SnapshotJournal(file, 1, 0);
+        CollectionOfData latest = null;
+        for (int i = 0; i < 20; i++) {
+            latest = points(500, 100 + i);
+            journal.append(1, i, latest);
+            journal.close(WAIT);
+        }
+        CollectionOfData other = points(500, 15);
+        journal.append(2, 50, other);
+        journal.append(3, 51, points(500, 16));
+        journal.remove(3);
+        journal.close(WAIT);
+        assertNull(journal.getLastError());
+        assertTrue("Not compacted: " + file.length(), file.length() < 5 * 500 * 20);
+
+        Map<Integer, SnapshotJournal.Snapshot> recovered = recover();
+        assertEquals(2, recovered.size());
+        assertSamePoints(latest, recovered.get(1).getData());
+        assertEquals(19, recovered.get(1).getTime());
+        assertSamePoints(other, recovered.get(2).getData());
+    }
+
+    @Test
+    public void journalHeldElsewhereIsNotUsed() throws IOException {
+        SnapshotJournal owner = new SnapshotJournal(file, Long.MAX_VALUE, 0);
+        SnapshotJournal other = new SnapshotJournal(file, Long.MAX_VALUE, 0);
+        try {
+            assertTrue(owner.lock());
+            assertTrue(owner.lock());
+            CollectionOfData kept = points(50, 18);
+            owner.append(1, 10, kept);
+            owner.close(WAIT);
+            long length = file.length();
+
+            assertFalse(other.lock());
+            assertTrue(other.isRefused());
+            assertTrue(other.recover().isEmpty());
+            other.append(1, 20, points(50, 19));
+            other.remove(1);
+            other.close(WAIT);
+            assertEquals(length, file.length());
+
+            owner.unlock();
+            SnapshotJournal next = new SnapshotJournal(file, Long.MAX_VALUE, 0);
+            assertTrue(next.lock());
+            assertSamePoints(kept, next.recover().get(1).getData());
+            next.unlock();
+        } finally {
+            owner.unlock();
+            other.unlock();
+        }
+    }
+
+    @Test
+    public void recoverAfterAnAppendIsRejected() throws IOException {
+        SnapshotJournal journal = new SnapshotJournal(file, Long.MAX_VALUE, 0);
+        assertTrue(journal.recover().isEmpty());
+        journal.append(1, 10, points(10, 17));
+        try {
+            journal.recover();
+            fail("Recovered after an append");
+        } catch (IllegalStateException ex) {
+            // expected
+        } finally {
+            journal.close(WAIT);
+        }
+    }
+
+    @Test
+    public void failedWriteDoesNotHideLaterRecords() throws IOException {
+        FailingJournal journal = new FailingJournal(file);
+        CollectionOfData first = points(100, 1);
+        CollectionOfData failed = points(50000, 2);
+        CollectionOfData last = points(100, 3);
+        journal.append(1, 10, first);
+        journal.close(WAIT);
+        journal.budget = 100000;
+        journal.append(2, 20, failed);
+        journal.close(WAIT);
+        assertNotNull(journal.getLastError());
+        journal.budget = Long.MAX_VALUE;
+        journal.append(3, 30, last);
+        journal.close(WAIT);
+
+        Map<Integer, SnapshotJournal.Snapshot> recovered = recover();
+        assertEquals(2, recovered.size());
+        assertSamePoints(first, recovered.get(1).getData());
+        assertNull(recovered.get(2));
+        assertSamePoints(last, recovered.get(3).getData());
+        assertEquals(30, recovered.get(3).getTime());
+    }
+
+    @Test
+    public void failedWriteIsCutOffWhenTheJournalIsOpenedAgain() throws IOException {
+        FailingJournal journal = new FailingJournal(file);
+        CollectionOfData first = points(100, 4);
+        CollectionOfData last = points(100, 5);
+        journal.append(1, 10, first);
+        journal.close(WAIT);
+        journal.budget = 1000;
+        journal.failTruncate = true;
+        journal.append(2, 20, points(5000, 6));
+        journal.close(WAIT);
+        assertNotNull(journal.getLastError());
+        journal.budget = Long.MAX_VALUE;
+        journal.failTruncate = false;
+        journal.append(3, 30, last);
+        journal.close(WAIT);
+
+        Map<Integer, SnapshotJournal.Snapshot> recovered = recover();
+        assertSamePoints(first, recovered.get(1).getData());
+        assertNull(recovered.get(2));
+        assertSamePoints(last, recovered.get(3).getData());
+    }
+
+    /**
+     * A journal whose channels fail once a number of bytes is written
+     */
+    private static class FailingJournal extends SnapshotJournal {
+
+        private volatile long budget = Long.MAX_VALUE;
+        private volatile boolean failTruncate;
+
+        FailingJournal(File file) {
+            super(file, Long.MAX_VALUE, 0);
+        }
+
+        @Override
+        FileChannel open(Path path, StandardOpenOption... options) throws IOException {
+            return new FailingChannel(FileChannel.open(path, options), this);
+        }
+    }
+
+    /**
+     * A channel that writes to a file until the budget of its journal is
+     * used up, and then fails in the middle of a write
+     */
+    private static class FailingChannel extends FileChannel {
+
+        private final FileChannel file;
+        private final FailingJournal journal;
+
+        FailingChannel(FileChannel file, FailingJournal journal) {
+            this.file = file;
+            this.journal = journal;
+        }
+
+        private ByteBuffer allowed(ByteBuffer source) throws IOException {
+            if (journal.budget <= 0) {
+                throw new IOException("Injected failure");
+            }
+            if (source.remaining() <= journal.budget) {
+                journal.budget -= source.remaining();
+                return source;
+            }
+            ByteBuffer part = source.duplicate();
+            part.limit(part.position() + (int) journal.budget);
+            journal.budget = 0;
+            return part;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            ByteBuffer part = allowed(source);
+            int count = file.write(part);
+            if (part != source) {
+                source.position(source.position() + count);
+            }
+            return count;
+        }
+
+        @Override
+        public int write(ByteBuffer source, long position) throws IOException {
+            ByteBuffer part = allowed(source);
+            int count = file.write(part, position);
+            if (part != source) {
+                source.position(source.position() + count);
+            }
+            return count;
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources, int offset, int length) throws IOException {
+            long count = 0;
+            for (int i = offset; i < offset + length; i++) {
+                count += write(sources[i]);
+            }
+            return count;
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            if (journal.failTruncate) {
+                throw new IOException("Injected failure");
+            }
+            file.truncate(size);
+            return this;
+        }
+
+        @Override
+        public int read(ByteBuffer target) throws IOException {
+            return file.read(target);
+        }
+
+        @Override
+        public long read(ByteBuffer[] targets, int offset, int length) throws IOException {
+            return file.read(targets, offset, length);
+        }
+
+        @Override
+        public int read(ByteBuffer target, long position) throws IOException {
+            return file.read(target, position);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return file.position();
+        }
+
+        @Override
+        public FileChannel position(long position) throws IOException {
+            file.position(position);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return file.size();
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            file.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return file.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel source, long position, long count) throws IOException {
+            throw new IOException("Not supported");
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return file.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return file.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return file.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            file.close();
+        }
+    }
+}
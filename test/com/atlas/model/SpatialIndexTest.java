@@ -0,0 +1,178 @@
+package com.atlas.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the k-d tree of SpatialIndex, every query compared with a scan
+ * of all points.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class SpatialIndexTest {
+
+    /**
+     * Random points on a small grid, so many coordinates are equal, with a
+     * few NaN coordinates
+     */
+    private static CollectionOfData grid(int size, int width, long seed) {
+        Random random = new Random(seed);
+        CollectionOfData data = new CollectionOfData();
+        for (int i = 0; i < size; i++) {
+            double x = random.nextInt(width);
+            double y = random.nextInt(width);
+            if (i % 97 == 0) {
+                x = Double.NaN;
+            } else if (i % 89 == 0) {
+                y = Double.NaN;
+            }
+            data.addPoint(x, y, "p" + i);
+        }
+        return data;
+    }
+
+    private static int[] scanBox(CollectionOfData data, double minX, double minY,
+            double maxX, double maxY) {
+        ArrayList<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < data.getSize(); row++) {
+            double x = data.getX(row);
+            double y = data.getY(row);
+            if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                rows.add(row);
+            }
+        }
+        return toArray(rows);
+    }
+
+    private static int[] scanWithin(CollectionOfData data, double x, double y, double radius) {
+        ArrayList<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < data.getSize(); row++) {
+            if (distanceSquared(data, row, x, y) <= radius * radius) {
+                rows.add(row);
+            }
+        }
+        return toArray(rows);
+    }
+
+    private static double distanceSquared(CollectionOfData data, int row, double x, double y) {
+        double dx = data.getX(row) - x;
+        double dy = data.getY(row) - y;
+        return dx * dx + dy * dy;
+    }
+
+    private static int[] toArray(ArrayList<Integer> rows) {
+        int[] array = new int[rows.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = rows.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * The distances of the k closest points, closest first, NaN points left
+     * out
+     */
+    private static double[] scanNearest(CollectionOfData data, double x, double y, int k) {
+        ArrayList<Double> distances = new ArrayList<>();
+        for (int row = 0; row < data.getSize(); row++) {
+            double distance = distanceSquared(data, row, x, y);
+            if (!Double.isNaN(distance)) {
+                distances.add(distance);
+            }
+        }
+        double[] sorted = new double[distances.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = distances.get(i);
+        }
+        Arrays.sort(sorted);
+        return Arrays.copyOf(sorted, Math.min(k, sorted.length));
+    }
+
+    private static double[] distances(CollectionOfData data, int[] rows, double x, double y) {
+        double[] distances = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            distances[i] = distanceSquared(data, rows[i], x, y);
+        }
+        return distances;
+    }
+
+    private static void checkQueries(CollectionOfData data, int width, long seed) {
+        Random random = new Random(seed);
+        for (int query = 0; query < 200; query++) {
+            double minX = random.nextInt(width + 2) - 1;
+            double minY = random.nextInt(width + 2) - 1;
+            double maxX = minX + random.nextInt(width / 2 + 1);
+            double maxY = minY + random.nextInt(width / 2 + 1);
+            assertArrayEquals(scanBox(data, minX, minY, maxX, maxY),
+                    data.findInBox(minX, minY, maxX, maxY));
+
+            double x = random.nextDouble() * width;
+            double y = random.nextDouble() * width;
+            double radius = random.nextInt(4) == 0 ? random.nextInt(3) : random.nextDouble() * width / 4;
+            assertArrayEquals(scanWithin(data, x, y, radius), data.findWithin(x, y, radius));
+
+            int k = 1 + random.nextInt(40);
+            int[] nearest = data.findNearest(x, y, k);
+            assertArrayEquals(scanNearest(data, x, y, k), distances(data, nearest, x, y), 0);
+        }
+    }
+
+    @Test
+    public void queriesMatchScanWithManyEqualCoordinates() {
+        CollectionOfData data = grid(5000, 30, 1);
+        checkQueries(data, 30, 2);
+    }
+
+    @Test
+    public void queriesMatchScanWithDistinctCoordinates() {
+        CollectionOfData data = grid(5000, 1000000, 3);
+        checkQueries(data, 1000000, 4);
+    }
+
+    @Test
+    public void queriesMatchScanWhenAllPointsAreEqual() {
+        CollectionOfData data = new CollectionOfData();
+        for (int i = 0; i < 1000; i++) {
+            data.addPoint(5, 5, null);
+        }
+        assertEquals(1000, data.findInBox(5, 5, 5, 5).length);
+        assertEquals(0, data.findInBox(5.5, 0, 10, 10).length);
+        assertEquals(1000, data.findWithin(5, 5, 0).length);
+        assertEquals(7, data.findNearest(0, 0, 7).length);
+    }
+
+    @Test
+    public void queriesMatchScanOnSortedAndReversedInput() {
+        CollectionOfData sorted = new CollectionOfData();
+        CollectionOfData reversed = new CollectionOfData();
+        for (int i = 0; i < 3000; i++) {
+            sorted.addPoint(i, i / 3, null);
+            reversed.addPoint(3000 - i, (3000 - i) % 17, null);
+        }
+        checkQueries(sorted, 3000, 5);
+        checkQueries(reversed, 3000, 6);
+    }
+
+    @Test
+    public void pointsAddedAfterAQueryAreFound() {
+        CollectionOfData data = grid(500, 50, 7);
+        data.findInBox(0, 0, 50, 50);
+        data.addPoint(1000, 1000, "far");
+        assertArrayEquals(new int[]{500}, data.findInBox(999, 999, 1001, 1001));
+        assertArrayEquals(new int[]{500}, data.findNearest(2000, 2000, 1));
+    }
+
+    @Test
+    public void nearestHandlesEdgeCases() {
+        CollectionOfData data = grid(100, 10, 8);
+        assertEquals(0, data.findNearest(1, 1, 0).length);
+        assertEquals(0, data.findNearest(Double.NaN, 1, 5).length);
+        assertEquals(scanNearest(data, 1, 1, 1000).length, data.findNearest(1, 1, 1000).length);
+        assertEquals(0, new CollectionOfData().findNearest(1, 1, 3).length);
+        assertEquals(0, new CollectionOfData().findInBox(0, 0, 1, 1).length);
+    }
+}
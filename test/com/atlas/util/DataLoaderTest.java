@@ -0,0 +1,123 @@
+package com.atlas.util;
+
+import com.atlas.model.CollectionOfData;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of DataLoader against stub sources: a source fetched once for
+ * concurrent requests, and the sources of a tab combined in order.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class DataLoaderTest {
+
+    /**
+     * A source that counts its fetches and, while held, waits before
+     * answering
+     */
+    private static class StubSource implements DataSource {
+
+        private final String address;
+        private final double x;
+        private final AtomicInteger fetches = new AtomicInteger();
+        private volatile CountDownLatch hold = new CountDownLatch(0);
+        private volatile boolean failing;
+
+        StubSource(String address, double x) {
+            this.address = address;
+            this.x = x;
+        }
+
+        @Override
+        public String getAddress() {
+            return address;
+        }
+
+        @Override
+        public LoadResult fetch() throws IOException {
+            fetches.incrementAndGet();
+            try {
+                hold.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (failing) {
+                throw new IOException("Down");
+            }
+            CollectionOfData data = new CollectionOfData();
+            data.addPoint(x, x, address);
+            data.freeze();
+            return new LoadResult(data, true, 10);
+        }
+    }
+
+    @Test
+    public void concurrentFetchesOfASourceAreShared() {
+        DataLoader loader = new DataLoader();
+        StubSource source = new StubSource("stub:a", 1);
+        source.hold = new CountDownLatch(1);
+        loader.addSource(source);
+
+        CompletableFuture<LoadResult> first = loader.fetchAsync(Collections.singletonList("stub:a"));
+        CompletableFuture<LoadResult> second = loader.fetchAsync(Collections.singletonList("stub:a"));
+        CompletableFuture<LoadResult> combined = loader.fetchAsync(Arrays.asList("stub:a", "stub:a"));
+        source.hold.countDown();
+
+        assertSame(first.join(), second.join());
+        assertEquals(2, combined.join().getData().getSize());
+        assertEquals(1, source.fetches.get());
+
+        // A request after the fetch finished reads the source again
+        loader.fetchAsync(Collections.singletonList("stub:a")).join();
+        assertEquals(2, source.fetches.get());
+    }
+
+    @Test
+    public void sourcesAreCombinedInOrder() {
+        DataLoader loader = new DataLoader();
+        StubSource a = new StubSource("stub:a", 1);
+        StubSource b = new StubSource("stub:b", 2);
+        loader.addSource(a);
+        loader.addSource(b);
+
+        LoadResult result = loader.fetchAsync(Arrays.asList("stub:b", "stub:a")).join();
+        CollectionOfData data = result.getData();
+        assertEquals(2, data.getSize());
+        assertEquals("stub:b", data.getName(0));
+        assertEquals("stub:a", data.getName(1));
+        assertTrue(data.isFrozen());
+        assertNull(result.getFailure());
+    }
+
+    @Test
+    public void failedSourceKeepsItsPreviousPoints() {
+        DataLoader loader = new DataLoader();
+        StubSource a = new StubSource("stub:a", 1);
+        StubSource b = new StubSource("stub:b", 2);
+        loader.addSource(a);
+        loader.addSource(b);
+        loader.fetchAsync(Arrays.asList("stub:a", "stub:b")).join();
+
+        b.failing = true;
+        LoadResult result = loader.fetchAsync(Arrays.asList("stub:a", "stub:b")).join();
+        assertEquals(2, result.getData().getSize());
+        assertNotNull(result.getFailure());
+        assertTrue(result.getFailure().startsWith("stub:b: "));
+
+        a.failing = true;
+        result = loader.fetchAsync(Arrays.asList("stub:a", "stub:b")).join();
+        assertEquals(0, result.getData().getSize());
+    }
+}
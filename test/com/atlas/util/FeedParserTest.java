@@ -0,0 +1,139 @@
+package com.atlas.util;
+
+import com.atlas.model.CollectionOfData;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of FeedParser: numbers compared with Double.parseDouble bit for bit,
+ * and the lines the feed may hold.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class FeedParserTest {
+
+    private static CollectionOfData parse(String feed, FeedParser parser) throws IOException {
+        CollectionOfData data = new CollectionOfData();
+        parser.parse(new ByteArrayInputStream(feed.getBytes(StandardCharsets.ISO_8859_1)), data);
+        return data;
+    }
+
+    private static CollectionOfData parse(String feed) throws IOException {
+        return parse(feed, new FeedParser());
+    }
+
+    private static void checkNumber(String number) throws IOException {
+        CollectionOfData data = parse(number + ", " + number + ", name\n");
+        assertEquals(number, 1, data.getSize());
+        long expected = Double.doubleToRawLongBits(Double.parseDouble(number));
+        assertEquals(number, expected, Double.doubleToRawLongBits(data.getX(0)));
+        assertEquals(number, expected, Double.doubleToRawLongBits(data.getY(0)));
+    }
+
+    @Test
+    public void boundaryNumbersMatchParseDouble() throws IOException {
+        String[] numbers = {
+            "0", "-0", "0.0", "-0.0", "+3", "5.", ".5", "-.5", "007", "0.1", "0.3",
+            "123456789012345", "1234567890123456", "12345678901234567890",
+            "9007199254740993", "9007199254740992.5", "0.000000000000000000001",
+            "1e22", "1e23", "1e-22", "1e-23", "123456789012345e-22", "123456789012345e22",
+            "999999999999999e22", "1.7976931348623157e308", "1e309", "4.9e-324", "1e-400",
+            "2.2250738585072014E-308", "1E5", "1e+5", "1.000000000000000000000001",
+            "3.141592653589793238462643383279", "100000000000000000000000"
+        };
+        for (String number : numbers) {
+            checkNumber(number);
+        }
+    }
+
+    @Test
+    public void randomNumbersMatchParseDouble() throws IOException {
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder number = new StringBuilder();
+            if (random.nextBoolean()) {
+                number.append('-');
+            }
+            int digits = 1 + random.nextInt(20);
+            int point = random.nextInt(digits + 1);
+            for (int d = 0; d < digits; d++) {
+                if (d == point && d > 0) {
+                    number.append('.');
+                }
+                number.append((char) ('0' + random.nextInt(10)));
+            }
+            if (random.nextInt(3) == 0) {
+                number.append('e').append(random.nextInt(61) - 30);
+            }
+            checkNumber(number.toString());
+        }
+    }
+
+    @Test
+    public void commentsBlankLinesAndLineEndsAreHandled() throws IOException {
+        FeedParser parser = new FeedParser();
+        CollectionOfData data = parse("# comment\n\n1, 2, First\r\n\r\n3,4 , Second, more\n5, 6, Last", parser);
+        assertEquals(3, data.getSize());
+        assertEquals("First", data.getName(0));
+        assertEquals(3, data.getX(1), 0);
+        assertEquals(4, data.getY(1), 0);
+        assertEquals("Second", data.getName(1));
+        assertEquals("Last", data.getName(2));
+        assertEquals(6, parser.getLines());
+        assertEquals(0, parser.getSkippedLines());
+    }
+
+    @Test
+    public void malformedLinesAreSkipped() throws IOException {
+        FeedParser parser = new FeedParser();
+        String feed = "abc, 1, name\n"
+                + "1 2 name\n"
+                + "1,\n"
+                + "1, 2\n"
+                + "1, y, name\n"
+                + "NaN, 1, name\n"
+                + "1e, 2, name\n"
+                + ", 1, name\n"
+                + "7, 8, Kept\n";
+        CollectionOfData data = parse(feed, parser);
+        assertEquals(1, data.getSize());
+        assertEquals("Kept", data.getName(0));
+        assertEquals(9, parser.getLines());
+        assertEquals(8, parser.getSkippedLines());
+        assertEquals(feed.length(), parser.getBytes());
+    }
+
+    @Test
+    public void linesSplitAcrossReadsAndLongLinesAreParsed() throws IOException {
+        StringBuilder feed = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            feed.append(i).append(".25, -").append(i).append(", Point ").append(i).append('\n');
+        }
+        StringBuilder longName = new StringBuilder();
+        while (longName.length() < 200000) {
+            longName.append("Long name ");
+        }
+        feed.append("1, 2, ").append(longName).append('\n');
+        byte[] bytes = feed.toString().getBytes(StandardCharsets.ISO_8859_1);
+        // A stream that returns a few bytes at a time
+        InputStream trickle = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] target, int offset, int length) {
+                return super.read(target, offset, Math.min(length, 7));
+            }
+        };
+        CollectionOfData data = new CollectionOfData();
+        assertEquals(5001, new FeedParser().parse(trickle, data));
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i + 0.25, data.getX(i), 0);
+            assertEquals(-i, data.getY(i), 0);
+            assertEquals("Point " + i, data.getName(i));
+        }
+        assertEquals(longName.toString(), data.getName(5000));
+    }
+}
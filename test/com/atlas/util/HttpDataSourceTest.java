@@ -0,0 +1,168 @@
+package com.atlas.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the conditional fetch of HttpDataSource against a stub server on
+ * the loopback interface.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class HttpDataSourceTest {
+
+    private static final String FEED = "# two points\n1.5, 2, First\n3, -4.25, Second\n";
+    private static final String LAST_MODIFIED = "Tue, 01 May 2018 10:00:00 GMT";
+
+    private HttpServer server;
+    private String address;
+    private volatile String body;
+    private volatile String etag;
+    private volatile String lastModified;
+    private volatile boolean conditional;
+    private final List<String> ifNoneMatch = new ArrayList<>();
+    private final List<String> ifModifiedSince = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        body = FEED;
+        conditional = true;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/feed", this::handle);
+        server.start();
+        address = "http://127.0.0.1:" + server.getAddress().getPort() + "/feed";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * The stub: answers 304 when the request matches the ETag or date, if
+     * conditional, else sends the body
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        String noneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        String modifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        synchronized (ifNoneMatch) {
+            ifNoneMatch.add(noneMatch);
+            ifModifiedSince.add(modifiedSince);
+        }
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        if (lastModified != null) {
+            exchange.getResponseHeaders().set("Last-Modified", lastModified);
+        }
+        boolean unchanged = (etag != null && etag.equals(noneMatch))
+                || (etag == null && lastModified != null && lastModified.equals(modifiedSince));
+        if (conditional && unchanged) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.ISO_8859_1);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    public void firstFetchParsesTheFeed() throws IOException {
+        LoadResult result = new HttpDataSource(address).fetch();
+
+        assertTrue(result.isModified());
+        assertEquals(FEED.length(), result.getBytes());
+        assertEquals(2, result.getData().getSize());
+        assertEquals(1.5, result.getData().getX(0), 0);
+        assertEquals(-4.25, result.getData().getY(1), 0);
+        assertEquals("Second", result.getData().getName(1));
+        assertTrue(result.getData().isFrozen());
+        assertNull(ifNoneMatch.get(0));
+        assertNull(ifModifiedSince.get(0));
+    }
+
+    @Test
+    public void etagGivesNotModified() throws IOException {
+        etag = "\"v1\"";
+        HttpDataSource source = new HttpDataSource(address);
+        LoadResult first = source.fetch();
+        LoadResult second = source.fetch();
+
+        assertEquals("\"v1\"", ifNoneMatch.get(1));
+        assertFalse(second.isModified());
+        assertEquals(0, second.getBytes());
+        assertSame(first.getData(), second.getData());
+    }
+
+    @Test
+    public void lastModifiedGivesNotModified() throws IOException {
+        lastModified = LAST_MODIFIED;
+        HttpDataSource source = new HttpDataSource(address);
+        LoadResult first = source.fetch();
+        LoadResult second = source.fetch();
+
+        assertNull(ifNoneMatch.get(1));
+        assertNotNull(ifModifiedSince.get(1));
+        assertFalse(second.isModified());
+        assertEquals(0, second.getBytes());
+        assertSame(first.getData(), second.getData());
+    }
+
+    @Test
+    public void sameBodyIsFoundByChecksum() throws IOException {
+        conditional = false;
+        etag = "\"v1\"";
+        HttpDataSource source = new HttpDataSource(address);
+        LoadResult first = source.fetch();
+        LoadResult second = source.fetch();
+
+        assertFalse(second.isModified());
+        assertEquals(FEED.length(), second.getBytes());
+        assertSame(first.getData(), second.getData());
+    }
+
+    @Test
+    public void changedBodyIsParsedAgain() throws IOException {
+        conditional = false;
+        HttpDataSource source = new HttpDataSource(address);
+        LoadResult first = source.fetch();
+        body = FEED + "5, 6, Third\n";
+        LoadResult second = source.fetch();
+
+        assertTrue(second.isModified());
+        assertEquals(3, second.getData().getSize());
+        assertEquals(2, first.getData().getSize());
+    }
+
+    @Test
+    public void newEtagIsParsedAgain() throws IOException {
+        etag = "\"v1\"";
+        HttpDataSource source = new HttpDataSource(address);
+        source.fetch();
+        etag = "\"v2\"";
+        body = "7, 8, Other\n";
+        LoadResult second = source.fetch();
+
+        assertEquals("\"v1\"", ifNoneMatch.get(1));
+        assertTrue(second.isModified());
+        assertEquals("Other", second.getData().getName(0));
+    }
+}
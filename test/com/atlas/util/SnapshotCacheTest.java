@@ -0,0 +1,138 @@
+package com.atlas.util;
+
+import com.atlas.model.CollectionOfData;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of SnapshotCache: one fetch shared by concurrent requests, a result
+ * reused within its time to live, and failed or empty results not kept.
+ *
+ * @author Wang Zheng-Yu <zhengyuw@kth.se>
+ */
+public class SnapshotCacheTest {
+
+    private static final String SOURCE = "http://server.address.se";
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private static LoadResult points(int size) {
+        CollectionOfData data = new CollectionOfData();
+        for (int i = 0; i < size; i++) {
+            data.addPoint(i, i * 2, "Point " + i);
+        }
+        data.freeze();
+        return new LoadResult(data, true, size);
+    }
+
+    /**
+     * A fetcher that counts its calls and gives the same result every time
+     */
+    private Supplier<CompletableFuture<LoadResult>> fetcher(CompletableFuture<LoadResult> result) {
+        return () -> {
+            calls.incrementAndGet();
+            return result;
+        };
+    }
+
+    @Test
+    public void concurrentRequestsShareOneFetch() throws Exception {
+        SnapshotCache cache = new SnapshotCache(60000);
+        CompletableFuture<LoadResult> running = new CompletableFuture<>();
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<CompletableFuture<LoadResult>>> requests = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                requests.add(pool.submit(() -> {
+                    start.await();
+                    return cache.get(SOURCE, fetcher(running));
+                }));
+            }
+            start.countDown();
+            for (Future<CompletableFuture<LoadResult>> request : requests) {
+                assertSame(running, request.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(1, calls.get());
+
+        LoadResult result = points(3);
+        running.complete(result);
+        assertSame(result, cache.get(SOURCE, fetcher(CompletableFuture.completedFuture(points(1)))).join());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void resultIsReusedUntilItsTimeToLive() throws InterruptedException {
+        SnapshotCache cache = new SnapshotCache(100);
+        LoadResult first = points(3);
+        assertSame(first, cache.get(SOURCE, fetcher(CompletableFuture.completedFuture(first))).join());
+        assertSame(first, cache.get(SOURCE, fetcher(CompletableFuture.completedFuture(points(2)))).join());
+        assertEquals(1, calls.get());
+
+        Thread.sleep(200);
+        LoadResult second = points(2);
+        assertSame(second, cache.get(SOURCE, fetcher(CompletableFuture.completedFuture(second))).join());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void otherSourcesAreFetchedApart() {
+        SnapshotCache cache = new SnapshotCache(60000);
+        LoadResult first = points(3);
+        LoadResult second = points(2);
+        cache.get(SOURCE, fetcher(CompletableFuture.completedFuture(first)));
+        assertSame(second, cache.get("file:/points.txt",
+                fetcher(CompletableFuture.completedFuture(second))).join());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void failedFetchIsNotKept() {
+        SnapshotCache cache = new SnapshotCache(60000);
+        CompletableFuture<LoadResult> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("Down"));
+        CompletableFuture<LoadResult> first = cache.get(SOURCE, fetcher(failed));
+        assertSame(failed, first);
+
+        LoadResult result = points(3);
+        assertSame(result, cache.get(SOURCE, fetcher(CompletableFuture.completedFuture(result))).join());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void emptyFetchIsNotKept() {
+        SnapshotCache cache = new SnapshotCache(60000);
+        cache.get(SOURCE, fetcher(CompletableFuture.completedFuture(points(0))));
+        LoadResult result = points(3);
+        assertSame(result, cache.get(SOURCE, fetcher(CompletableFuture.completedFuture(result))).join());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void invalidatedFetchIsStartedAgain() {
+        SnapshotCache cache = new SnapshotCache(60000);
+        LoadResult first = points(3);
+        cache.get(SOURCE, fetcher(CompletableFuture.completedFuture(first)));
+        cache.invalidate(SOURCE);
+        LoadResult second = points(3);
+        LoadResult got = cache.get(SOURCE, fetcher(CompletableFuture.completedFuture(second))).join();
+        assertSame(second, got);
+        assertNotSame(first, got);
+        assertEquals(2, calls.get());
+    }
+}